@@ -0,0 +1,54 @@
+package io.jadon.alef.benchmark;
+
+import io.jadon.alef.MinecraftVersion;
+import io.jadon.alef.match.Match;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chaining hops the way {@link io.jadon.alef.match.MatchProvider#chainMatches} does.
+ * There is only one match checked in, so the hops go back and forth between 1.7.10 and 1.8.9.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ChainBenchmark {
+
+    /**
+     * single is one chain call, multi is about a major version, full is every version we know about
+     */
+    @Param({"single", "multi", "full"})
+    public String length;
+
+    private Match[] hops;
+
+    @Setup
+    public void setup() {
+        int count;
+        switch (length) {
+            case "single":
+                count = 2;
+                break;
+            case "multi":
+                count = 10;
+                break;
+            default:
+                count = MinecraftVersion.values().length - 1;
+        }
+        hops = Fixtures.hops(Fixtures.match(), count);
+    }
+
+    @Benchmark
+    public Match chain() {
+        Match chained = hops[0];
+        for (int i = 1; i < hops.length; i++) {
+            chained = chained.chain(hops[i]);
+        }
+        return chained;
+    }
+
+}
@@ -0,0 +1,64 @@
+package io.jadon.alef.benchmark;
+
+import io.jadon.alef.match.Match;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.ClassMapping;
+
+import java.io.File;
+
+/**
+ * Inputs built from the checked-in fixtures. Benchmarks run with the project directory as their working directory.
+ */
+public class Fixtures {
+
+    public static final File MATCH_FILE = new File("mappings/matches/1.7.10-1.8.9.match");
+    public static final File CACHE_DIR = new File("cache/");
+
+    public static Match match() {
+        return Match.parse(MATCH_FILE);
+    }
+
+    /**
+     * Chain a match with its reverse until there are enough hops, going A -> B -> A -> B...
+     */
+    public static Match[] hops(Match match, int count) {
+        Match reversed = match.reverse();
+        Match[] hops = new Match[count];
+        for (int i = 0; i < count; i++) {
+            hops[i] = i % 2 == 0 ? match : reversed;
+        }
+        return hops;
+    }
+
+    /**
+     * Named mappings for one side of a match, like a provider would give us.
+     * Both sides get the same named names, so {@link Match#from} finds every class again.
+     */
+    public static MappingSet namedMappings(Match match, boolean oldSide) {
+        MappingSet mappings = MappingSet.create();
+        int classIndex = 0;
+        for (Match.ClassMatch classMatch : match.getClassMatches()) {
+            String obfName = oldSide ? classMatch.getOldName() : classMatch.getNewName();
+            // inner classes are reached through their outer class
+            ClassMapping<?, ?> classMapping = mappings.getOrCreateClassMapping(obfName);
+            if (obfName.indexOf('$') == -1) {
+                classMapping.setDeobfuscatedName("net/minecraft/Class" + classIndex);
+            } else {
+                classMapping.setDeobfuscatedName("Inner" + classIndex);
+            }
+            classIndex++;
+            int memberIndex = 0;
+            for (Match.FieldMatch fieldMatch : classMatch.getFieldMatches()) {
+                String name = oldSide ? fieldMatch.getOldName() : fieldMatch.getNewName();
+                classMapping.getOrCreateFieldMapping(name).setDeobfuscatedName("field_" + memberIndex++);
+            }
+            for (Match.MethodMatch methodMatch : classMatch.getMethodMatches()) {
+                String name = oldSide ? methodMatch.getOldName() : methodMatch.getNewName();
+                String signature = oldSide ? methodMatch.getOldSignature() : methodMatch.getNewSignature();
+                classMapping.getOrCreateMethodMapping(name, signature).setDeobfuscatedName("method_" + memberIndex++);
+            }
+        }
+        return mappings;
+    }
+
+}
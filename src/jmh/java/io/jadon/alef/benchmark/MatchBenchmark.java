@@ -0,0 +1,68 @@
+package io.jadon.alef.benchmark;
+
+import io.jadon.alef.match.Match;
+import org.cadixdev.lorenz.MappingSet;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single operations on the checked-in 1.7.10 -> 1.8.9 match
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MatchBenchmark {
+
+    private Match match;
+    private MappingSet matchMappings;
+    private MappingSet oldMappings;
+    private MappingSet newMappings;
+
+    @Setup
+    public void setup() {
+        match = Fixtures.match();
+        matchMappings = match.toMappingSet();
+        oldMappings = Fixtures.namedMappings(match, true);
+        newMappings = Fixtures.namedMappings(match, false);
+    }
+
+    @Benchmark
+    public Match parse() {
+        return Match.parse(Fixtures.MATCH_FILE);
+    }
+
+    @Benchmark
+    public Match parseMappingSet() {
+        return Match.parse(matchMappings);
+    }
+
+    @Benchmark
+    public Match reverse() {
+        return match.reverse();
+    }
+
+    @Benchmark
+    public MappingSet toMappingSet() {
+        return match.toMappingSet();
+    }
+
+    @Benchmark
+    public MappingSet combineMappings() {
+        return match.combineMappings(oldMappings, newMappings);
+    }
+
+    @Benchmark
+    public MappingSet updateMappings() {
+        return match.updateMappings(oldMappings);
+    }
+
+    @Benchmark
+    public Match from() {
+        return Match.from(oldMappings, newMappings);
+    }
+
+}
@@ -0,0 +1,125 @@
+package io.jadon.alef.benchmark;
+
+import io.jadon.alef.Alef;
+import io.jadon.alef.MinecraftVersion;
+import io.jadon.alef.provider.MappingProvider;
+import io.jadon.alef.provider.Mirror;
+import io.jadon.alef.provider.ProviderService;
+import io.jadon.alef.service.MirrorServer;
+import io.jadon.alef.version.VersionRegistry;
+import lombok.SneakyThrows;
+import org.cadixdev.lorenz.MappingSet;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * End to end migrations with every download served by a {@link MirrorServer}, so the numbers don't depend on
+ * public hosts. A cold run starts from an empty cache directory, a warm run reuses the one filled during setup.
+ * <p>
+ * The mirror is read from {@code -Dalef.mirrorRoot} (default {@code mirror/}) and has to be recorded once while
+ * online: {@code MirrorServer mirror 8643 --record} with {@code -Dalef.mirror=http://127.0.0.1:8643} on a normal run.
+ * With {@code -Dalef.mirror} set, no local server is started and the benchmark downloads from that mirror instead,
+ * which is how a LAN mirror is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MigrationBenchmark {
+
+    @Param({"1.16.1"})
+    public String from;
+    @Param({"1.16.2-rc1"})
+    public String to;
+    @Param({"yarn"})
+    public String provider;
+    @Param({"cold", "warm"})
+    public String cache;
+
+    private MirrorServer server;
+    private MinecraftVersion fromVersion;
+    private MinecraftVersion toVersion;
+    private MappingProvider mappingProvider;
+    private File warmCache;
+    private File coldCache;
+
+    @Setup(Level.Trial)
+    @SneakyThrows
+    public void setup() {
+        fromVersion = MinecraftVersion.fromId(from).orElseThrow(() -> new IllegalArgumentException("Unknown version " + from));
+        toVersion = MinecraftVersion.fromId(to).orElseThrow(() -> new IllegalArgumentException("Unknown version " + to));
+        mappingProvider = MappingProvider.byName(provider).orElseThrow(() -> new IllegalArgumentException("Unknown provider " + provider));
+
+        if (Mirror.getBase() == null) {
+            Path root = Paths.get(System.getProperty("alef.mirrorRoot", "mirror"));
+            if (!Files.isDirectory(root)) {
+                throw new IllegalStateException("No mirror at " + root.toAbsolutePath() + ", record one with MirrorServer --record");
+            }
+            server = new MirrorServer(root, false);
+            server.start(0);
+            Mirror.setBase(server.getBaseUrl());
+        }
+
+        warmCache = Files.createTempDirectory("alef-warm").toFile();
+        useCache(warmCache);
+        if (!migrate().isPresent()) throw new IllegalStateException("Mirror is missing files for " + from + " -> " + to);
+    }
+
+    @Setup(Level.Invocation)
+    @SneakyThrows
+    public void setupInvocation() {
+        if (cache.equals("cold")) {
+            coldCache = Files.createTempDirectory("alef-cold").toFile();
+            useCache(coldCache);
+        } else {
+            useCache(warmCache);
+        }
+    }
+
+    private static void useCache(File directory) {
+        MappingProvider.CACHE_DIR = directory;
+        // the registry and providers keep what they read from the last cache directory
+        VersionRegistry.get().reset();
+        for (ProviderService service : MappingProvider.getServices()) {
+            MappingProvider.byName(service.getName()).ifPresent(MappingProvider::reset);
+        }
+    }
+
+    @Benchmark
+    public Optional<MappingSet> migrate() {
+        return Alef.createMigrationMappings(fromVersion, toVersion, mappingProvider);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDownInvocation() {
+        if (coldCache != null) delete(coldCache.toPath());
+        coldCache = null;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        delete(warmCache.toPath());
+        if (server != null) {
+            server.stop();
+            Mirror.setBase(null);
+        }
+    }
+
+    @SneakyThrows
+    private static void delete(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+package io.jadon.alef.benchmark;
+
+import com.google.gson.JsonObject;
+import io.jadon.alef.MinecraftVersion;
+import io.jadon.alef.match.Match;
+import io.jadon.alef.provider.MappingProvider;
+import io.jadon.alef.provider.MojangProvider;
+import lombok.SneakyThrows;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.io.MappingFormats;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The parts of provider loading that don't touch the network: reading cached files and merging sets.
+ * Mapping files are written from the match fixture into a temporary directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ProviderBenchmark {
+
+    private Path tempDir;
+    private Path tsrgFile;
+    private Path csrgFile;
+    private File csvFile;
+    private MappingSet oldMappings;
+    private MappingSet newMappings;
+
+    @Setup
+    @SneakyThrows
+    public void setup() {
+        Match match = Fixtures.match();
+        oldMappings = Fixtures.namedMappings(match, true);
+        newMappings = Fixtures.namedMappings(match, false);
+
+        tempDir = Files.createTempDirectory("alef-jmh");
+        tsrgFile = tempDir.resolve("searge.tsrg");
+        csrgFile = tempDir.resolve("searge.csrg");
+        MappingFormats.TSRG.write(oldMappings, tsrgFile);
+        MappingFormats.CSRG.write(oldMappings, csrgFile);
+
+        // same shape as the MCP snapshot csvs
+        List<String> lines = new ArrayList<>();
+        lines.add("searge,name,side,desc");
+        for (int i = 0; i < 40_000; i++) {
+            lines.add("field_" + i + "_a,name" + i + ",2,");
+        }
+        csvFile = tempDir.resolve("fields.csv").toFile();
+        Files.write(csvFile.toPath(), lines);
+    }
+
+    @TearDown
+    @SneakyThrows
+    public void tearDown() {
+        try (Stream<Path> paths = Files.walk(tempDir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public Optional<JsonObject> mojangVersionJson() {
+        MinecraftVersion version = MinecraftVersion.s1_16_combat_0;
+        return MojangProvider.downloadVersionJson(version,
+                new File(Fixtures.CACHE_DIR, version.toString() + "/" + version.toString() + ".json"));
+    }
+
+    @Benchmark
+    @SneakyThrows
+    public MappingSet readTsrg() {
+        return MappingFormats.TSRG.read(tsrgFile);
+    }
+
+    @Benchmark
+    @SneakyThrows
+    public MappingSet readCsrg() {
+        return MappingFormats.CSRG.read(csrgFile);
+    }
+
+    @Benchmark
+    public Map<String, String> mcpCsv() {
+        return MappingProvider.mcp().parseCsv(csvFile);
+    }
+
+    @Benchmark
+    public MappingSet reverseMerge() {
+        return oldMappings.reverse().merge(newMappings);
+    }
+
+}
@@ -0,0 +1,76 @@
+package io.jadon.alef.benchmark;
+
+import io.jadon.alef.cli.Lookup;
+import lombok.SneakyThrows;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall time of one {@link Lookup} from process start to exit, launched on the JVM and as the native image built by
+ * {@code ./gradlew nativeImage}. This is what a hook or an editor pays per lookup.
+ * <p>
+ * The cache is warmed by one lookup during setup, so the numbers are for warm lookups. The native image is read
+ * from {@code -Dalef.nativeImage} (default {@code build/native/alef}). {@code ./gradlew startupBenchmark} measures
+ * the JVM, and the native image as well once {@code ./gradlew nativeImage} has built it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 20)
+@Fork(1)
+public class StartupBenchmark {
+
+    @Param({"jvm", "native"})
+    public String launcher;
+    @Param({"search 1.16.1 yarn getBlockState"})
+    public String lookup;
+
+    private List<String> command;
+    private File output;
+
+    @Setup(Level.Trial)
+    @SneakyThrows
+    public void setup() {
+        command = new ArrayList<>();
+        if (launcher.equals("native")) {
+            File image = new File(System.getProperty("alef.nativeImage", "build/native/alef"));
+            if (!image.canExecute()) {
+                throw new IllegalStateException("No native image at " + image.getAbsolutePath() + ", build one with ./gradlew nativeImage");
+            }
+            command.add(image.getAbsolutePath());
+        } else {
+            command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(Lookup.class.getName());
+        }
+        command.addAll(Arrays.asList(lookup.split(" ")));
+        output = Files.createTempFile("alef-startup", ".txt").toFile();
+
+        // fills the cache, and checks the lookup finds something
+        int exitCode = launch();
+        if (exitCode != 0) throw new IllegalStateException(String.join(" ", command) + " exited with " + exitCode);
+    }
+
+    @Benchmark
+    public int launch() throws Exception {
+        return new ProcessBuilder(command)
+                .redirectOutput(output)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start()
+                .waitFor();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        output.delete();
+    }
+
+}
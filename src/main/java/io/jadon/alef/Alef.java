@@ -1,7 +1,10 @@
 package io.jadon.alef;
 
+import io.jadon.alef.cli.JobRunner;
+import io.jadon.alef.io.MultiFormatWriter;
 import io.jadon.alef.match.Match;
 import io.jadon.alef.match.MatchProvider;
+import io.jadon.alef.provider.ArtifactCache;
 import io.jadon.alef.provider.MappingProvider;
 import io.jadon.alef.provider.spigot.SpigotConflictFixer;
 import lombok.SneakyThrows;
@@ -11,27 +14,50 @@ import org.cadixdev.lorenz.io.MappingFormats;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 /**
  * Main class
  */
 public class Alef {
 
+    /**
+     * Default executor for migrations, the stages mostly wait on downloads and disk
+     */
+    public static final ExecutorService LOADER = Executors.newCachedThreadPool(daemon("alef-loader"));
+    private static final ScheduledExecutorService DEADLINES = Executors.newSingleThreadScheduledExecutor(daemon("alef-deadline"));
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
     @SneakyThrows
     public static void main6(String[] args) {
         File obfSpigotJar = new File("/home/phase/projects/minecraft/spigot/obf-spigot-1.16.1.jar");
-        MappingSet mappingSet = SpigotConflictFixer.generateMappingFixes(obfSpigotJar);
+        File vanillaJar = new File("/home/phase/projects/minecraft/spigot/server-1.16.1.jar");
+        MappingSet mappingSet = SpigotConflictFixer.generateMappingFixes(obfSpigotJar, vanillaJar);
         MappingFormats.SRG.write(mappingSet, Paths.get("mappings/1.16.1-obf-spigot-conflict-fix.srg"));
     }
 
     @SneakyThrows
     public static void main5(String[] args) {
-//        MappingSet mappings = MappingProvider.MOJANG.getMappings(MinecraftVersion.v1_16_1).orElse(null);
+//        MappingSet mappings = MappingProvider.mojang().getMappings(MinecraftVersion.v1_16_1).orElse(null);
 //        MappingFormats.TSRG.write(mappings, Paths.get("mappings/1.16.1-mojang.srg"));
-        MappingSet mappingSet = MappingProvider.YARN.getMappings(MinecraftVersion.v1_16_1).orElse(null);
+        MappingSet mappingSet = MappingProvider.yarn().getMappings(MinecraftVersion.v1_16_1).orElse(null);
         MappingFormats.SRG.write(mappingSet, Paths.get("mappings/1.16.1-yarn.srg"));
-        MappingSet spigot = MappingProvider.SPIGOT.getMappings(MinecraftVersion.v1_16_1).orElse(null);
+        MappingSet spigot = MappingProvider.spigot().getMappings(MinecraftVersion.v1_16_1).orElse(null);
         MappingFormats.SRG.write(spigot, Paths.get("mappings/1.16.1-spigot.srg"));
         MappingFormats.SRG.write(spigot.reverse(), Paths.get("mappings/1.16.1-spigot-reversed.srg"));
     }
@@ -39,22 +65,28 @@ public class Alef {
     @SneakyThrows
     public static void main4(String[] args) {
         MinecraftVersion version = MinecraftVersion.s1_16_2_pre1;
-        MappingSet yarn = MappingProvider.YARN.getMappings(version).orElse(null);
-        MappingSet mojang = MappingProvider.MOJANG.getMappings(version).orElse(null);
+        MappingSet yarn = MappingProvider.yarn().getMappings(version).orElse(null);
+        MappingSet mojang = MappingProvider.mojang().getMappings(version).orElse(null);
         MappingSet merged = yarn.reverse().merge(mojang);
         MappingFormats.SRG.write(merged, Paths.get("mappings/" + version.toString() + "-yarn-to-mojang.srg"));
     }
 
     @SneakyThrows
     public static void main(String[] args) {
+        if (args.length > 0) {
+            JobRunner.main(args);
+            return;
+        }
+        ArtifactCache.verifyAll();
         MinecraftVersion latest = MinecraftVersion.v1_16_1;
         MinecraftVersion snapshot = MinecraftVersion.s1_16_2_rc1;
-        MappingProvider provider = MappingProvider.YARN;
+        MappingProvider provider = MappingProvider.yarn();
 
         createMigrationMappings(latest, snapshot, provider).ifPresent(mappings -> {
             try {
-                MappingFormats.TSRG.write(mappings, Paths.get("mappings/" + latest.toString() + "-to-" + snapshot + ".tsrg"));
-                MappingFormats.SRG.write(mappings, Paths.get("mappings/" + latest.toString() + "-to-" + snapshot + ".srg"));
+                new MultiFormatWriter()
+                        .addAllFormats(Paths.get("mappings/" + latest.toString() + "-to-" + snapshot), false)
+                        .write(mappings);
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -66,9 +98,9 @@ public class Alef {
         Match v1_12_2__to__v1_14_4 = MatchProvider.chainMatches(MinecraftVersion.v1_12_2, MinecraftVersion.v1_14_4).orElse(null);
         Match v1_14_4__to_v1_15_1 = MatchProvider.chainMatches(MinecraftVersion.v1_14_4, MinecraftVersion.v1_15_1).orElse(null);
         assert v1_12_2__to__v1_14_4 != null && v1_14_4__to_v1_15_1 != null : "failed somewhere?";
-        MappingSet mcp_1_12_2 = MappingProvider.MCP.getMappings(MinecraftVersion.v1_12_2).get();
-        MappingSet mcp_1_14_4 = MappingProvider.MCP.getMappings(MinecraftVersion.v1_14_4).get();
-        MappingSet mcp_1_15_1 = MappingProvider.MCP.getMappings(MinecraftVersion.v1_15_1).get();
+        MappingSet mcp_1_12_2 = MappingProvider.mcp().getMappings(MinecraftVersion.v1_12_2).get();
+        MappingSet mcp_1_14_4 = MappingProvider.mcp().getMappings(MinecraftVersion.v1_14_4).get();
+        MappingSet mcp_1_15_1 = MappingProvider.mcp().getMappings(MinecraftVersion.v1_15_1).get();
         MappingSet twelveToFourteen = v1_12_2__to__v1_14_4.combineMappings(mcp_1_12_2, mcp_1_14_4);
         MappingSet fourteenToFifteen = v1_14_4__to_v1_15_1.combineMappings(mcp_1_14_4, mcp_1_15_1);
         MappingFormats.SRG.write(twelveToFourteen, Paths.get("mappings/1.12.2-to-1.14.4.srg"));
@@ -79,11 +111,122 @@ public class Alef {
         return createMigrationMappings(from, to, provider, provider);
     }
 
+    /**
+     * Load both providers and chain the matches at the same time, on {@link #LOADER}
+     */
+    @SneakyThrows
     public static Optional<MappingSet> createMigrationMappings(MinecraftVersion from, MinecraftVersion to, MappingProvider fromProvider, MappingProvider toProvider) {
-        MappingSet fromMappings = fromProvider.getMappings(from).orElse(null);
-        MappingSet toMappings = toProvider.getMappings(to).orElse(null);
-        if (fromMappings == null || toMappings == null) return Optional.empty();
-        return createMigrationMappings(from, to, fromMappings, toMappings);
+        try {
+            return createMigrationMappingsAsync(from, to, fromProvider, toProvider, LOADER).join();
+        } catch (CompletionException e) {
+            throw e.getCause();
+        }
+    }
+
+    public static CompletableFuture<Optional<MappingSet>> createMigrationMappingsAsync(MinecraftVersion from, MinecraftVersion to, MappingProvider provider, Executor executor) {
+        return createMigrationMappingsAsync(from, to, provider, provider, executor);
+    }
+
+    /**
+     * Start loading the from mappings, loading the to mappings and chaining the matches at once, and combine them
+     * when all three are done.
+     * <p>
+     * Cancelling the returned future interrupts the stages that are still running. As soon as a provider turns out not
+     * to have its version, the future is empty and the other stages are cancelled. A failed load fails the future and
+     * cancels the others. A failed match chain only fails it once both providers have their versions, the same as
+     * loading them one after the other.
+     *
+     * @param executor where the stages and the combine step run, needs at least three threads to run them all at once
+     * @return migration mappings, or empty if a provider doesn't have a version or there is no match between them
+     */
+    public static CompletableFuture<Optional<MappingSet>> createMigrationMappingsAsync(MinecraftVersion from, MinecraftVersion to,
+                                                                                        MappingProvider fromProvider, MappingProvider toProvider,
+                                                                                        Executor executor) {
+        if (!fromProvider.supports(from) || !toProvider.supports(to)) return CompletableFuture.completedFuture(Optional.empty());
+        CompletableFuture<Optional<MappingSet>> fromFuture = supplyInterruptibly(() -> fromProvider.getMappings(from), executor);
+        CompletableFuture<Optional<MappingSet>> toFuture = supplyInterruptibly(() -> toProvider.getMappings(to), executor);
+        CompletableFuture<Optional<Match>> matchFuture = supplyInterruptibly(() -> MatchProvider.chainMatches(from, to), executor);
+        List<CompletableFuture<?>> stages = Arrays.asList(fromFuture, toFuture, matchFuture);
+
+        CompletableFuture<Optional<MappingSet>> result = new CompletableFuture<>();
+        for (CompletableFuture<Optional<MappingSet>> providerFuture : Arrays.asList(fromFuture, toFuture)) {
+            providerFuture.whenComplete((mappings, e) -> {
+                if (e != null) {
+                    result.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+                } else if (!mappings.isPresent()) {
+                    result.complete(Optional.empty());
+                }
+            });
+        }
+        CompletableFuture.allOf(fromFuture, toFuture, matchFuture).whenCompleteAsync((ignored, stageException) -> {
+            if (result.isDone()) return;
+            try {
+                Optional<MappingSet> fromMappings = fromFuture.join();
+                Optional<MappingSet> toMappings = toFuture.join();
+                if (!fromMappings.isPresent() || !toMappings.isPresent()) {
+                    result.complete(Optional.empty());
+                    return;
+                }
+                Optional<Match> match = matchFuture.join();
+                result.complete(match.map(value -> value.combineMappings(fromMappings.get(), toMappings.get())));
+            } catch (CompletionException e) {
+                result.completeExceptionally(e.getCause());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }, executor);
+        // stops whatever is still running, which is nothing once the mappings are combined
+        result.whenComplete((value, e) -> stages.forEach(stage -> stage.cancel(true)));
+        return result;
+    }
+
+    /**
+     * Same as {@link #createMigrationMappingsAsync(MinecraftVersion, MinecraftVersion, MappingProvider, MappingProvider, Executor)},
+     * but fails with a {@link TimeoutException} and cancels whatever is still running if it takes longer than the timeout
+     */
+    public static CompletableFuture<Optional<MappingSet>> createMigrationMappingsAsync(MinecraftVersion from, MinecraftVersion to,
+                                                                                        MappingProvider fromProvider, MappingProvider toProvider,
+                                                                                        Executor executor, Duration timeout) {
+        CompletableFuture<Optional<MappingSet>> result = createMigrationMappingsAsync(from, to, fromProvider, toProvider, executor);
+        ScheduledFuture<?> deadline = DEADLINES.schedule(() -> result.completeExceptionally(
+                new TimeoutException("Migration from " + from + " to " + to + " took longer than " + timeout)),
+                timeout.toNanos(), TimeUnit.NANOSECONDS);
+        result.whenComplete((value, e) -> deadline.cancel(false));
+        return result;
+    }
+
+    /**
+     * Like {@link CompletableFuture#supplyAsync}, but cancelling the future interrupts the thread running it
+     */
+    private static <T> CompletableFuture<T> supplyInterruptibly(Supplier<T> supplier, Executor executor) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        AtomicReference<Thread> runner = new AtomicReference<>();
+        executor.execute(() -> {
+            // under the lock, so a cancel either sees this thread or stops it from starting
+            synchronized (runner) {
+                if (future.isDone()) return;
+                runner.set(Thread.currentThread());
+            }
+            try {
+                future.complete(supplier.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                synchronized (runner) {
+                    runner.set(null);
+                    // don't leave an interrupt behind for the executor's next task
+                    Thread.interrupted();
+                }
+            }
+        });
+        future.whenComplete((value, e) -> {
+            if (!future.isCancelled()) return;
+            synchronized (runner) {
+                Thread thread = runner.get();
+                if (thread != null) thread.interrupt();
+            }
+        });
+        return future;
     }
 
     public static Optional<MappingSet> createMigrationMappings(MinecraftVersion from, MinecraftVersion to, MappingSet fromMappings, MappingSet toMappings) {
@@ -2,6 +2,10 @@ package io.jadon.alef;
 
 import lombok.AllArgsConstructor;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
 /**
  * Every Minecraft version we have matches for
  */
@@ -208,6 +212,22 @@ public enum MinecraftVersion {
     ;
     private final String version;
 
+    private static final Map<String, MinecraftVersion> BY_ID = new HashMap<>();
+
+    static {
+        for (MinecraftVersion version : values()) {
+            BY_ID.put(version.version, version);
+        }
+    }
+
+    /**
+     * @param id version id, like 1.16.1 or 20w27a
+     * @return version with that id
+     */
+    public static Optional<MinecraftVersion> fromId(String id) {
+        return Optional.ofNullable(BY_ID.get(id));
+    }
+
     @Override
     public String toString() {
         return version;
@@ -0,0 +1,222 @@
+package io.jadon.alef.batch;
+
+import io.jadon.alef.MinecraftVersion;
+import io.jadon.alef.io.MultiFormatWriter;
+import io.jadon.alef.io.OutputFormat;
+import io.jadon.alef.match.Match;
+import io.jadon.alef.match.MatchProvider;
+import io.jadon.alef.provider.MappingProvider;
+import lombok.Data;
+import lombok.Getter;
+import lombok.SneakyThrows;
+import org.cadixdev.lorenz.MappingSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Generates migration mappings between every pair of a list of versions.
+ * <p>
+ * All pairs starting at the same version share one walk along the version history: the chain to the next target
+ * is the chain to the previous target plus the hops in between, so every hop is chained once per source version
+ * instead of once per pair. Hop matches and provider mapping sets are loaded once and reused by every pair.
+ * <p>
+ * Source versions are split into shards by their position in the list, so the same shard always gets the same
+ * pairs and shards can run on separate machines. Finished pairs are appended to a checkpoint file in the output
+ * directory and skipped when the batch is started again.
+ */
+public class MigrationBatch {
+
+    private final List<MinecraftVersion> versions;
+    private final MappingProvider fromProvider;
+    private final MappingProvider toProvider;
+    private final File outputDir;
+    @Getter
+    private final int shardIndex;
+    @Getter
+    private final int shardCount;
+    private final List<OutputFormat> formats;
+
+    private final Map<MinecraftVersion, Match> hops = new HashMap<>();
+    private final Map<MinecraftVersion, Optional<MappingSet>> fromMappings = new HashMap<>();
+    private final Map<MinecraftVersion, Optional<MappingSet>> toMappings;
+
+    @Data
+    public static class Pair {
+        private final MinecraftVersion from;
+        private final MinecraftVersion to;
+
+        @Override
+        public String toString() {
+            return from + "-to-" + to;
+        }
+    }
+
+    public MigrationBatch(List<MinecraftVersion> versions, MappingProvider fromProvider, MappingProvider toProvider,
+                          File outputDir, int shardIndex, int shardCount, List<OutputFormat> formats) {
+        if (shardIndex < 0 || shardIndex >= shardCount) {
+            throw new IllegalArgumentException("Shard " + shardIndex + " is not in [0, " + shardCount + ")");
+        }
+        this.versions = versions.stream().distinct().sorted().collect(Collectors.toList());
+        this.fromProvider = fromProvider;
+        this.toProvider = toProvider;
+        this.outputDir = outputDir;
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+        this.formats = formats;
+        // the same provider on both sides can share its mapping sets
+        this.toMappings = fromProvider == toProvider ? fromMappings : new HashMap<>();
+    }
+
+    /**
+     * Batch over every release version
+     */
+    public static MigrationBatch releases(MappingProvider provider, File outputDir, int shardIndex, int shardCount) {
+        List<MinecraftVersion> releases = Arrays.stream(MinecraftVersion.values())
+                .filter(MinecraftVersion::isRelease)
+                .collect(Collectors.toList());
+        return new MigrationBatch(releases, provider, provider, outputDir, shardIndex, shardCount,
+                Arrays.asList(OutputFormat.values()));
+    }
+
+    /**
+     * @return source versions handled by this shard
+     */
+    public List<MinecraftVersion> getShardSources() {
+        List<MinecraftVersion> sources = new ArrayList<>();
+        // the last version has nothing after it
+        for (int i = 0; i < versions.size() - 1; i++) {
+            if (i % shardCount == shardIndex) sources.add(versions.get(i));
+        }
+        return sources;
+    }
+
+    /**
+     * @return every pair this shard is responsible for, in the order they are generated
+     */
+    public List<Pair> getShardPairs() {
+        List<Pair> pairs = new ArrayList<>();
+        for (MinecraftVersion from : getShardSources()) {
+            for (MinecraftVersion to : getTargets(from)) {
+                pairs.add(new Pair(from, to));
+            }
+        }
+        return pairs;
+    }
+
+    private List<MinecraftVersion> getTargets(MinecraftVersion from) {
+        return versions.stream().filter(to -> to.ordinal() > from.ordinal()).collect(Collectors.toList());
+    }
+
+    /**
+     * Generate every pair in this shard that isn't in the checkpoint yet
+     */
+    @SneakyThrows
+    public void run() {
+        outputDir.mkdirs();
+        Set<Pair> finished = readCheckpoint();
+        for (MinecraftVersion from : getShardSources()) {
+            List<MinecraftVersion> targets = getTargets(from).stream()
+                    .filter(to -> !finished.contains(new Pair(from, to)))
+                    .collect(Collectors.toList());
+            if (targets.isEmpty()) continue;
+            if (!fromProvider.supports(from)) {
+                System.out.println(fromProvider.getClass().getSimpleName() + " doesn't have " + from + ", skipping "
+                        + targets.size() + " pairs");
+                continue;
+            }
+            // don't chain hops up to versions the target provider can't have
+            targets.removeIf(to -> !toProvider.supports(to));
+            if (targets.isEmpty()) continue;
+            Optional<MappingSet> fromSet = fromMappings.computeIfAbsent(from, fromProvider::getMappings);
+            if (!fromSet.isPresent()) {
+                System.out.println("No mappings for " + from + ", skipping " + targets.size() + " pairs");
+                continue;
+            }
+
+            MinecraftVersion lastTarget = targets.get(targets.size() - 1);
+            Set<MinecraftVersion> remaining = new HashSet<>(targets);
+            Match chained = null;
+            for (int i = from.ordinal(); i < lastTarget.ordinal(); i++) {
+                MinecraftVersion hopTo = MinecraftVersion.values()[i + 1];
+                Match hop = getHop(MinecraftVersion.values()[i]);
+                chained = chained == null ? hop : chained.chain(hop);
+                if (!remaining.contains(hopTo)) continue;
+
+                Optional<MappingSet> toSet = toMappings.computeIfAbsent(hopTo, toProvider::getMappings);
+                Pair pair = new Pair(from, hopTo);
+                if (toSet.isPresent()) {
+                    write(pair, chained.combineMappings(fromSet.get(), toSet.get()));
+                } else {
+                    System.out.println("No mappings for " + hopTo + ", skipping " + pair);
+                }
+                checkpoint(pair);
+            }
+        }
+    }
+
+    private Match getHop(MinecraftVersion from) {
+        return hops.computeIfAbsent(from, version -> {
+            MinecraftVersion to = MinecraftVersion.values()[version.ordinal() + 1];
+            return MatchProvider.getMatch(version, to)
+                    .orElseThrow(() -> new IllegalStateException("Can't find match from " + version.toString()
+                            + " to " + to.toString()));
+        });
+    }
+
+    private void write(Pair pair, MappingSet mappings) throws IOException {
+        MultiFormatWriter writer = new MultiFormatWriter();
+        for (OutputFormat format : formats) {
+            writer.addOutput(format, new File(outputDir, pair + "." + format.getExtension()).toPath());
+        }
+        writer.write(mappings);
+        System.out.println("Wrote " + pair);
+    }
+
+    private File getCheckpointFile() {
+        return new File(outputDir, ".checkpoint-" + shardIndex + "-of-" + shardCount);
+    }
+
+    private Set<Pair> readCheckpoint() throws IOException {
+        Set<Pair> finished = new HashSet<>();
+        File checkpoint = getCheckpointFile();
+        if (!checkpoint.exists()) return finished;
+        String content = new String(Files.readAllBytes(checkpoint.toPath()), StandardCharsets.UTF_8);
+        // a partially written last line has no newline yet, ignore it and generate that pair again
+        content = content.substring(0, content.lastIndexOf('\n') + 1);
+        for (String line : content.split("\n")) {
+            String[] parts = line.split("\t");
+            if (parts.length != 2) continue;
+            Optional<MinecraftVersion> from = MinecraftVersion.fromId(parts[0]);
+            Optional<MinecraftVersion> to = MinecraftVersion.fromId(parts[1]);
+            if (from.isPresent() && to.isPresent()) finished.add(new Pair(from.get(), to.get()));
+        }
+        return finished;
+    }
+
+    private void checkpoint(Pair pair) throws IOException {
+        Files.write(getCheckpointFile().toPath(), (pair.from + "\t" + pair.to + "\n").getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+    }
+
+    /**
+     * Usage: provider outputDir [shardIndex shardCount]
+     */
+    public static void main(String[] args) {
+        if (args.length != 2 && args.length != 4) {
+            System.out.println("Usage: <provider> <output dir> [<shard index> <shard count>]");
+            return;
+        }
+        MappingProvider provider = MappingProvider.byName(args[0])
+                .orElseThrow(() -> new IllegalArgumentException("Unknown provider " + args[0]));
+        int shardIndex = args.length == 4 ? Integer.parseInt(args[2]) : 0;
+        int shardCount = args.length == 4 ? Integer.parseInt(args[3]) : 1;
+        releases(provider, new File(args[1]), shardIndex, shardCount).run();
+    }
+
+}
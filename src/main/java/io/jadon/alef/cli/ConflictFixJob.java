@@ -0,0 +1,39 @@
+package io.jadon.alef.cli;
+
+import com.google.gson.JsonObject;
+import io.jadon.alef.provider.spigot.SpigotConflictFixer;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Collection;
+
+/**
+ * Spigot conflict fixes, see {@link SpigotConflictFixer}
+ * <pre>
+ * {"type": "conflict-fix", "spigotJar": "obf-spigot-1.16.1.jar", "vanillaJar": "server-1.16.1.jar",
+ *  "output": "mappings/1.16.1-obf-spigot-conflict-fix"}
+ * </pre>
+ */
+public class ConflictFixJob extends Job {
+
+    private final File spigotJar;
+    private final File vanillaJar;
+
+    public ConflictFixJob(JsonObject json) {
+        super(json, "conflict-fix " + json.get("spigotJar").getAsString());
+        this.spigotJar = new File(json.get("spigotJar").getAsString());
+        this.vanillaJar = new File(json.get("vanillaJar").getAsString());
+    }
+
+    @Override
+    public void files(Collection<Path> files) {
+        files.add(spigotJar.toPath());
+        files.add(vanillaJar.toPath());
+    }
+
+    @Override
+    public void run(JobContext context) throws Exception {
+        write(SpigotConflictFixer.generateMappingFixes(spigotJar, vanillaJar));
+    }
+
+}
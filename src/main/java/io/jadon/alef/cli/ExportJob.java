@@ -0,0 +1,41 @@
+package io.jadon.alef.cli;
+
+import com.google.gson.JsonObject;
+import io.jadon.alef.MinecraftVersion;
+import io.jadon.alef.provider.MappingProvider;
+import org.cadixdev.lorenz.MappingSet;
+
+import java.util.Collection;
+
+/**
+ * A provider's mapping set for one version
+ * <pre>
+ * {"type": "export", "version": "1.16.1", "provider": "spigot", "output": "mappings/1.16.1-spigot", "reverse": false}
+ * </pre>
+ */
+public class ExportJob extends Job {
+
+    private final MinecraftVersion version;
+    private final MappingProvider provider;
+    private final boolean reverse;
+
+    public ExportJob(JsonObject json) {
+        super(json, "export " + json.get("provider").getAsString() + " " + json.get("version").getAsString());
+        this.version = version(json, "version");
+        this.provider = provider(json, "provider");
+        this.reverse = json.has("reverse") && json.get("reverse").getAsBoolean();
+    }
+
+    @Override
+    public void versions(Collection<MinecraftVersion> versions) {
+        versions.add(version);
+    }
+
+    @Override
+    public void run(JobContext context) throws Exception {
+        MappingSet mappings = context.getProviderSet(provider, version).join()
+                .orElseThrow(() -> new IllegalStateException("No mappings for " + version));
+        write(reverse ? mappings.reverse() : mappings);
+    }
+
+}
@@ -0,0 +1,93 @@
+package io.jadon.alef.cli;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import io.jadon.alef.MinecraftVersion;
+import io.jadon.alef.io.MultiFormatWriter;
+import io.jadon.alef.io.OutputFormat;
+import io.jadon.alef.provider.MappingProvider;
+import lombok.Getter;
+import org.cadixdev.lorenz.MappingSet;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * One unit of work in a job file
+ */
+public abstract class Job {
+
+    @Getter
+    protected final String name;
+    protected final Path output;
+    protected final List<OutputFormat> formats = new ArrayList<>();
+
+    protected Job(JsonObject json, String defaultName) {
+        this.name = json.has("name") ? json.get("name").getAsString() : defaultName;
+        this.output = Paths.get(json.get("output").getAsString());
+        JsonArray formatNames = json.has("formats") ? json.getAsJsonArray("formats") : new JsonArray();
+        for (JsonElement formatName : formatNames) {
+            formats.add(OutputFormat.fromExtension(formatName.getAsString())
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown format " + formatName.getAsString())));
+        }
+        if (formats.isEmpty()) formats.add(OutputFormat.SRG);
+    }
+
+    /**
+     * Tell the context about chains this job will need, so they can be computed together with other jobs' chains
+     */
+    public void plan(Collection<JobContext.Chain> chains) {
+    }
+
+    /**
+     * Tell the context which versions' provider sets this job reads, so it knows when to run again in watch mode
+     */
+    public void versions(Collection<MinecraftVersion> versions) {
+    }
+
+    /**
+     * Tell the context which files this job reads directly, besides provider sets and matches
+     */
+    public void files(Collection<Path> files) {
+    }
+
+    public abstract void run(JobContext context) throws Exception;
+
+    protected void write(MappingSet mappings) throws IOException {
+        MultiFormatWriter writer = new MultiFormatWriter();
+        for (OutputFormat format : formats) {
+            writer.addOutput(format, output.resolveSibling(output.getFileName() + "." + format.getExtension()));
+        }
+        writer.write(mappings);
+    }
+
+    protected static MinecraftVersion version(JsonObject json, String key) {
+        String id = json.get(key).getAsString();
+        return MinecraftVersion.fromId(id).orElseThrow(() -> new IllegalArgumentException("Unknown version " + id));
+    }
+
+    protected static MappingProvider provider(JsonObject json, String key) {
+        String name = json.get(key).getAsString();
+        return MappingProvider.byName(name).orElseThrow(() -> new IllegalArgumentException("Unknown provider " + name));
+    }
+
+    public static Job parse(JsonObject json) {
+        String type = json.get("type").getAsString();
+        switch (type) {
+            case "migration":
+                return new MigrationJob(json);
+            case "export":
+                return new ExportJob(json);
+            case "conflict-fix":
+                return new ConflictFixJob(json);
+            default:
+                throw new IllegalArgumentException("Unknown job type " + type);
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+package io.jadon.alef.cli;
+
+import io.jadon.alef.MinecraftVersion;
+import io.jadon.alef.mapping.CompactMappingSet;
+import io.jadon.alef.match.Match;
+import io.jadon.alef.match.MatchProvider;
+import io.jadon.alef.provider.MappingProvider;
+import lombok.Data;
+import org.cadixdev.lorenz.MappingSet;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+
+/**
+ * Everything jobs in one run share: provider mapping sets, hop matches and chained matches.
+ * Each of them is loaded once on the loader executor, no matter how many jobs ask for it.
+ * <p>
+ * In watch mode the context lives across runs. Sets and hops are dropped when their files change, along with the
+ * chains that go through a dropped hop, and chains are rebuilt from the longest part of them that is still known.
+ */
+public class JobContext {
+
+    private final ExecutorService loader;
+    private final Map<String, CompletableFuture<Optional<CompactMappingSet>>> providerSets = new ConcurrentHashMap<>();
+    /** one Lorenz copy of each provider set, shared by the jobs of the current run */
+    private final Map<String, CompletableFuture<Optional<MappingSet>>> providerViews = new ConcurrentHashMap<>();
+    private final Map<MinecraftVersion, Match> hops = new ConcurrentHashMap<>();
+    private final Map<Chain, CompletableFuture<Match>> chains = new ConcurrentHashMap<>();
+    /** keep the chain to every version on the way, not only the ones that were asked for */
+    private boolean keepSegments;
+
+    @Data
+    public static class Chain {
+        private final MinecraftVersion from;
+        private final MinecraftVersion to;
+    }
+
+    public JobContext(ExecutorService loader) {
+        this.loader = loader;
+    }
+
+    public JobContext(ExecutorService loader, boolean keepSegments) {
+        this.loader = loader;
+        this.keepSegments = keepSegments;
+    }
+
+    /**
+     * Forget every provider set of a version
+     */
+    public void invalidateVersion(MinecraftVersion version) {
+        providerSets.keySet().removeIf(key -> key.endsWith("/" + version));
+        providerViews.keySet().removeIf(key -> key.endsWith("/" + version));
+    }
+
+    /**
+     * Drop the Lorenz copies of the provider sets, only the compact sets are kept between runs
+     */
+    public void endRun() {
+        providerViews.clear();
+    }
+
+    /**
+     * Forget the hop from a version and every chain that goes through it
+     */
+    public void invalidateHop(MinecraftVersion from) {
+        synchronized (chains) {
+            hops.remove(from);
+            chains.keySet().removeIf(chain -> chain.from.ordinal() <= from.ordinal() && chain.to.ordinal() > from.ordinal());
+        }
+    }
+
+    /**
+     * Provider sets are kept as {@link CompactMappingSet}s between runs. Within a run, every job gets the same Lorenz
+     * copy, so jobs must not change it.
+     */
+    public CompletableFuture<Optional<MappingSet>> getProviderSet(MappingProvider provider, MinecraftVersion version) {
+        String key = provider.getClass().getSimpleName() + "/" + version;
+        return providerViews.computeIfAbsent(key, viewKey -> providerSets.computeIfAbsent(key,
+                setKey -> CompletableFuture.supplyAsync(() -> provider.getCompactMappings(version), loader))
+                .thenApply(mappings -> mappings.map(CompactMappingSet::toMappingSet)));
+    }
+
+    public CompletableFuture<Match> getChain(MinecraftVersion from, MinecraftVersion to) {
+        planChains(Collections.singletonList(new Chain(from, to)));
+        return chains.get(new Chain(from, to));
+    }
+
+    /**
+     * Start computing a set of chains. Chains from the same version are built in one walk, so the chain to each
+     * target is an extension of the chain to the target before it.
+     */
+    public void planChains(Collection<Chain> requested) {
+        Map<MinecraftVersion, List<MinecraftVersion>> targetsByFrom = new TreeMap<>();
+        synchronized (chains) {
+            for (Chain chain : requested) {
+                if (chains.containsKey(chain)) continue;
+                chains.put(chain, new CompletableFuture<>());
+                targetsByFrom.computeIfAbsent(chain.from, from -> new ArrayList<>()).add(chain.to);
+            }
+        }
+        for (Map.Entry<MinecraftVersion, List<MinecraftVersion>> entry : targetsByFrom.entrySet()) {
+            MinecraftVersion from = entry.getKey();
+            List<MinecraftVersion> targets = entry.getValue().stream().sorted().collect(Collectors.toList());
+            loader.execute(() -> walk(from, targets));
+        }
+    }
+
+    private void walk(MinecraftVersion from, List<MinecraftVersion> targets) {
+        Match chained = null;
+        int start = from.ordinal();
+        // start from the longest chain from here that is still known
+        for (int i = targets.get(0).ordinal() - 1; i > from.ordinal(); i--) {
+            CompletableFuture<Match> known = chains.get(new Chain(from, MinecraftVersion.values()[i]));
+            if (known != null && known.isDone() && !known.isCompletedExceptionally()) {
+                chained = known.join();
+                start = i;
+                break;
+            }
+        }
+        int targetIndex = 0;
+        try {
+            for (int i = start; targetIndex < targets.size(); i++) {
+                Match hop = getHop(MinecraftVersion.values()[i]);
+                chained = chained == null ? hop : chained.chain(hop);
+                MinecraftVersion reached = MinecraftVersion.values()[i + 1];
+                if (keepSegments) chains.putIfAbsent(new Chain(from, reached), CompletableFuture.completedFuture(chained));
+                while (targetIndex < targets.size() && targets.get(targetIndex) == reached) {
+                    complete(new Chain(from, reached), chained, null);
+                    targetIndex++;
+                }
+            }
+        } catch (RuntimeException e) {
+            for (; targetIndex < targets.size(); targetIndex++) {
+                complete(new Chain(from, targets.get(targetIndex)), null, e);
+            }
+        }
+    }
+
+    /**
+     * Complete a planned chain, unless it was invalidated while it was being walked
+     */
+    private void complete(Chain chain, Match match, Throwable failure) {
+        CompletableFuture<Match> future = chains.get(chain);
+        if (future == null) return;
+        if (failure == null) {
+            future.complete(match);
+        } else {
+            future.completeExceptionally(failure);
+        }
+    }
+
+    private Match getHop(MinecraftVersion from) {
+        return hops.computeIfAbsent(from, version -> {
+            MinecraftVersion to = MinecraftVersion.values()[version.ordinal() + 1];
+            return MatchProvider.getMatch(version, to)
+                    .orElseThrow(() -> new IllegalStateException("Can't find match from " + version.toString()
+                            + " to " + to.toString()));
+        });
+    }
+
+}
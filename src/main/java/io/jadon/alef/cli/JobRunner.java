@@ -0,0 +1,176 @@
+package io.jadon.alef.cli;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.jadon.alef.provider.ArtifactCache;
+import lombok.Data;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs every job in a job file in one JVM, so provider sets and chained matches are only loaded once.
+ * <pre>
+ * {
+ *   "threads": 4,
+ *   "report": "mappings/report.txt",
+ *   "jobs": [
+ *     {"type": "migration", ...},
+ *     {"type": "export", ...},
+ *     {"type": "conflict-fix", ...}
+ *   ]
+ * }
+ * </pre>
+ * See {@link MigrationJob}, {@link ExportJob} and {@link ConflictFixJob} for the job fields.
+ * Jobs don't depend on each other, so they all run at once and only wait on the sets and chains they share.
+ */
+public class JobRunner {
+
+    private final List<Job> jobs = new ArrayList<>();
+    private final int threads;
+    private final Path report;
+
+    @Data
+    public static class Result {
+        private final String name;
+        private final long nanos;
+        private final Throwable failure;
+
+        @Override
+        public String toString() {
+            return String.format("%-8s %9.2fs  %s%s", failure == null ? "OK" : "FAILED", nanos / 1e9, name,
+                    failure == null ? "" : " (" + failure + ")");
+        }
+    }
+
+    public JobRunner(Path jobFile) throws IOException {
+        JsonObject json;
+        try (Reader reader = Files.newBufferedReader(jobFile, StandardCharsets.UTF_8)) {
+            json = JsonParser.parseReader(reader).getAsJsonObject();
+        }
+        for (JsonElement job : json.getAsJsonArray("jobs")) {
+            jobs.add(Job.parse(job.getAsJsonObject()));
+        }
+        this.threads = json.has("threads") ? json.get("threads").getAsInt() : Runtime.getRuntime().availableProcessors();
+        this.report = json.has("report") ? Paths.get(json.get("report").getAsString()) : null;
+    }
+
+    /**
+     * Run every job and write the summary report
+     *
+     * @return results in job file order
+     */
+    public List<Result> run() throws IOException {
+        // loads run on their own pool so jobs blocked on a shared load can't starve it
+        ExecutorService loader = Executors.newFixedThreadPool(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Result> results;
+        long start = System.nanoTime();
+        try {
+            results = run(jobs, new JobContext(loader), executor);
+        } finally {
+            executor.shutdownNow();
+            loader.shutdownNow();
+        }
+        writeReport(results, System.nanoTime() - start);
+        return results;
+    }
+
+    /**
+     * Run some jobs against a context that may already have sets and chains loaded
+     *
+     * @return results in the order of {@code jobs}
+     */
+    static List<Result> run(List<Job> jobs, JobContext context, ExecutorService executor) {
+        List<JobContext.Chain> chains = new ArrayList<>();
+        for (Job job : jobs) {
+            job.plan(chains);
+        }
+        context.planChains(chains);
+
+        List<CompletableFuture<Result>> futures = new ArrayList<>();
+        for (Job job : jobs) {
+            futures.add(CompletableFuture.supplyAsync(() -> runJob(job, context), executor));
+        }
+        List<Result> results = new ArrayList<>();
+        try {
+            for (CompletableFuture<Result> future : futures) {
+                results.add(future.join());
+            }
+        } finally {
+            context.endRun();
+        }
+        return results;
+    }
+
+    List<Job> getJobs() {
+        return jobs;
+    }
+
+    int getThreads() {
+        return threads;
+    }
+
+    private static Result runJob(Job job, JobContext context) {
+        System.out.println("Starting " + job.getName());
+        long start = System.nanoTime();
+        Throwable failure = null;
+        try {
+            job.run(context);
+        } catch (Throwable t) {
+            failure = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+            failure.printStackTrace();
+        }
+        Result result = new Result(job.getName(), System.nanoTime() - start, failure);
+        System.out.println(result);
+        return result;
+    }
+
+    void writeReport(List<Result> results, long totalNanos) throws IOException {
+        List<String> lines = new ArrayList<>();
+        long failed = results.stream().filter(result -> result.getFailure() != null).count();
+        lines.add(String.format("%d jobs, %d failed, %.2fs total on %d threads", results.size(), failed,
+                totalNanos / 1e9, threads));
+        for (Result result : results) {
+            lines.add(result.toString());
+        }
+        lines.forEach(System.out::println);
+        if (report != null) {
+            if (report.getParent() != null) Files.createDirectories(report.getParent());
+            Files.write(report, lines, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Usage: &lt;job file&gt; [--watch]
+     * <p>
+     * With {@code --watch}, jobs run again when their inputs change, see {@link JobWatcher}.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length != 1 && !(args.length == 2 && args[1].equals("--watch"))) {
+            System.out.println("Usage: <job file> [--watch]");
+            System.exit(1);
+        }
+        ArtifactCache.verifyAll();
+        if (args.length == 2) {
+            new JobWatcher(Paths.get(args[0])).watch();
+            return;
+        }
+        List<Result> results = new JobRunner(Paths.get(args[0])).run();
+        if (results.stream().anyMatch(result -> result.getFailure() != null)) {
+            System.exit(1);
+        }
+    }
+
+}
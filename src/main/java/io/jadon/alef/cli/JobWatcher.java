@@ -0,0 +1,293 @@
+package io.jadon.alef.cli;
+
+import io.jadon.alef.MinecraftVersion;
+import io.jadon.alef.match.MatchProvider;
+import io.jadon.alef.provider.MCPProvider;
+import io.jadon.alef.provider.MappingProvider;
+import lombok.Data;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs a job file, then runs jobs again whenever the files they were made from change, for editing matches next to a
+ * matcher session.
+ * <p>
+ * The {@link JobContext} stays loaded between runs. A changed .match or .csrg file drops its hop and the chains
+ * through it, and a changed file in the cache drops the provider sets of its version. A changed MCP snapshot drops
+ * its parsed csvs and the provider sets of every version that uses it. Only the jobs that used what was dropped run
+ * again, and chains are rebuilt from the part before the changed hop. Changes to files jobs read directly, like jars,
+ * rerun those jobs, and a changed job file reruns everything.
+ * <p>
+ * Changes are collected until nothing has changed for {@code -Dalef.watch.debounce} milliseconds (default 300), so
+ * a save that touches a file several times only causes one run.
+ */
+public class JobWatcher {
+
+    private static final long DEBOUNCE_MILLIS = Long.getLong("alef.watch.debounce", 300);
+
+    private final Path jobFile;
+    private final Path cacheDir;
+    private final List<Path> matchDirs = new ArrayList<>();
+    private final ExecutorService loader;
+    private final ExecutorService executor;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+    /** the job file and files jobs read directly, the only files looked at outside the match and cache directories */
+    private final Set<Path> watchedFiles = new HashSet<>();
+    /** size and modification time of every watched file when it was last looked at */
+    private final Map<Path, Stamp> stamps = new HashMap<>();
+    private JobRunner runner;
+    private JobContext context;
+
+    @Data
+    private static class Stamp {
+        private final long size;
+        private final long modified;
+
+        private static Stamp of(Path file) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                return new Stamp(attributes.size(), attributes.lastModifiedTime().toMillis());
+            } catch (IOException e) {
+                // deleted
+                return new Stamp(-1, -1);
+            }
+        }
+    }
+
+    public JobWatcher(Path jobFile) throws IOException {
+        this.jobFile = jobFile.toAbsolutePath().normalize();
+        this.cacheDir = MappingProvider.CACHE_DIR.toPath().toAbsolutePath().normalize();
+        for (MatchProvider matchProvider : MatchProvider.values()) {
+            matchDirs.add(matchProvider.getDirectory().toPath().toAbsolutePath().normalize());
+        }
+        this.runner = new JobRunner(jobFile);
+        this.loader = Executors.newFixedThreadPool(runner.getThreads());
+        this.executor = Executors.newFixedThreadPool(runner.getThreads());
+        this.context = new JobContext(loader, true);
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * Run every job, then keep running the ones that are affected by changes until interrupted
+     */
+    public void watch() throws IOException, InterruptedException {
+        try {
+            Files.createDirectories(cacheDir);
+            for (Path matchDir : matchDirs) {
+                if (Files.isDirectory(matchDir)) register(matchDir, true);
+            }
+            register(cacheDir, true);
+            registerJobFiles();
+            run(runner.getJobs());
+
+            while (!Thread.currentThread().isInterrupted()) {
+                Set<Path> changed = new LinkedHashSet<>();
+                boolean overflow = collect(watchService.take(), changed);
+                WatchKey key;
+                while ((key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    overflow |= collect(key, changed);
+                }
+                if (overflow) {
+                    System.out.println("Lost track of changes, reloading everything");
+                    context = new JobContext(loader, true);
+                    run(runner.getJobs());
+                } else {
+                    handle(changed);
+                }
+            }
+        } finally {
+            watchService.close();
+            executor.shutdownNow();
+            loader.shutdownNow();
+        }
+    }
+
+    /**
+     * @return true if events were lost
+     */
+    private boolean collect(WatchKey key, Set<Path> changed) throws IOException {
+        Path dir = watchedDirs.get(key);
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)
+                    && (path.startsWith(cacheDir) || matchDirs.stream().anyMatch(path::startsWith))) {
+                register(path, true);
+                continue;
+            }
+            if (!ignored(path)) changed.add(path);
+        }
+        if (!key.reset()) watchedDirs.remove(key);
+        return overflow;
+    }
+
+    private void handle(Set<Path> changed) throws IOException {
+        // only count files that are different from the last time they were seen
+        changed.removeIf(path -> {
+            Stamp stamp = Stamp.of(path);
+            return stamp.equals(stamps.put(path, stamp));
+        });
+        if (changed.isEmpty()) return;
+
+        if (changed.contains(jobFile)) {
+            System.out.println("Job file changed, running every job");
+            runner = new JobRunner(jobFile);
+            registerJobFiles();
+            run(runner.getJobs());
+            return;
+        }
+
+        Set<MinecraftVersion> hops = new TreeSet<>();
+        Set<MinecraftVersion> versions = new TreeSet<>();
+        Set<String> snapshots = new TreeSet<>();
+        Set<Path> files = new HashSet<>();
+        for (Path path : changed) {
+            if (matchDirs.stream().anyMatch(path::startsWith)) {
+                getHop(path.getFileName().toString()).ifPresent(hops::add);
+            } else if (path.startsWith(cacheDir)) {
+                Path relative = cacheDir.relativize(path);
+                Optional<String> snapshot = getSnapshot(relative);
+                if (snapshot.isPresent()) {
+                    snapshots.add(snapshot.get());
+                    versions.addAll(MCPProvider.getVersionsUsing(snapshot.get()));
+                } else {
+                    getVersion(relative).ifPresent(versions::add);
+                }
+            }
+            files.add(path);
+        }
+        if (!snapshots.isEmpty()) snapshots.forEach(MappingProvider.mcp()::invalidateSnapshot);
+        hops.forEach(context::invalidateHop);
+        versions.forEach(context::invalidateVersion);
+
+        List<Job> affected = runner.getJobs().stream().filter(job -> isAffected(job, hops, versions, files))
+                .collect(Collectors.toList());
+        System.out.println(changed.size() + " files changed, hops " + hops + ", versions " + versions + ": running "
+                + affected.size() + " of " + runner.getJobs().size() + " jobs");
+        if (!affected.isEmpty()) run(affected);
+    }
+
+    private static boolean isAffected(Job job, Set<MinecraftVersion> hops, Set<MinecraftVersion> versions, Set<Path> files) {
+        List<JobContext.Chain> jobChains = new ArrayList<>();
+        job.plan(jobChains);
+        for (JobContext.Chain chain : jobChains) {
+            for (MinecraftVersion hop : hops) {
+                if (chain.getFrom().ordinal() <= hop.ordinal() && chain.getTo().ordinal() > hop.ordinal()) return true;
+            }
+        }
+        List<MinecraftVersion> jobVersions = new ArrayList<>();
+        job.versions(jobVersions);
+        if (jobVersions.stream().anyMatch(versions::contains)) return true;
+        List<Path> jobFiles = new ArrayList<>();
+        job.files(jobFiles);
+        return jobFiles.stream().map(path -> path.toAbsolutePath().normalize()).anyMatch(files::contains);
+    }
+
+    private void run(List<Job> jobs) throws IOException {
+        long start = System.nanoTime();
+        List<JobRunner.Result> results = JobRunner.run(jobs, context, executor);
+        runner.writeReport(results, System.nanoTime() - start);
+        // downloads made by the run aren't changes to react to
+        try (Stream<Path> paths = Files.walk(cacheDir)) {
+            paths.filter(Files::isRegularFile).forEach(path -> stamps.put(path, Stamp.of(path)));
+        }
+        System.out.println("Watching for changes");
+    }
+
+    /**
+     * Hops are named by their match file, like {@code 1.16.1-1.16.2-rc1.match}. Version ids can have dashes too, so
+     * every split is tried.
+     */
+    static Optional<MinecraftVersion> getHop(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        if (dot == -1) return Optional.empty();
+        String name = fileName.substring(0, dot);
+        for (int dash = name.indexOf('-'); dash != -1; dash = name.indexOf('-', dash + 1)) {
+            Optional<MinecraftVersion> from = MinecraftVersion.fromId(name.substring(0, dash));
+            if (from.isPresent() && MinecraftVersion.fromId(name.substring(dash + 1)).isPresent()) return from;
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Cache files are either in a directory named after their version, like {@code 1.16.1/client.jar}, or named
+     * after it, like {@code yarn/yarn-1.16.1+build.21.tiny}
+     */
+    static Optional<MinecraftVersion> getVersion(Path relative) {
+        if (relative.getNameCount() > 1) {
+            Optional<MinecraftVersion> version = MinecraftVersion.fromId(relative.getName(0).toString());
+            if (version.isPresent()) return version;
+        }
+        String name = relative.getFileName().toString();
+        int dash = name.indexOf('-');
+        int dot = name.lastIndexOf('.');
+        if (dash == -1 || dot <= dash) return Optional.empty();
+        name = name.substring(dash + 1, dot);
+        int plus = name.indexOf('+');
+        return MinecraftVersion.fromId(plus == -1 ? name : name.substring(0, plus));
+    }
+
+    /**
+     * MCP snapshots are shared by several versions, in {@code mcp_snapshot/<mcp version>/fields.csv}
+     *
+     * @return the mcp version
+     */
+    static Optional<String> getSnapshot(Path relative) {
+        if (relative.getNameCount() < 3 || !relative.getName(0).toString().equals("mcp_snapshot")) return Optional.empty();
+        return Optional.of(relative.getName(1).toString());
+    }
+
+    /**
+     * Files written while reading the others, and files next to the job file that no job reads
+     */
+    private boolean ignored(Path path) {
+        String name = path.getFileName().toString();
+        if (name.endsWith(".offsets") || name.endsWith(".tmp")) return true;
+        if (!path.startsWith(cacheDir)) return !watchedFiles.contains(path) && matchDirs.stream().noneMatch(path::startsWith);
+        Path relative = cacheDir.relativize(path);
+        String first = relative.getName(0).toString();
+        return first.equals("index") || first.equals("lineage") || first.equals("objects");
+    }
+
+    private void registerJobFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        files.add(jobFile);
+        for (Job job : runner.getJobs()) {
+            job.files(files);
+        }
+        watchedFiles.clear();
+        for (Path file : files) {
+            watchedFiles.add(file.toAbsolutePath().normalize());
+            Path dir = file.toAbsolutePath().normalize().getParent();
+            if (dir != null && Files.isDirectory(dir) && !watchedDirs.containsValue(dir)) register(dir, false);
+        }
+    }
+
+    private void register(Path root, boolean recursive) throws IOException {
+        try (Stream<Path> dirs = recursive ? Files.walk(root) : Stream.of(root)) {
+            for (Path dir : dirs.filter(Files::isDirectory).collect(Collectors.toList())) {
+                if (watchedDirs.containsValue(dir)) continue;
+                WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                watchedDirs.put(key, dir);
+                try (Stream<Path> files = Files.list(dir)) {
+                    files.filter(Files::isRegularFile).forEach(file -> stamps.put(file, Stamp.of(file)));
+                }
+            }
+        }
+    }
+
+}
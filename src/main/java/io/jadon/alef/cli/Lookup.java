@@ -0,0 +1,158 @@
+package io.jadon.alef.cli;
+
+import io.jadon.alef.MinecraftVersion;
+import io.jadon.alef.lineage.LineageIndex;
+import io.jadon.alef.mapping.NameIndex;
+import io.jadon.alef.provider.MappingProvider;
+import io.jadon.alef.service.Translator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+
+/**
+ * One-shot lookups for hooks and editor tooling, the entry point of the native image.
+ * <p>
+ * Lookups are answered from the name and lineage indexes in the cache, so a warm lookup reads one file and never
+ * loads a mapping set. A cold one builds the index first, which takes as long as loading the provider's mappings.
+ * <pre>
+ * search &lt;version&gt; &lt;namespace&gt; &lt;query&gt; [prefix|hump|fuzzy] [limit]
+ * history &lt;version&gt; &lt;key&gt;
+ * providers &lt;version&gt; &lt;namespace&gt;
+ * translate &lt;version&gt; &lt;namespace&gt; &lt; symbols
+ * </pre>
+ * Results are the only thing printed to stdout, logging from loading mappings goes to stderr. A cached name index is
+ * used without checking whether the provider's mappings changed since, which could take a network request.
+ * <p>
+ * Search prints one line per hit like {@code /search} of the {@link io.jadon.alef.service.LookupService}, and exits
+ * with 1 when nothing matched, as does history for a key that isn't in any match. A bad argument exits with 2.
+ * Translate reads obfuscated symbols like {@code /translate}, one per line, and only reads the classes it is asked
+ * about when the provider can do that.
+ */
+public class Lookup {
+
+    private static final String USAGE = "Usage: search <version> <namespace> <query> [prefix|hump|fuzzy] [limit]\n"
+            + "       history <version> <key>\n"
+            + "       providers <version> <namespace>\n"
+            + "       translate <version> <namespace> < symbols";
+
+    private static int search(PrintStream out, MinecraftVersion version, String namespace, String query, String mode, int limit) throws IOException {
+        Optional<NameIndex> index = NameIndex.of(namespace, version, false);
+        if (!index.isPresent()) {
+            System.err.println("No mappings for " + version + " " + namespace);
+            return 1;
+        }
+        Set<NameIndex.Kind> kinds = EnumSet.allOf(NameIndex.Kind.class);
+        List<NameIndex.Hit> hits;
+        switch (mode) {
+            case "prefix":
+                hits = index.get().prefix(query, kinds, limit);
+                break;
+            case "hump":
+                hits = index.get().camelHump(query, kinds, limit);
+                break;
+            case "fuzzy":
+                hits = index.get().fuzzy(query, 1, kinds, limit);
+                break;
+            default:
+                System.err.println("Unknown mode " + mode);
+                return 2;
+        }
+        StringBuilder output = new StringBuilder();
+        for (NameIndex.Hit hit : hits) {
+            output.append(hit).append('\n');
+        }
+        out.print(output);
+        return hits.isEmpty() ? 1 : 0;
+    }
+
+    private static int history(PrintStream out, MinecraftVersion version, String key) throws IOException {
+        LineageIndex index = LineageIndex.load();
+        OptionalInt lineage = index.findLineage(version, key);
+        if (!lineage.isPresent()) {
+            System.err.println(key + " isn't in any match for " + version);
+            return 1;
+        }
+        StringBuilder output = new StringBuilder();
+        index.getHistory(lineage.getAsInt()).forEach((historyVersion, name) ->
+                output.append(historyVersion).append('\t').append(name).append('\n'));
+        out.print(output);
+        return 0;
+    }
+
+    private static int translate(PrintStream out, MinecraftVersion version, String namespace) throws IOException {
+        Optional<MappingProvider> provider = MappingProvider.byName(namespace);
+        if (!provider.isPresent()) {
+            System.err.println("Unknown provider " + namespace);
+            return 2;
+        }
+        Optional<Translator> translator = Translator.of(provider.get(), version);
+        if (!translator.isPresent()) {
+            System.err.println("No mappings for " + version + " " + namespace);
+            return 1;
+        }
+        boolean missing = false;
+        StringBuilder output = new StringBuilder();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.trim().isEmpty()) continue;
+            String translated = translator.get().translate(line.trim());
+            missing |= translated.startsWith("! ");
+            output.append(translated).append('\n');
+        }
+        out.print(output);
+        return missing ? 1 : 0;
+    }
+
+    /**
+     * @param out where results go, everything else is printed to {@link System#out} and {@link System#err}
+     */
+    public static int run(String[] args, PrintStream out) throws IOException {
+        if (args.length < 3) {
+            System.err.println(USAGE);
+            return 2;
+        }
+        Optional<MinecraftVersion> version = MinecraftVersion.fromId(args[1]);
+        if (!version.isPresent()) {
+            System.err.println("Unknown version " + args[1]);
+            return 2;
+        }
+        switch (args[0]) {
+            case "search":
+                if (args.length < 4) break;
+                int limit;
+                try {
+                    limit = args.length > 5 ? Integer.parseInt(args[5]) : 50;
+                } catch (NumberFormatException e) {
+                    break;
+                }
+                return search(out, version.get(), args[2], args[3], args.length > 4 ? args[4] : "prefix", limit);
+            case "history":
+                return history(out, version.get(), args[2]);
+            case "providers":
+                List<String> providers = MappingProvider.findProviders(version.get(), args[2]);
+                providers.forEach(out::println);
+                return providers.isEmpty() ? 1 : 0;
+            case "translate":
+                return translate(out, version.get(), args[2]);
+        }
+        System.err.println(USAGE);
+        return 2;
+    }
+
+    public static void main(String[] args) throws IOException {
+        PrintStream out = System.out;
+        // providers and indexes log to System.out, which would end up in the results scripts read
+        System.setOut(System.err);
+        System.exit(run(args, out));
+    }
+
+}
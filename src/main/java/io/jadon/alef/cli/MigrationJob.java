@@ -0,0 +1,90 @@
+package io.jadon.alef.cli;
+
+import com.google.gson.JsonObject;
+import io.jadon.alef.MinecraftVersion;
+import io.jadon.alef.jar.MappingValidator;
+import io.jadon.alef.match.Match;
+import io.jadon.alef.provider.MappingProvider;
+import org.cadixdev.lorenz.MappingSet;
+
+import java.io.File;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Migration mappings between two versions, like {@link io.jadon.alef.Alef#createMigrationMappings}
+ * <pre>
+ * {"type": "migration", "from": "1.16.1", "to": "1.16.2", "fromProvider": "yarn", "toProvider": "yarn",
+ *  "output": "mappings/1.16.1-to-1.16.2", "formats": ["tsrg", "srg"]}
+ * </pre>
+ * {@code toProvider} defaults to {@code fromProvider}, and {@code fromProvider} to {@code provider}.
+ * <p>
+ * With {@code "validateJar"} set to a jar in the names of {@code toProvider}, the mappings are checked against it
+ * and a {@link MappingValidator.Report} is written next to the output as {@code .validation.txt}.
+ */
+public class MigrationJob extends Job {
+
+    private final MinecraftVersion from;
+    private final MinecraftVersion to;
+    private final MappingProvider fromProvider;
+    private final MappingProvider toProvider;
+    private final File validateJar;
+
+    public MigrationJob(JsonObject json) {
+        super(json, "migration " + json.get("from").getAsString() + " -> " + json.get("to").getAsString());
+        this.from = version(json, "from");
+        this.to = version(json, "to");
+        this.fromProvider = provider(json, json.has("fromProvider") ? "fromProvider" : "provider");
+        this.toProvider = json.has("toProvider") ? provider(json, "toProvider") : fromProvider;
+        this.validateJar = json.has("validateJar") ? new File(json.get("validateJar").getAsString()) : null;
+        if (from.ordinal() >= to.ordinal()) {
+            throw new IllegalArgumentException(from + " is not before " + to);
+        }
+    }
+
+    @Override
+    public void plan(Collection<JobContext.Chain> chains) {
+        chains.add(new JobContext.Chain(from, to));
+    }
+
+    @Override
+    public void versions(Collection<MinecraftVersion> versions) {
+        versions.add(from);
+        versions.add(to);
+    }
+
+    @Override
+    public void files(Collection<Path> files) {
+        if (validateJar != null) files.add(validateJar.toPath());
+    }
+
+    @Override
+    public void run(JobContext context) throws Exception {
+        // start everything before waiting on any of it
+        CompletableFuture<Optional<MappingSet>> fromFuture = context.getProviderSet(fromProvider, from);
+        CompletableFuture<Optional<MappingSet>> toFuture = context.getProviderSet(toProvider, to);
+        CompletableFuture<Match> chainFuture = context.getChain(from, to);
+        Optional<MappingSet> fromMappings = fromFuture.join();
+        Optional<MappingSet> toMappings = toFuture.join();
+        Match match = chainFuture.join();
+        if (!fromMappings.isPresent() || !toMappings.isPresent()) {
+            throw new IllegalStateException("Missing mappings for " + (fromMappings.isPresent() ? to : from));
+        }
+        MappingSet migration = match.combineMappings(fromMappings.get(), toMappings.get());
+        write(migration);
+        if (validateJar != null) validate(migration);
+    }
+
+    private void validate(MappingSet migration) throws Exception {
+        MappingValidator.Report report = MappingValidator.of(validateJar).validate(migration);
+        System.out.println(name + ": " + report);
+        try (Writer writer = Files.newBufferedWriter(output.resolveSibling(output.getFileName() + ".validation.txt"))) {
+            report.write(writer);
+        }
+    }
+
+}
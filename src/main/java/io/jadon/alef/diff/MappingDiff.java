@@ -0,0 +1,284 @@
+package io.jadon.alef.diff;
+
+import io.jadon.alef.match.Match;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * Finds the names that changed between two mapping sets.
+ * <p>
+ * Both sets are flattened into obf key -> deobf name entries, split into partitions by the hash of the top level class,
+ * and every partition is compared on its own thread. Records go to the sink one partition at a time, sorted by key
+ * within the partition, so only the flattened names are held in memory.
+ * <p>
+ * Keys look like {@code a$b}, {@code a$b.c} for fields and {@code a$b.c(I)V} for methods.
+ */
+public class MappingDiff {
+
+    private final int partitions;
+
+    @AllArgsConstructor
+    public enum Change {
+        ADDED("+"),
+        REMOVED("-"),
+        RENAMED("~");
+
+        @Getter
+        private final String symbol;
+    }
+
+    @Data
+    public static class Record {
+        private final Change change;
+        private final String key;
+        private final String oldName;
+        private final String newName;
+
+        @Override
+        public String toString() {
+            switch (change) {
+                case ADDED:
+                    return symbol() + key + "\t" + newName;
+                case REMOVED:
+                    return symbol() + key + "\t" + oldName;
+                default:
+                    return symbol() + key + "\t" + oldName + "\t" + newName;
+            }
+        }
+
+        private String symbol() {
+            return change.getSymbol() + "\t";
+        }
+    }
+
+    @Data
+    public static class Stats {
+        private final int added;
+        private final int removed;
+        private final int renamed;
+        private final int unchanged;
+        private final long nanos;
+
+        @Override
+        public String toString() {
+            return String.format("%d added, %d removed, %d renamed, %d unchanged in %.2fs", added, removed, renamed,
+                    unchanged, nanos / 1e9);
+        }
+    }
+
+    /**
+     * Flattened names of one side, old keys that didn't match anything are kept apart
+     */
+    private class Side {
+        private final List<Map<String, String>> names = new ArrayList<>(partitions);
+        private final List<Map<String, String>> unmatched = new ArrayList<>(partitions);
+
+        private Side() {
+            for (int i = 0; i < partitions; i++) {
+                names.add(new ConcurrentHashMap<>());
+                unmatched.add(new ConcurrentHashMap<>());
+            }
+        }
+
+        private void put(String key, String name, Map<String, String> translation) {
+            if (translation == null) {
+                names.get(partition(key)).put(key, name);
+                return;
+            }
+            String translated = translation.get(key);
+            if (translated == null) {
+                unmatched.get(partition(key)).put(key, name);
+            } else {
+                names.get(partition(translated)).put(translated, name);
+            }
+        }
+    }
+
+    public MappingDiff() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    public MappingDiff(int partitions) {
+        this.partitions = partitions;
+    }
+
+    /**
+     * Diff two sets of the same version
+     *
+     * @param oldSet old mappings, obf -> named
+     * @param newSet new mappings, obf -> named
+     * @param sink   gets every record, always from one thread at a time
+     */
+    public Stats diff(MappingSet oldSet, MappingSet newSet, Consumer<Record> sink) {
+        return diff(oldSet, null, newSet, sink);
+    }
+
+    /**
+     * Diff sets of two versions, using a match to line up their obf names.
+     * Keys in the records are the new obf names, except for old symbols that the match dropped.
+     *
+     * @param match  old obf -> new obf
+     * @param oldSet old version mappings, obf -> named
+     * @param newSet new version mappings, obf -> named
+     * @param sink   gets every record, always from one thread at a time
+     */
+    public Stats diff(Match match, MappingSet oldSet, MappingSet newSet, Consumer<Record> sink) {
+        return diff(oldSet, translation(match), newSet, sink);
+    }
+
+    /**
+     * Diff into a file, one tab separated record per line
+     */
+    public Stats diff(MappingSet oldSet, MappingSet newSet, Path output) throws IOException {
+        return write(output, sink -> diff(oldSet, newSet, sink));
+    }
+
+    public Stats diff(Match match, MappingSet oldSet, MappingSet newSet, Path output) throws IOException {
+        return write(output, sink -> diff(match, oldSet, newSet, sink));
+    }
+
+    private static Stats write(Path output, Function<Consumer<Record>, Stats> diff) throws IOException {
+        if (output.getParent() != null) Files.createDirectories(output.getParent());
+        try (Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            return diff.apply(record -> {
+                try {
+                    writer.write(record.toString());
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private Stats diff(MappingSet oldSet, Map<String, String> translation, MappingSet newSet, Consumer<Record> sink) {
+        long start = System.nanoTime();
+        Side oldSide = flatten(oldSet, translation);
+        Side newSide = flatten(newSet, null);
+
+        AtomicInteger added = new AtomicInteger();
+        AtomicInteger removed = new AtomicInteger();
+        AtomicInteger renamed = new AtomicInteger();
+        AtomicInteger unchanged = new AtomicInteger();
+        IntStream.range(0, partitions).parallel().mapToObj(partition -> {
+            Map<String, String> oldNames = oldSide.names.get(partition);
+            Map<String, String> newNames = newSide.names.get(partition);
+            List<Record> records = new ArrayList<>();
+            for (Map.Entry<String, String> entry : oldNames.entrySet()) {
+                String newName = newNames.get(entry.getKey());
+                if (newName == null) {
+                    records.add(new Record(Change.REMOVED, entry.getKey(), entry.getValue(), null));
+                } else if (!newName.equals(entry.getValue())) {
+                    records.add(new Record(Change.RENAMED, entry.getKey(), entry.getValue(), newName));
+                } else {
+                    unchanged.incrementAndGet();
+                }
+            }
+            for (Map.Entry<String, String> entry : newNames.entrySet()) {
+                if (!oldNames.containsKey(entry.getKey())) {
+                    records.add(new Record(Change.ADDED, entry.getKey(), null, entry.getValue()));
+                }
+            }
+            for (Map.Entry<String, String> entry : oldSide.unmatched.get(partition).entrySet()) {
+                records.add(new Record(Change.REMOVED, entry.getKey(), entry.getValue(), null));
+            }
+            // this partition is done, let it go
+            oldNames.clear();
+            newNames.clear();
+            records.sort(Comparator.comparing(Record::getKey));
+            return records;
+        }).forEachOrdered(records -> {
+            for (Record record : records) {
+                switch (record.change) {
+                    case ADDED:
+                        added.incrementAndGet();
+                        break;
+                    case REMOVED:
+                        removed.incrementAndGet();
+                        break;
+                    default:
+                        renamed.incrementAndGet();
+                }
+                sink.accept(record);
+            }
+        });
+        return new Stats(added.get(), removed.get(), renamed.get(), unchanged.get(), System.nanoTime() - start);
+    }
+
+    private Side flatten(MappingSet mappings, Map<String, String> translation) {
+        Side side = new Side();
+        mappings.getTopLevelClassMappings().parallelStream()
+                .forEach(classMapping -> flattenClass(side, classMapping, translation));
+        return side;
+    }
+
+    private static void flattenClass(Side side, ClassMapping<?, ?> classMapping, Map<String, String> translation) {
+        String owner = classMapping.getFullObfuscatedName();
+        side.put(owner, classMapping.getFullDeobfuscatedName(), translation);
+        for (FieldMapping fieldMapping : classMapping.getFieldMappings()) {
+            side.put(owner + "." + fieldMapping.getObfuscatedName(), fieldMapping.getDeobfuscatedName(), translation);
+        }
+        for (MethodMapping methodMapping : classMapping.getMethodMappings()) {
+            side.put(owner + "." + methodMapping.getObfuscatedName() + methodMapping.getObfuscatedDescriptor(),
+                    methodMapping.getDeobfuscatedName(), translation);
+        }
+        for (ClassMapping<?, ?> innerClassMapping : classMapping.getInnerClassMappings()) {
+            flattenClass(side, innerClassMapping, translation);
+        }
+    }
+
+    /**
+     * @return old key -> new key for every symbol in the match
+     */
+    private static Map<String, String> translation(Match match) {
+        Map<String, String> translation = new HashMap<>();
+        for (Match.ClassMatch classMatch : match.getClassMatches()) {
+            translation.put(classMatch.getOldName(), classMatch.getNewName());
+            for (Match.FieldMatch fieldMatch : classMatch.getFieldMatches()) {
+                translation.put(classMatch.getOldName() + "." + fieldMatch.getOldName(),
+                        classMatch.getNewName() + "." + fieldMatch.getNewName());
+            }
+            for (Match.MethodMatch methodMatch : classMatch.getMethodMatches()) {
+                translation.put(classMatch.getOldName() + "." + methodMatch.getOldName() + methodMatch.getOldSignature(),
+                        classMatch.getNewName() + "." + methodMatch.getNewName() + methodMatch.getNewSignature());
+            }
+        }
+        return translation;
+    }
+
+    /**
+     * Members are kept with their top level class, so a class and everything in it land in one partition
+     */
+    private int partition(String key) {
+        int end = key.length();
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c == '$' || c == '.') {
+                end = i;
+                break;
+            }
+        }
+        return (key.substring(0, end).hashCode() & Integer.MAX_VALUE) % partitions;
+    }
+
+}
@@ -0,0 +1,153 @@
+package io.jadon.alef.io;
+
+import io.jadon.alef.metrics.Metrics;
+import lombok.Data;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.Mapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a mapping set to any number of formats at once.
+ * The set is walked and sorted once and every entry is handed to each output, so adding another format only costs
+ * the bytes it writes. Outputs whose path ends with {@code .gz} are gzip compressed.
+ */
+public class MultiFormatWriter {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final Comparator<Mapping<?, ?>> BY_OBF_NAME = Comparator.comparing(Mapping::getFullObfuscatedName);
+    private static final Comparator<MethodMapping> BY_OBF_SIGNATURE = Comparator
+            .comparing(MethodMapping::getObfuscatedName)
+            .thenComparing(MethodMapping::getObfuscatedDescriptor);
+
+    private final List<Output> outputs = new ArrayList<>();
+
+    @Data
+    private static class Output {
+        private final OutputFormat format;
+        private final Path path;
+        private Writer writer;
+        private int skippedFields;
+    }
+
+    public MultiFormatWriter addOutput(OutputFormat format, Path path) {
+        outputs.add(new Output(format, path));
+        return this;
+    }
+
+    /**
+     * Add an output for every format, named {@code base + "." + extension}
+     *
+     * @param base path without an extension
+     * @param gzip compress the outputs
+     */
+    public MultiFormatWriter addAllFormats(Path base, boolean gzip) {
+        for (OutputFormat format : OutputFormat.values()) {
+            String name = base.getFileName() + "." + format.getExtension() + (gzip ? ".gz" : "");
+            addOutput(format, base.resolveSibling(name));
+        }
+        return this;
+    }
+
+    public void write(MappingSet mappings) throws IOException {
+        try {
+            Metrics.time("write", () -> writeOutputs(mappings));
+        } finally {
+            IOException exception = null;
+            for (Output output : outputs) {
+                if (output.writer == null) continue;
+                try {
+                    output.writer.close();
+                } catch (IOException e) {
+                    exception = e;
+                }
+                output.writer = null;
+            }
+            if (exception != null) throw exception;
+        }
+    }
+
+    private void writeOutputs(MappingSet mappings) throws IOException {
+        for (Output output : outputs) {
+            output.writer = open(output.path);
+            output.skippedFields = 0;
+            output.format.writeHeader(output.writer);
+        }
+        List<? extends ClassMapping<?, ?>> classMappings = mappings.getTopLevelClassMappings().stream()
+                .sorted(BY_OBF_NAME)
+                .collect(Collectors.toList());
+        for (ClassMapping<?, ?> classMapping : classMappings) {
+            writeClass(classMapping);
+        }
+        for (Output output : outputs) {
+            if (output.skippedFields > 0) {
+                System.out.println("Left " + output.skippedFields + " fields without a type out of " + output.path);
+            }
+        }
+    }
+
+    private void writeClass(ClassMapping<?, ?> classMapping) throws IOException {
+        List<FieldMapping> fieldMappings = classMapping.getFieldMappings().stream()
+                .filter(Mapping::hasDeobfuscatedName)
+                .sorted(BY_OBF_NAME)
+                .collect(Collectors.toList());
+        List<MethodMapping> methodMappings = classMapping.getMethodMappings().stream()
+                .filter(Mapping::hasDeobfuscatedName)
+                .sorted(BY_OBF_SIGNATURE)
+                .collect(Collectors.toList());
+
+        if (classMapping.hasDeobfuscatedName() || !fieldMappings.isEmpty() || !methodMappings.isEmpty()) {
+            for (Output output : outputs) {
+                output.format.writeClass(output.writer, classMapping);
+            }
+            for (FieldMapping fieldMapping : fieldMappings) {
+                for (Output output : outputs) {
+                    if (output.format.canWrite(fieldMapping)) {
+                        output.format.writeField(output.writer, fieldMapping);
+                    } else {
+                        output.skippedFields++;
+                    }
+                }
+            }
+            for (MethodMapping methodMapping : methodMappings) {
+                for (Output output : outputs) {
+                    output.format.writeMethod(output.writer, methodMapping);
+                }
+            }
+        }
+
+        List<? extends ClassMapping<?, ?>> innerClassMappings = classMapping.getInnerClassMappings().stream()
+                .sorted(BY_OBF_NAME)
+                .collect(Collectors.toList());
+        for (ClassMapping<?, ?> innerClassMapping : innerClassMappings) {
+            writeClass(innerClassMapping);
+        }
+    }
+
+    private static Writer open(Path path) throws IOException {
+        if (path.getParent() != null) path.getParent().toFile().mkdirs();
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        OutputStream stream = Channels.newOutputStream(channel);
+        if (path.getFileName().toString().endsWith(".gz")) {
+            stream = new GZIPOutputStream(stream, BUFFER_SIZE);
+        } else {
+            stream = new BufferedOutputStream(stream, BUFFER_SIZE);
+        }
+        return new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+}
@@ -0,0 +1,138 @@
+package io.jadon.alef.io;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.cadixdev.bombe.type.FieldType;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Optional;
+
+/**
+ * Mapping formats that {@link MultiFormatWriter} can write.
+ * Each format gets called once per entry, in the order the writer walks the set.
+ */
+@AllArgsConstructor
+public enum OutputFormat {
+    SRG("srg") {
+        @Override
+        public void writeClass(Writer writer, ClassMapping<?, ?> classMapping) throws IOException {
+            if (!classMapping.hasDeobfuscatedName()) return;
+            writer.write("CL: " + classMapping.getFullObfuscatedName() + " " + classMapping.getFullDeobfuscatedName() + "\n");
+        }
+
+        @Override
+        public void writeField(Writer writer, FieldMapping fieldMapping) throws IOException {
+            writer.write("FD: " + fieldMapping.getFullObfuscatedName() + " " + fieldMapping.getFullDeobfuscatedName() + "\n");
+        }
+
+        @Override
+        public void writeMethod(Writer writer, MethodMapping methodMapping) throws IOException {
+            writer.write("MD: " + methodMapping.getFullObfuscatedName() + " " + methodMapping.getObfuscatedDescriptor() + " "
+                    + methodMapping.getFullDeobfuscatedName() + " " + methodMapping.getDeobfuscatedDescriptor() + "\n");
+        }
+    },
+    CSRG("csrg") {
+        @Override
+        public void writeClass(Writer writer, ClassMapping<?, ?> classMapping) throws IOException {
+            if (!classMapping.hasDeobfuscatedName()) return;
+            writer.write(classMapping.getFullObfuscatedName() + " " + classMapping.getFullDeobfuscatedName() + "\n");
+        }
+
+        @Override
+        public void writeField(Writer writer, FieldMapping fieldMapping) throws IOException {
+            writer.write(fieldMapping.getParent().getFullObfuscatedName() + " " + fieldMapping.getObfuscatedName() + " "
+                    + fieldMapping.getDeobfuscatedName() + "\n");
+        }
+
+        @Override
+        public void writeMethod(Writer writer, MethodMapping methodMapping) throws IOException {
+            writer.write(methodMapping.getParent().getFullObfuscatedName() + " " + methodMapping.getObfuscatedName() + " "
+                    + methodMapping.getObfuscatedDescriptor() + " " + methodMapping.getDeobfuscatedName() + "\n");
+        }
+    },
+    TSRG("tsrg") {
+        @Override
+        public void writeClass(Writer writer, ClassMapping<?, ?> classMapping) throws IOException {
+            writer.write(classMapping.getFullObfuscatedName() + " " + classMapping.getFullDeobfuscatedName() + "\n");
+        }
+
+        @Override
+        public void writeField(Writer writer, FieldMapping fieldMapping) throws IOException {
+            writer.write("\t" + fieldMapping.getObfuscatedName() + " " + fieldMapping.getDeobfuscatedName() + "\n");
+        }
+
+        @Override
+        public void writeMethod(Writer writer, MethodMapping methodMapping) throws IOException {
+            writer.write("\t" + methodMapping.getObfuscatedName() + " " + methodMapping.getObfuscatedDescriptor() + " "
+                    + methodMapping.getDeobfuscatedName() + "\n");
+        }
+    },
+    /**
+     * Tiny v2 with the namespaces "source" and "target".
+     * Tiny needs a descriptor for every field, so fields without a known type can't be written.
+     */
+    TINY("tiny") {
+        @Override
+        public void writeHeader(Writer writer) throws IOException {
+            writer.write("tiny\t2\t0\tsource\ttarget\n");
+        }
+
+        @Override
+        public void writeClass(Writer writer, ClassMapping<?, ?> classMapping) throws IOException {
+            writer.write("c\t" + classMapping.getFullObfuscatedName() + "\t" + classMapping.getFullDeobfuscatedName() + "\n");
+        }
+
+        @Override
+        public boolean canWrite(FieldMapping fieldMapping) {
+            return fieldMapping.getType().isPresent();
+        }
+
+        @Override
+        public void writeField(Writer writer, FieldMapping fieldMapping) throws IOException {
+            FieldType type = fieldMapping.getType().orElseThrow(() ->
+                    new IllegalArgumentException(fieldMapping.getFullObfuscatedName() + " has no type"));
+            writer.write("\tf\t" + type + "\t" + fieldMapping.getObfuscatedName() + "\t"
+                    + fieldMapping.getDeobfuscatedName() + "\n");
+        }
+
+        @Override
+        public void writeMethod(Writer writer, MethodMapping methodMapping) throws IOException {
+            writer.write("\tm\t" + methodMapping.getObfuscatedDescriptor() + "\t" + methodMapping.getObfuscatedName() + "\t"
+                    + methodMapping.getDeobfuscatedName() + "\n");
+        }
+    };
+
+    @Getter
+    private final String extension;
+
+    public void writeHeader(Writer writer) throws IOException {
+    }
+
+    public abstract void writeClass(Writer writer, ClassMapping<?, ?> classMapping) throws IOException;
+
+    /**
+     * @return false if the format has no way to write the field, {@link MultiFormatWriter} counts those instead
+     */
+    public boolean canWrite(FieldMapping fieldMapping) {
+        return true;
+    }
+
+    public abstract void writeField(Writer writer, FieldMapping fieldMapping) throws IOException;
+
+    public abstract void writeMethod(Writer writer, MethodMapping methodMapping) throws IOException;
+
+    /**
+     * @param extension file extension without the dot
+     * @return format using that extension
+     */
+    public static Optional<OutputFormat> fromExtension(String extension) {
+        for (OutputFormat format : values()) {
+            if (format.extension.equalsIgnoreCase(extension)) return Optional.of(format);
+        }
+        return Optional.empty();
+    }
+}
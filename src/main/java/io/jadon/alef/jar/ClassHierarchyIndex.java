@@ -0,0 +1,324 @@
+package io.jadon.alef.jar;
+
+import com.google.common.hash.Hashing;
+import io.jadon.alef.provider.MappingProvider;
+import lombok.Data;
+import lombok.Getter;
+import org.cadixdev.bombe.analysis.InheritanceProvider;
+import org.cadixdev.bombe.analysis.InheritanceType;
+import org.cadixdev.bombe.type.signature.FieldSignature;
+import org.cadixdev.bombe.type.signature.MethodSignature;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.InnerClassMapping;
+import org.cadixdev.lorenz.model.TopLevelClassMapping;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Class hierarchy and member index of a jar.
+ * The index is built once per jar hash and stored under {@code cache/index/}, so repeated runs only read it back.
+ */
+public class ClassHierarchyIndex implements InheritanceProvider {
+
+    private static final int MAGIC = 0x414c4546;
+    private static final int FORMAT_VERSION = 1;
+
+    @Getter
+    private final String hash;
+    private final Map<String, ClassEntry> classes;
+    private final Map<String, Optional<ClassInfo>> classInfoCache = new ConcurrentHashMap<>();
+
+    private ClassHierarchyIndex(String hash, Map<String, ClassEntry> classes) {
+        this.hash = hash;
+        this.classes = classes;
+    }
+
+    @Data
+    public static class ClassEntry {
+        private final String name;
+        private final int access;
+        private final String superName;
+        private final List<String> interfaces;
+        /** name + ":" + descriptor -> access */
+        private final Map<String, Integer> fields = new HashMap<>();
+        /** name + descriptor -> access */
+        private final Map<String, Integer> methods = new HashMap<>();
+
+        public boolean isInterface() {
+            return (access & Opcodes.ACC_INTERFACE) != 0;
+        }
+
+        public boolean hasField(String name, String descriptor) {
+            return fields.containsKey(name + ":" + descriptor);
+        }
+
+        /**
+         * @return true if there is a field with this name and any descriptor
+         */
+        public boolean hasField(String name) {
+            for (String field : fields.keySet()) {
+                if (field.length() > name.length() && field.charAt(name.length()) == ':' && field.startsWith(name)) return true;
+            }
+            return false;
+        }
+
+        public boolean hasMethod(String name, String descriptor) {
+            return methods.containsKey(name + descriptor);
+        }
+    }
+
+    /**
+     * Get the index for a jar, building and caching it if this jar hasn't been seen before
+     *
+     * @param jarFile jar to index
+     * @return index of every class in the jar
+     */
+    public static ClassHierarchyIndex of(File jarFile) throws IOException {
+        String hash = com.google.common.io.Files.asByteSource(jarFile).hash(Hashing.sha256()).toString();
+        File indexFile = new File(MappingProvider.CACHE_DIR, "index/" + hash + ".idx");
+        if (indexFile.exists()) {
+            Optional<ClassHierarchyIndex> index = read(indexFile, hash);
+            if (index.isPresent()) return index.get();
+        }
+        ClassHierarchyIndex index = build(jarFile, hash);
+        index.write(indexFile);
+        return index;
+    }
+
+    /**
+     * Scan every class in a jar without reading method bodies
+     *
+     * @param jarFile jar to scan
+     * @param hash    hash of the jar
+     * @return new index
+     */
+    public static ClassHierarchyIndex build(File jarFile, String hash) throws IOException {
+        Map<String, ClassEntry> classes = new ConcurrentHashMap<>();
+        try (ZipFile zip = new ZipFile(jarFile)) {
+            List<ZipEntry> classEntries = new ArrayList<>();
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.getName().endsWith(".class")) classEntries.add(entry);
+            }
+            // ZipFile can be read from many threads, and each class is scanned on its own
+            classEntries.parallelStream().forEach(entry -> {
+                try (InputStream stream = zip.getInputStream(entry)) {
+                    ClassEntry classEntry = scan(new ClassReader(stream));
+                    classes.put(classEntry.name, classEntry);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(entry.getName(), e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return new ClassHierarchyIndex(hash, new HashMap<>(classes));
+    }
+
+    private static ClassEntry scan(ClassReader reader) {
+        ClassEntry[] result = new ClassEntry[1];
+        reader.accept(new ClassVisitor(Opcodes.ASM8) {
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                result[0] = new ClassEntry(name, access, superName,
+                        interfaces == null ? Collections.emptyList() : Arrays.asList(interfaces));
+            }
+
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+                result[0].fields.put(name + ":" + descriptor, access);
+                return null;
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                result[0].methods.put(name + descriptor, access);
+                return null;
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return result[0];
+    }
+
+    private static Optional<ClassHierarchyIndex> read(File indexFile, String hash) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !in.readUTF().equals(hash)) {
+                return Optional.empty();
+            }
+            int classCount = in.readInt();
+            Map<String, ClassEntry> classes = new HashMap<>(classCount * 2);
+            for (int i = 0; i < classCount; i++) {
+                String name = in.readUTF();
+                int access = in.readInt();
+                String superName = in.readBoolean() ? in.readUTF() : null;
+                int interfaceCount = in.readInt();
+                List<String> interfaces = new ArrayList<>(interfaceCount);
+                for (int j = 0; j < interfaceCount; j++) {
+                    interfaces.add(in.readUTF());
+                }
+                ClassEntry entry = new ClassEntry(name, access, superName, interfaces);
+                readMembers(in, entry.fields);
+                readMembers(in, entry.methods);
+                classes.put(name, entry);
+            }
+            return Optional.of(new ClassHierarchyIndex(hash, classes));
+        } catch (EOFException e) {
+            // truncated index, rebuild it
+            return Optional.empty();
+        }
+    }
+
+    private static void readMembers(DataInputStream in, Map<String, Integer> members) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            members.put(in.readUTF(), in.readInt());
+        }
+    }
+
+    private void write(File indexFile) throws IOException {
+        indexFile.getParentFile().mkdirs();
+        File tempFile = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(hash);
+            out.writeInt(classes.size());
+            for (ClassEntry entry : classes.values()) {
+                out.writeUTF(entry.name);
+                out.writeInt(entry.access);
+                out.writeBoolean(entry.superName != null);
+                if (entry.superName != null) out.writeUTF(entry.superName);
+                out.writeInt(entry.interfaces.size());
+                for (String anInterface : entry.interfaces) {
+                    out.writeUTF(anInterface);
+                }
+                writeMembers(out, entry.fields);
+                writeMembers(out, entry.methods);
+            }
+        }
+        Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeMembers(DataOutputStream out, Map<String, Integer> members) throws IOException {
+        out.writeInt(members.size());
+        for (Map.Entry<String, Integer> member : members.entrySet()) {
+            out.writeUTF(member.getKey());
+            out.writeInt(member.getValue());
+        }
+    }
+
+    public Collection<ClassEntry> getClasses() {
+        return Collections.unmodifiableCollection(classes.values());
+    }
+
+    public Optional<ClassEntry> getClass(String name) {
+        return Optional.ofNullable(classes.get(name));
+    }
+
+    public boolean hasClass(String name) {
+        return classes.containsKey(name);
+    }
+
+    /**
+     * Find the class that declares a method, starting at owner and walking up superclasses and interfaces
+     *
+     * @param owner      class to start at
+     * @param name       method name
+     * @param descriptor method descriptor
+     * @return the declaring class if it is in this index
+     */
+    public Optional<String> findMethodOwner(String owner, String name, String descriptor) {
+        Deque<String> queue = new ArrayDeque<>();
+        Set<String> visited = new HashSet<>();
+        queue.add(owner);
+        while (!queue.isEmpty()) {
+            String current = queue.poll();
+            if (!visited.add(current)) continue;
+            ClassEntry entry = classes.get(current);
+            if (entry == null) continue;
+            if (entry.hasMethod(name, descriptor)) return Optional.of(current);
+            if (entry.superName != null) queue.add(entry.superName);
+            queue.addAll(entry.interfaces);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @param name class name
+     * @return every superclass and interface of this class that isn't in this index
+     */
+    public Set<String> getLibraryParents(String name) {
+        Set<String> libraryParents = new HashSet<>();
+        Deque<String> queue = new ArrayDeque<>();
+        Set<String> visited = new HashSet<>();
+        queue.add(name);
+        while (!queue.isEmpty()) {
+            String current = queue.poll();
+            if (!visited.add(current)) continue;
+            ClassEntry entry = classes.get(current);
+            if (entry == null) {
+                libraryParents.add(current);
+                continue;
+            }
+            if (entry.superName != null) queue.add(entry.superName);
+            queue.addAll(entry.interfaces);
+        }
+        return libraryParents;
+    }
+
+    /**
+     * Propagate member mappings down to the classes that inherit them
+     *
+     * @param mappings mappings of the classes in this jar
+     */
+    public void complete(MappingSet mappings) {
+        for (TopLevelClassMapping classMapping : mappings.getTopLevelClassMappings()) {
+            complete(classMapping);
+        }
+    }
+
+    private void complete(ClassMapping<?, ?> classMapping) {
+        classMapping.complete(this);
+        for (InnerClassMapping innerClassMapping : classMapping.getInnerClassMappings()) {
+            complete(innerClassMapping);
+        }
+    }
+
+    @Override
+    public Optional<ClassInfo> provide(String name) {
+        return classInfoCache.computeIfAbsent(name, key -> getClass(key).map(this::toClassInfo));
+    }
+
+    private ClassInfo toClassInfo(ClassEntry entry) {
+        Map<FieldSignature, InheritanceType> fields = new HashMap<>();
+        Map<String, InheritanceType> fieldsByName = new HashMap<>();
+        for (Map.Entry<String, Integer> field : entry.fields.entrySet()) {
+            int split = field.getKey().indexOf(':');
+            String name = field.getKey().substring(0, split);
+            InheritanceType type = InheritanceType.fromModifiers(field.getValue());
+            fields.put(FieldSignature.of(name, field.getKey().substring(split + 1)), type);
+            fieldsByName.put(name, type);
+        }
+        Map<MethodSignature, InheritanceType> methods = new HashMap<>();
+        for (Map.Entry<String, Integer> method : entry.methods.entrySet()) {
+            int split = method.getKey().indexOf('(');
+            methods.put(MethodSignature.of(method.getKey().substring(0, split), method.getKey().substring(split)),
+                    InheritanceType.fromModifiers(method.getValue()));
+        }
+        return new ClassInfo.Impl(entry.name, entry.isInterface(), entry.superName, entry.interfaces,
+                fields, fieldsByName, methods);
+    }
+
+}
@@ -0,0 +1,125 @@
+package io.jadon.alef.jar;
+
+import org.cadixdev.lorenz.MappingSet;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.commons.ClassRemapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Remaps a mod or plugin jar with a mapping set, usually migration mappings from
+ * {@link io.jadon.alef.Alef#createMigrationMappings}.
+ * <p>
+ * Entries are streamed from the input to the output in their original order. Classes are remapped on a thread pool
+ * and only a small window of them is held in memory at once. Everything else is copied over still compressed.
+ * Jar signatures are dropped since they no longer match.
+ */
+public class JarRemapper {
+
+    private final MappingRemapper remapper;
+    private final int threads;
+
+    /**
+     * @param mappings  mappings to apply
+     * @param jar       jar that will be remapped, used for its class hierarchy
+     * @param libraries jars the remapped jar extends, like the Minecraft jar with the old names
+     */
+    public JarRemapper(MappingSet mappings, File jar, List<File> libraries) throws IOException {
+        this(mappings, jar, libraries, Runtime.getRuntime().availableProcessors());
+    }
+
+    public JarRemapper(MappingSet mappings, File jar, List<File> libraries, int threads) throws IOException {
+        List<ClassHierarchyIndex> indexes = new ArrayList<>();
+        indexes.add(ClassHierarchyIndex.of(jar));
+        for (File library : libraries) {
+            indexes.add(ClassHierarchyIndex.of(library));
+        }
+        this.remapper = new MappingRemapper(mappings, indexes);
+        this.threads = threads;
+    }
+
+    public static void remap(MappingSet mappings, File input, File output, List<File> libraries) throws IOException {
+        new JarRemapper(mappings, input, libraries).remap(input, output);
+    }
+
+    /**
+     * Remap a jar. The output is written next to its final path and moved there once it is complete.
+     *
+     * @param input  jar to remap
+     * @param output remapped jar
+     */
+    public void remap(File input, File output) throws IOException {
+        File tempOutput = new File(output.getAbsoluteFile().getParentFile(), output.getName() + ".tmp");
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        int window = threads * 4;
+        try (RawZipFile zip = new RawZipFile(input); RawZipOutput out = new RawZipOutput(tempOutput)) {
+            Deque<Future<RawZipOutput.CompressedEntry>> pending = new ArrayDeque<>();
+            Deque<RawZipFile.Entry> pendingEntries = new ArrayDeque<>();
+            for (RawZipFile.Entry entry : zip.getEntries()) {
+                if (isSignature(entry.getName())) continue;
+                if (entry.getName().endsWith(".class")) {
+                    pending.add(executor.submit(() -> remapClass(zip, entry)));
+                } else {
+                    // resources are copied as they are
+                    pending.add(CompletableFuture.completedFuture(null));
+                }
+                pendingEntries.add(entry);
+                if (pending.size() >= window) {
+                    writeNext(zip, out, pending, pendingEntries);
+                }
+            }
+            while (!pending.isEmpty()) {
+                writeNext(zip, out, pending, pendingEntries);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Files.move(tempOutput.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void writeNext(RawZipFile zip, RawZipOutput out, Deque<Future<RawZipOutput.CompressedEntry>> pending,
+                                  Deque<RawZipFile.Entry> pendingEntries) throws IOException {
+        Future<RawZipOutput.CompressedEntry> future = pending.poll();
+        RawZipFile.Entry entry = pendingEntries.poll();
+        try {
+            RawZipOutput.CompressedEntry remapped = future.get();
+            if (remapped == null) {
+                out.copy(zip, entry);
+            } else {
+                out.write(remapped);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while remapping " + entry.getName(), e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to remap " + entry.getName(), e.getCause());
+        }
+    }
+
+    private RawZipOutput.CompressedEntry remapClass(RawZipFile zip, RawZipFile.Entry entry) throws IOException {
+        ClassReader reader = new ClassReader(zip.readData(entry));
+        ClassWriter writer = new ClassWriter(0);
+        reader.accept(new ClassRemapper(writer, remapper), 0);
+        String oldName = reader.getClassName() + ".class";
+        // keep prefixes like META-INF/versions/9/
+        String prefix = entry.getName().endsWith(oldName)
+                ? entry.getName().substring(0, entry.getName().length() - oldName.length()) : "";
+        String name = prefix + remapper.map(reader.getClassName()) + ".class";
+        return new RawZipOutput.CompressedEntry(name, entry.getDosTime(), writer.toByteArray());
+    }
+
+    private static boolean isSignature(String name) {
+        if (!name.startsWith("META-INF/") || name.indexOf('/', "META-INF/".length()) != -1) return false;
+        return name.endsWith(".SF") || name.endsWith(".RSA") || name.endsWith(".DSA") || name.endsWith(".EC");
+    }
+
+}
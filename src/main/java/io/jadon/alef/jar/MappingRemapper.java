@@ -0,0 +1,120 @@
+package io.jadon.alef.jar;
+
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+import org.objectweb.asm.commons.Remapper;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ASM remapper backed by a flattened copy of a mapping set.
+ * <p>
+ * Lorenz creates mappings on demand while it looks names up, so a {@link org.cadixdev.lorenz.asm.LorenzRemapper}
+ * can't be shared between threads. This copies every name into hash maps up front and resolves inherited members
+ * through {@link ClassHierarchyIndex}es, which only get read, so one instance can remap classes on every core.
+ */
+public class MappingRemapper extends Remapper {
+
+    private final Map<String, String> classes = new HashMap<>();
+    /** owner + "." + name */
+    private final Map<String, String> fields = new HashMap<>();
+    /** owner + "." + name + descriptor */
+    private final Map<String, String> methods = new HashMap<>();
+    private final List<ClassHierarchyIndex> indexes;
+
+    private final Map<String, String> classCache = new ConcurrentHashMap<>();
+    private final Map<String, String> memberCache = new ConcurrentHashMap<>();
+
+    /**
+     * @param mappings mappings to apply
+     * @param indexes  hierarchies of the jar being remapped and the libraries it extends, searched in order
+     */
+    public MappingRemapper(MappingSet mappings, List<ClassHierarchyIndex> indexes) {
+        this.indexes = indexes;
+        for (ClassMapping<?, ?> classMapping : mappings.getTopLevelClassMappings()) {
+            addClass(classMapping);
+        }
+    }
+
+    private void addClass(ClassMapping<?, ?> classMapping) {
+        String owner = classMapping.getFullObfuscatedName();
+        if (classMapping.hasDeobfuscatedName()) {
+            classes.put(owner, classMapping.getFullDeobfuscatedName());
+        }
+        for (FieldMapping fieldMapping : classMapping.getFieldMappings()) {
+            fields.put(owner + "." + fieldMapping.getObfuscatedName(), fieldMapping.getDeobfuscatedName());
+        }
+        for (MethodMapping methodMapping : classMapping.getMethodMappings()) {
+            methods.put(owner + "." + methodMapping.getObfuscatedName() + methodMapping.getObfuscatedDescriptor(),
+                    methodMapping.getDeobfuscatedName());
+        }
+        for (ClassMapping<?, ?> innerClassMapping : classMapping.getInnerClassMappings()) {
+            addClass(innerClassMapping);
+        }
+    }
+
+    @Override
+    public String map(String internalName) {
+        String mapped = classes.get(internalName);
+        if (mapped != null) return mapped;
+        int innerSplit = internalName.lastIndexOf('$');
+        if (innerSplit == -1) return internalName;
+        // unmapped inner class of a mapped outer class
+        return classCache.computeIfAbsent(internalName,
+                name -> map(name.substring(0, innerSplit)) + name.substring(innerSplit));
+    }
+
+    @Override
+    public String mapFieldName(String owner, String name, String descriptor) {
+        return resolve(owner, "." + name, name);
+    }
+
+    @Override
+    public String mapMethodName(String owner, String name, String descriptor) {
+        if (name.startsWith("<")) return name;
+        return resolve(owner, "." + name + descriptor, name);
+    }
+
+    @Override
+    public String mapRecordComponentName(String owner, String name, String descriptor) {
+        return mapFieldName(owner, name, descriptor);
+    }
+
+    /**
+     * Find a member mapping on the owner or the closest parent that has one
+     */
+    private String resolve(String owner, String member, String name) {
+        String key = owner + member;
+        String cached = memberCache.get(key);
+        if (cached != null) return cached;
+
+        Map<String, String> mappings = member.indexOf('(') == -1 ? fields : methods;
+        String resolved = name;
+        Deque<String> queue = new ArrayDeque<>();
+        Set<String> visited = new HashSet<>();
+        queue.add(owner);
+        while (!queue.isEmpty()) {
+            String current = queue.poll();
+            if (!visited.add(current)) continue;
+            String mapped = mappings.get(current + member);
+            if (mapped != null) {
+                resolved = mapped;
+                break;
+            }
+            for (ClassHierarchyIndex index : indexes) {
+                Optional<ClassHierarchyIndex.ClassEntry> entry = index.getClass(current);
+                if (entry.isPresent()) {
+                    if (entry.get().getSuperName() != null) queue.add(entry.get().getSuperName());
+                    queue.addAll(entry.get().getInterfaces());
+                    break;
+                }
+            }
+        }
+        memberCache.put(key, resolved);
+        return resolved;
+    }
+
+}
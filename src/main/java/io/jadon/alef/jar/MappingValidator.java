@@ -0,0 +1,225 @@
+package io.jadon.alef.jar;
+
+import io.jadon.alef.metrics.Metrics;
+import lombok.Data;
+import lombok.Getter;
+import org.cadixdev.bombe.type.FieldType;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.commons.SimpleRemapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Checks that every class, field and method a mapping set maps to exists in a jar, like migration mappings against
+ * the jar of the version they migrate to.
+ * <p>
+ * The jar is read once into a {@link ClassHierarchyIndex}. The mapping set is flattened up front, with descriptors
+ * remapped through a plain map, so the checks only read shared data and run on every core. Members may be declared
+ * on a parent of the class they are mapped on.
+ */
+public class MappingValidator {
+
+    private final ClassHierarchyIndex index;
+
+    public enum Kind {
+        CLASS, FIELD, METHOD
+    }
+
+    @Data
+    public static class Problem {
+        private final Kind kind;
+        /** class, owner.field or owner.method(descriptor), with the names checked against the jar */
+        private final String key;
+        /** the same, with the names the mapping maps from */
+        private final String mappedFrom;
+
+        @Override
+        public String toString() {
+            return kind.name().toLowerCase(Locale.ROOT) + "\t" + key + "\t" + mappedFrom;
+        }
+    }
+
+    @Getter
+    public static class Report {
+        private final int[] checked = new int[Kind.values().length];
+        private final int[] missing = new int[Kind.values().length];
+        private final List<Problem> problems;
+        private final long nanos;
+
+        private Report(int[] checked, int[] missing, List<Problem> problems, long nanos) {
+            System.arraycopy(checked, 0, this.checked, 0, checked.length);
+            System.arraycopy(missing, 0, this.missing, 0, missing.length);
+            this.problems = problems;
+            this.nanos = nanos;
+        }
+
+        public int getChecked(Kind kind) {
+            return checked[kind.ordinal()];
+        }
+
+        public int getMissing(Kind kind) {
+            return missing[kind.ordinal()];
+        }
+
+        public boolean isValid() {
+            return problems.isEmpty();
+        }
+
+        /**
+         * Write the summary followed by one line per problem
+         */
+        public void write(Writer writer) {
+            PrintWriter out = new PrintWriter(writer);
+            out.println("# " + this);
+            for (Problem problem : problems) {
+                out.println(problem);
+            }
+            out.flush();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("classes %d/%d missing, fields %d/%d missing, methods %d/%d missing, checked in %.1fms",
+                    getMissing(Kind.CLASS), getChecked(Kind.CLASS), getMissing(Kind.FIELD), getChecked(Kind.FIELD),
+                    getMissing(Kind.METHOD), getChecked(Kind.METHOD), nanos / 1e6);
+        }
+    }
+
+    /** one mapping to check, with the names on the side being validated */
+    private static class Entry {
+        private final Kind kind;
+        private final String owner;
+        private final @Nullable String name;
+        private final @Nullable String descriptor;
+        private final String mappedFrom;
+
+        private Entry(Kind kind, String owner, @Nullable String name, @Nullable String descriptor, String mappedFrom) {
+            this.kind = kind;
+            this.owner = owner;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.mappedFrom = mappedFrom;
+        }
+    }
+
+    public MappingValidator(ClassHierarchyIndex index) {
+        this.index = index;
+    }
+
+    public static MappingValidator of(File jar) throws IOException {
+        return new MappingValidator(ClassHierarchyIndex.of(jar));
+    }
+
+    /**
+     * Check the deobfuscated side of a mapping set against the jar
+     */
+    public Report validate(MappingSet mappings) {
+        return Metrics.time("validate", () -> check(mappings));
+    }
+
+    private Report check(MappingSet mappings) {
+        long start = System.nanoTime();
+        List<Entry> entries = flatten(mappings);
+        int[] checked = new int[Kind.values().length];
+        AtomicInteger[] missing = new AtomicInteger[Kind.values().length];
+        for (Kind kind : Kind.values()) missing[kind.ordinal()] = new AtomicInteger();
+        for (Entry entry : entries) checked[entry.kind.ordinal()]++;
+
+        Queue<Problem> problems = new ConcurrentLinkedQueue<>();
+        entries.parallelStream().filter(entry -> !exists(entry)).forEach(entry -> {
+            missing[entry.kind.ordinal()].incrementAndGet();
+            problems.add(new Problem(entry.kind, key(entry), entry.mappedFrom));
+        });
+
+        int[] missingCounts = new int[missing.length];
+        for (int i = 0; i < missing.length; i++) missingCounts[i] = missing[i].get();
+        List<Problem> sorted = problems.stream()
+                .sorted(Comparator.comparing(Problem::getKind).thenComparing(Problem::getKey))
+                .collect(Collectors.toList());
+        Metrics.count("validate.missing", sorted.size());
+        return new Report(checked, missingCounts, sorted, System.nanoTime() - start);
+    }
+
+    private static String key(Entry entry) {
+        switch (entry.kind) {
+            case CLASS:
+                return entry.owner;
+            case FIELD:
+                return entry.owner + "." + entry.name + (entry.descriptor == null ? "" : ":" + entry.descriptor);
+            default:
+                return entry.owner + "." + entry.name + entry.descriptor;
+        }
+    }
+
+    private static List<Entry> flatten(MappingSet mappings) {
+        List<ClassMapping<?, ?>> classMappings = new ArrayList<>();
+        Deque<ClassMapping<?, ?>> queue = new ArrayDeque<>(mappings.getTopLevelClassMappings());
+        Map<String, String> classNames = new HashMap<>();
+        while (!queue.isEmpty()) {
+            ClassMapping<?, ?> classMapping = queue.poll();
+            queue.addAll(classMapping.getInnerClassMappings());
+            classMappings.add(classMapping);
+            classNames.put(classMapping.getFullObfuscatedName(), classMapping.getFullDeobfuscatedName());
+        }
+        Remapper remapper = new SimpleRemapper(classNames);
+
+        List<Entry> entries = new ArrayList<>();
+        for (ClassMapping<?, ?> classMapping : classMappings) {
+            String owner = classMapping.getFullDeobfuscatedName();
+            String from = classMapping.getFullObfuscatedName();
+            entries.add(new Entry(Kind.CLASS, owner, null, null, from));
+            for (FieldMapping fieldMapping : classMapping.getFieldMappings()) {
+                String descriptor = fieldMapping.getType().map(FieldType::toString).map(remapper::mapDesc).orElse(null);
+                entries.add(new Entry(Kind.FIELD, owner, fieldMapping.getDeobfuscatedName(), descriptor,
+                        from + "." + fieldMapping.getObfuscatedName()));
+            }
+            for (MethodMapping methodMapping : classMapping.getMethodMappings()) {
+                if (methodMapping.getObfuscatedName().startsWith("<")) continue;
+                entries.add(new Entry(Kind.METHOD, owner, methodMapping.getDeobfuscatedName(),
+                        remapper.mapMethodDesc(methodMapping.getObfuscatedDescriptor()),
+                        from + "." + methodMapping.getObfuscatedName() + methodMapping.getObfuscatedDescriptor()));
+            }
+        }
+        return entries;
+    }
+
+    private boolean exists(Entry entry) {
+        switch (entry.kind) {
+            case CLASS:
+                return index.hasClass(entry.owner);
+            case FIELD:
+                return findField(entry.owner, entry.name, entry.descriptor);
+            default:
+                return index.findMethodOwner(entry.owner, entry.name, entry.descriptor).isPresent();
+        }
+    }
+
+    private boolean findField(String owner, String name, @Nullable String descriptor) {
+        Deque<String> queue = new ArrayDeque<>();
+        Set<String> visited = new HashSet<>();
+        queue.add(owner);
+        while (!queue.isEmpty()) {
+            String current = queue.poll();
+            if (!visited.add(current)) continue;
+            Optional<ClassHierarchyIndex.ClassEntry> entry = index.getClass(current);
+            if (!entry.isPresent()) continue;
+            if (descriptor == null ? entry.get().hasField(name) : entry.get().hasField(name, descriptor)) return true;
+            if (entry.get().getSuperName() != null) queue.add(entry.get().getSuperName());
+            queue.addAll(entry.get().getInterfaces());
+        }
+        return false;
+    }
+
+}
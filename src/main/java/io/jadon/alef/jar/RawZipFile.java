@@ -0,0 +1,165 @@
+package io.jadon.alef.jar;
+
+import lombok.Data;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads a zip's central directory so entries can be copied without decompressing them.
+ * Reads are positional, so any number of threads can read entries at once.
+ */
+class RawZipFile implements Closeable {
+
+    static final int LOCAL_HEADER = 0x04034b50;
+    static final int CENTRAL_HEADER = 0x02014b50;
+    static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    static final int STORED = 0;
+    static final int DEFLATED = 8;
+
+    private final FileChannel channel;
+    private final List<Entry> entries;
+
+    @Data
+    static class Entry {
+        private final String name;
+        private final int method;
+        private final int dosTime;
+        private final int crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+    }
+
+    RawZipFile(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.entries = readCentralDirectory();
+    }
+
+    List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    private List<Entry> readCentralDirectory() throws IOException {
+        long fileSize = channel.size();
+        // the end record is 22 bytes plus a comment of up to 64k
+        int tailSize = (int) Math.min(fileSize, 22 + 0xffff);
+        ByteBuffer tail = read(fileSize - tailSize, tailSize);
+        int end = -1;
+        for (int i = tailSize - 22; i >= 0; i--) {
+            if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY) {
+                end = i;
+                break;
+            }
+        }
+        if (end == -1) throw new ZipException("No end of central directory record");
+        int entryCount = tail.getShort(end + 10) & 0xffff;
+        long directorySize = tail.getInt(end + 12) & 0xffffffffL;
+        long directoryOffset = tail.getInt(end + 16) & 0xffffffffL;
+        if (entryCount == 0xffff || directoryOffset == 0xffffffffL) throw new ZipException("Zip64 is not supported");
+
+        ByteBuffer directory = read(directoryOffset, (int) directorySize);
+        List<Entry> entries = new ArrayList<>(entryCount);
+        int position = 0;
+        for (int i = 0; i < entryCount; i++) {
+            if (directory.getInt(position) != CENTRAL_HEADER) throw new ZipException("Bad central directory entry " + i);
+            int method = directory.getShort(position + 10) & 0xffff;
+            int dosTime = directory.getInt(position + 12);
+            int crc = directory.getInt(position + 16);
+            long compressedSize = directory.getInt(position + 20) & 0xffffffffL;
+            long size = directory.getInt(position + 24) & 0xffffffffL;
+            int nameLength = directory.getShort(position + 28) & 0xffff;
+            int extraLength = directory.getShort(position + 30) & 0xffff;
+            int commentLength = directory.getShort(position + 32) & 0xffff;
+            long localHeaderOffset = directory.getInt(position + 42) & 0xffffffffL;
+            byte[] name = new byte[nameLength];
+            directory.position(position + 46);
+            directory.get(name);
+            entries.add(new Entry(new String(name, StandardCharsets.UTF_8), method, dosTime, crc, compressedSize, size,
+                    localHeaderOffset));
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    /**
+     * @return where the compressed data of this entry starts
+     */
+    long getDataOffset(Entry entry) throws IOException {
+        ByteBuffer header = read(entry.localHeaderOffset, 30);
+        if (header.getInt(0) != LOCAL_HEADER) throw new ZipException("Bad local header for " + entry.name);
+        int nameLength = header.getShort(26) & 0xffff;
+        int extraLength = header.getShort(28) & 0xffff;
+        return entry.localHeaderOffset + 30 + nameLength + extraLength;
+    }
+
+    /**
+     * Read and decompress an entry
+     */
+    byte[] readData(Entry entry) throws IOException {
+        if (entry.size > Integer.MAX_VALUE) throw new ZipException(entry.name + " is too big");
+        ByteBuffer compressed = read(getDataOffset(entry), (int) entry.compressedSize);
+        if (entry.method == STORED) return compressed.array();
+        if (entry.method != DEFLATED) throw new ZipException("Unsupported compression method " + entry.method);
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed.array());
+            byte[] data = new byte[(int) entry.size];
+            int read = 0;
+            while (read < data.length) {
+                int inflated = inflater.inflate(data, read, data.length - read);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) break;
+                read += inflated;
+            }
+            if (read != data.length) throw new ZipException("Truncated entry " + entry.name);
+            return data;
+        } catch (DataFormatException e) {
+            throw new ZipException(entry.name + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Copy the still compressed bytes of an entry to another channel
+     */
+    void transferData(Entry entry, FileChannel target) throws IOException {
+        long offset = getDataOffset(entry);
+        long remaining = entry.compressedSize;
+        while (remaining > 0) {
+            long transferred = channel.transferTo(offset, remaining, target);
+            if (transferred <= 0) throw new EOFException("Unexpected end of " + entry.name);
+            offset += transferred;
+            remaining -= transferred;
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) throw new EOFException();
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
@@ -0,0 +1,150 @@
+package io.jadon.alef.jar;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a zip entry by entry, either from bytes we compress or from compressed bytes copied out of a
+ * {@link RawZipFile}.
+ */
+class RawZipOutput implements Closeable {
+
+    private static final int UTF8_FLAG = 1 << 11;
+
+    private final FileChannel channel;
+    private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+    private int entryCount = 0;
+
+    /**
+     * A compressed entry ready to be written
+     */
+    static class CompressedEntry {
+        final String name;
+        final int dosTime;
+        final int crc;
+        final long size;
+        final byte[] compressed;
+
+        CompressedEntry(String name, int dosTime, byte[] data) {
+            this.name = name;
+            this.dosTime = dosTime;
+            CRC32 crc32 = new CRC32();
+            crc32.update(data);
+            this.crc = (int) crc32.getValue();
+            this.size = data.length;
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                deflater.setInput(data);
+                deflater.finish();
+                ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+                byte[] buffer = new byte[8192];
+                while (!deflater.finished()) {
+                    int length = deflater.deflate(buffer);
+                    output.write(buffer, 0, length);
+                }
+                this.compressed = output.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+
+    RawZipOutput(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    void write(CompressedEntry entry) throws IOException {
+        writeHeaders(entry.name, RawZipFile.DEFLATED, entry.dosTime, entry.crc, entry.compressed.length, entry.size);
+        writeFully(ByteBuffer.wrap(entry.compressed));
+    }
+
+    /**
+     * Copy an entry from another zip without decompressing it
+     */
+    void copy(RawZipFile source, RawZipFile.Entry entry) throws IOException {
+        writeHeaders(entry.getName(), entry.getMethod(), entry.getDosTime(), entry.getCrc(), entry.getCompressedSize(),
+                entry.getSize());
+        source.transferData(entry, channel);
+    }
+
+    private void writeHeaders(String name, int method, int dosTime, int crc, long compressedSize, long size) throws IOException {
+        if (entryCount == 0xffff) throw new ZipException("Zip64 is not supported");
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        long offset = channel.position();
+
+        ByteBuffer local = ByteBuffer.allocate(30 + nameBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        local.putInt(RawZipFile.LOCAL_HEADER);
+        local.putShort((short) 20);
+        local.putShort((short) UTF8_FLAG);
+        local.putShort((short) method);
+        local.putInt(dosTime);
+        local.putInt(crc);
+        local.putInt((int) compressedSize);
+        local.putInt((int) size);
+        local.putShort((short) nameBytes.length);
+        local.putShort((short) 0);
+        local.put(nameBytes);
+        local.flip();
+        writeFully(local);
+
+        ByteBuffer central = ByteBuffer.allocate(46 + nameBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        central.putInt(RawZipFile.CENTRAL_HEADER);
+        central.putShort((short) 20);
+        central.putShort((short) 20);
+        central.putShort((short) UTF8_FLAG);
+        central.putShort((short) method);
+        central.putInt(dosTime);
+        central.putInt(crc);
+        central.putInt((int) compressedSize);
+        central.putInt((int) size);
+        central.putShort((short) nameBytes.length);
+        central.putShort((short) 0);
+        central.putShort((short) 0);
+        central.putShort((short) 0);
+        central.putShort((short) 0);
+        central.putInt(0);
+        central.putInt((int) offset);
+        central.put(nameBytes);
+        centralDirectory.write(central.array(), 0, central.position());
+        entryCount++;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            long directoryOffset = channel.position();
+            writeFully(ByteBuffer.wrap(centralDirectory.toByteArray()));
+            ByteBuffer end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+            end.putInt(RawZipFile.END_OF_CENTRAL_DIRECTORY);
+            end.putShort((short) 0);
+            end.putShort((short) 0);
+            end.putShort((short) entryCount);
+            end.putShort((short) entryCount);
+            end.putInt(centralDirectory.size());
+            end.putInt((int) directoryOffset);
+            end.putShort((short) 0);
+            end.flip();
+            writeFully(end);
+        } finally {
+            channel.close();
+        }
+    }
+
+}
@@ -0,0 +1,418 @@
+package io.jadon.alef.lineage;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import io.jadon.alef.MinecraftVersion;
+import io.jadon.alef.match.Match;
+import io.jadon.alef.match.MatchProvider;
+import io.jadon.alef.provider.MappingProvider;
+import lombok.Getter;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Every class, field and method across all versions that have match files, each with a lineage id that stays the same
+ * from hop to hop.
+ * <p>
+ * Symbols are keyed the same way as {@link io.jadon.alef.jar.ClassHierarchyIndex}: {@code owner}, {@code owner.name:desc}
+ * for fields and {@code owner.name(desc)} for methods, using the obfuscated names of that version. A lineage only
+ * covers consecutive versions, so its names are one span of an array, and a missing match file ends every lineage.
+ * <p>
+ * The index is written once under {@code cache/lineage/} and memory mapped, so opening it reads nothing up front.
+ * The file is a header followed by int arrays and a UTF-8 string table:
+ * <pre>
+ * lineageFirst[lineages]       first version ordinal of each lineage
+ * lineageOffset[lineages + 1]  where each lineage's names start in entries
+ * entries[entryCount]          string id of the name in each version of the lineage
+ * columnOffset[versions + 1]   where each version starts in byColumn
+ * byColumn[entryCount]         lineage ids of each version, sorted by name
+ * stringOffset[strings + 1]    where each string starts in the string bytes
+ * </pre>
+ */
+public class LineageIndex {
+
+    private static final int MAGIC = 0x414c4546;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_INTS = 8;
+
+    @Getter
+    private final int lineageCount;
+    private final IntBuffer lineageFirst;
+    private final IntBuffer lineageOffset;
+    private final IntBuffer entries;
+    private final IntBuffer columnOffset;
+    private final IntBuffer byColumn;
+    private final IntBuffer stringOffset;
+    private final ByteBuffer strings;
+
+    private LineageIndex(ByteBuffer buffer) throws IOException {
+        IntBuffer header = buffer.asIntBuffer();
+        if (header.get(0) != MAGIC || header.get(1) != FORMAT_VERSION) {
+            throw new IOException("Not a lineage index");
+        }
+        int columns = header.get(2);
+        this.lineageCount = header.get(3);
+        int entryCount = header.get(4);
+        int stringCount = header.get(5);
+        int stringBytes = header.get(6);
+        if (columns != MinecraftVersion.values().length) {
+            throw new IOException("Lineage index was built for " + columns + " versions");
+        }
+
+        int position = HEADER_INTS * 4;
+        lineageFirst = ints(buffer, position, lineageCount);
+        position += lineageCount * 4;
+        lineageOffset = ints(buffer, position, lineageCount + 1);
+        position += (lineageCount + 1) * 4;
+        entries = ints(buffer, position, entryCount);
+        position += entryCount * 4;
+        columnOffset = ints(buffer, position, columns + 1);
+        position += (columns + 1) * 4;
+        byColumn = ints(buffer, position, entryCount);
+        position += entryCount * 4;
+        stringOffset = ints(buffer, position, stringCount + 1);
+        position += (stringCount + 1) * 4;
+        strings = slice(buffer, position, stringBytes);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int position, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(position);
+        duplicate.limit(position + length);
+        return duplicate.slice();
+    }
+
+    private static IntBuffer ints(ByteBuffer buffer, int position, int count) {
+        return slice(buffer, position, count * 4).asIntBuffer();
+    }
+
+    public static String classKey(String name) {
+        return name;
+    }
+
+    public static String fieldKey(String owner, String name, String descriptor) {
+        return owner + "." + name + ":" + descriptor;
+    }
+
+    public static String methodKey(String owner, String name, String descriptor) {
+        return owner + "." + name + descriptor;
+    }
+
+    /**
+     * Find the lineage of a symbol
+     *
+     * @param version version the key is from
+     * @param key     symbol key in that version
+     * @return lineage id if the symbol is in a match file
+     */
+    public OptionalInt findLineage(MinecraftVersion version, String key) {
+        byte[] query = key.getBytes(StandardCharsets.UTF_8);
+        int column = version.ordinal();
+        int low = columnOffset.get(column);
+        int high = columnOffset.get(column + 1) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int lineage = byColumn.get(middle);
+            int comparison = compare(getStringId(lineage, column), query);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return OptionalInt.of(lineage);
+            }
+        }
+        return OptionalInt.empty();
+    }
+
+    /**
+     * @return the lineage's key in a version, if it exists in that version
+     */
+    public Optional<String> getName(int lineage, MinecraftVersion version) {
+        int first = lineageFirst.get(lineage);
+        int span = lineageOffset.get(lineage + 1) - lineageOffset.get(lineage);
+        int column = version.ordinal();
+        if (column < first || column >= first + span) return Optional.empty();
+        return Optional.of(getString(getStringId(lineage, column)));
+    }
+
+    /**
+     * Translate a symbol key from one version to another, in either direction
+     */
+    public Optional<String> translate(MinecraftVersion from, String key, MinecraftVersion to) {
+        OptionalInt lineage = findLineage(from, key);
+        if (!lineage.isPresent()) return Optional.empty();
+        return getName(lineage.getAsInt(), to);
+    }
+
+    /**
+     * @return the lineage's key in every version it exists in, oldest first
+     */
+    public Map<MinecraftVersion, String> getHistory(int lineage) {
+        Map<MinecraftVersion, String> history = new LinkedHashMap<>();
+        int first = lineageFirst.get(lineage);
+        int offset = lineageOffset.get(lineage);
+        int span = lineageOffset.get(lineage + 1) - offset;
+        for (int i = 0; i < span; i++) {
+            history.put(MinecraftVersion.values()[first + i], getString(entries.get(offset + i)));
+        }
+        return history;
+    }
+
+    private int getStringId(int lineage, int column) {
+        return entries.get(lineageOffset.get(lineage) + column - lineageFirst.get(lineage));
+    }
+
+    private String getString(int id) {
+        int start = stringOffset.get(id);
+        byte[] bytes = new byte[stringOffset.get(id + 1) - start];
+        ByteBuffer duplicate = strings.duplicate();
+        duplicate.position(start);
+        duplicate.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int compare(int id, byte[] query) {
+        int start = stringOffset.get(id);
+        int length = stringOffset.get(id + 1) - start;
+        for (int i = 0; i < Math.min(length, query.length); i++) {
+            int comparison = Integer.compare(strings.get(start + i) & 0xff, query[i] & 0xff);
+            if (comparison != 0) return comparison;
+        }
+        return Integer.compare(length, query.length);
+    }
+
+    /**
+     * Open the index for the match files we have now, building it if they changed since it was last built
+     */
+    public static LineageIndex load() throws IOException {
+        List<Optional<File>> hops = new ArrayList<>();
+        Hasher hasher = Hashing.sha256().newHasher();
+        MinecraftVersion[] versions = MinecraftVersion.values();
+        for (int i = 0; i < versions.length; i++) {
+            hasher.putString(versions[i].toString(), StandardCharsets.UTF_8).putByte((byte) 0);
+            if (i == versions.length - 1) break;
+            Optional<File> matchFile = MatchProvider.getMatchFile(versions[i], versions[i + 1]);
+            matchFile.ifPresent(file -> hasher.putString(file.getPath(), StandardCharsets.UTF_8)
+                    .putLong(file.length()).putLong(file.lastModified()));
+            hops.add(matchFile);
+        }
+        File indexFile = new File(MappingProvider.CACHE_DIR, "lineage/" + hasher.hash().toString() + ".lin");
+        if (!indexFile.exists()) {
+            build(hops).write(indexFile);
+        }
+        return open(indexFile);
+    }
+
+    public static LineageIndex open(File indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new LineageIndex(buffer);
+        }
+    }
+
+    /**
+     * Lineages while the index is being built
+     */
+    private static class Builder {
+        private final List<Integer> firsts = new ArrayList<>();
+        private final List<List<Integer>> names = new ArrayList<>();
+        private final Map<String, Integer> stringIds = new HashMap<>();
+        private final List<String> stringList = new ArrayList<>();
+
+        private int intern(String string) {
+            return stringIds.computeIfAbsent(string, key -> {
+                stringList.add(key);
+                return stringList.size() - 1;
+            });
+        }
+
+        /**
+         * Extend the lineage of {@code oldKey} in {@code column} to {@code newKey} in the next column
+         */
+        private void link(Map<String, Integer> current, Map<String, Integer> next, int column, String oldKey, String newKey) {
+            Integer lineage = current.get(oldKey);
+            if (lineage == null) {
+                lineage = firsts.size();
+                firsts.add(column);
+                List<Integer> lineageNames = new ArrayList<>(2);
+                lineageNames.add(intern(oldKey));
+                names.add(lineageNames);
+                current.put(oldKey, lineage);
+            }
+            List<Integer> lineageNames = names.get(lineage);
+            // a duplicate line in a match file, the lineage already reached the next version
+            if (firsts.get(lineage) + lineageNames.size() != column + 1) return;
+            if (next.containsKey(newKey)) return;
+            lineageNames.add(intern(newKey));
+            next.put(newKey, lineage);
+        }
+    }
+
+    private static class Built {
+        private int[] lineageFirst;
+        private int[] lineageOffset;
+        private int[] entries;
+        private int[] columnOffset;
+        private int[] byColumn;
+        private int[] stringOffset;
+        private byte[] strings;
+
+        private void write(File indexFile) throws IOException {
+            indexFile.getParentFile().mkdirs();
+            File tempFile = new File(indexFile.getPath() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(columnOffset.length - 1);
+                out.writeInt(lineageFirst.length);
+                out.writeInt(entries.length);
+                out.writeInt(stringOffset.length - 1);
+                out.writeInt(strings.length);
+                out.writeInt(0);
+                for (int[] array : Arrays.asList(lineageFirst, lineageOffset, entries, columnOffset, byColumn, stringOffset)) {
+                    for (int value : array) {
+                        out.writeInt(value);
+                    }
+                }
+                out.write(strings);
+            }
+            Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @param hops match file for each version to the next one, if there is one
+     */
+    private static Built build(List<Optional<File>> hops) {
+        Builder builder = new Builder();
+        Map<String, Integer> current = new HashMap<>();
+        for (int column = 0; column < hops.size(); column++) {
+            Map<String, Integer> next = new HashMap<>();
+            if (hops.get(column).isPresent()) {
+                MinecraftVersion from = MinecraftVersion.values()[column];
+                System.out.println("Adding lineage " + from + " -> " + MinecraftVersion.values()[column + 1]);
+                Match match = Match.parse(hops.get(column).get());
+                for (Match.ClassMatch classMatch : match.getClassMatches()) {
+                    builder.link(current, next, column, classKey(classMatch.getOldName()), classKey(classMatch.getNewName()));
+                    for (Match.FieldMatch fieldMatch : classMatch.getFieldMatches()) {
+                        builder.link(current, next, column,
+                                fieldKey(classMatch.getOldName(), fieldMatch.getOldName(), fieldMatch.getOldFieldType()),
+                                fieldKey(classMatch.getNewName(), fieldMatch.getNewName(), fieldMatch.getNewFieldType()));
+                    }
+                    for (Match.MethodMatch methodMatch : classMatch.getMethodMatches()) {
+                        builder.link(current, next, column,
+                                methodKey(classMatch.getOldName(), methodMatch.getOldName(), methodMatch.getOldSignature()),
+                                methodKey(classMatch.getNewName(), methodMatch.getNewName(), methodMatch.getNewSignature()));
+                    }
+                }
+            }
+            current = next;
+        }
+        return flatten(builder);
+    }
+
+    private static Built flatten(Builder builder) {
+        int columns = MinecraftVersion.values().length;
+        int lineages = builder.firsts.size();
+        Built built = new Built();
+
+        built.lineageFirst = new int[lineages];
+        built.lineageOffset = new int[lineages + 1];
+        int[] columnCounts = new int[columns];
+        int entryCount = 0;
+        for (int lineage = 0; lineage < lineages; lineage++) {
+            int first = builder.firsts.get(lineage);
+            int span = builder.names.get(lineage).size();
+            built.lineageFirst[lineage] = first;
+            built.lineageOffset[lineage] = entryCount;
+            entryCount += span;
+            for (int column = first; column < first + span; column++) {
+                columnCounts[column]++;
+            }
+        }
+        built.lineageOffset[lineages] = entryCount;
+
+        built.entries = new int[entryCount];
+        for (int lineage = 0; lineage < lineages; lineage++) {
+            List<Integer> names = builder.names.get(lineage);
+            for (int i = 0; i < names.size(); i++) {
+                built.entries[built.lineageOffset[lineage] + i] = names.get(i);
+            }
+        }
+
+        // strings are stored as UTF-8 and searched by their bytes, so sort by bytes too
+        byte[][] stringBytes = new byte[builder.stringList.size()][];
+        built.stringOffset = new int[stringBytes.length + 1];
+        ByteArrayOutputStream stringTable = new ByteArrayOutputStream();
+        for (int i = 0; i < stringBytes.length; i++) {
+            stringBytes[i] = builder.stringList.get(i).getBytes(StandardCharsets.UTF_8);
+            built.stringOffset[i] = stringTable.size();
+            stringTable.write(stringBytes[i], 0, stringBytes[i].length);
+        }
+        built.stringOffset[stringBytes.length] = stringTable.size();
+        built.strings = stringTable.toByteArray();
+
+        built.columnOffset = new int[columns + 1];
+        for (int column = 0; column < columns; column++) {
+            built.columnOffset[column + 1] = built.columnOffset[column] + columnCounts[column];
+        }
+        built.byColumn = new int[entryCount];
+        int[] fill = Arrays.copyOf(built.columnOffset, columns);
+        for (int lineage = 0; lineage < lineages; lineage++) {
+            int first = built.lineageFirst[lineage];
+            int span = built.lineageOffset[lineage + 1] - built.lineageOffset[lineage];
+            for (int column = first; column < first + span; column++) {
+                built.byColumn[fill[column]++] = lineage;
+            }
+        }
+        for (int column = 0; column < columns; column++) {
+            int start = built.columnOffset[column];
+            Integer[] columnLineages = new Integer[columnCounts[column]];
+            for (int i = 0; i < columnLineages.length; i++) {
+                columnLineages[i] = built.byColumn[start + i];
+            }
+            int sortColumn = column;
+            Arrays.sort(columnLineages, Comparator.comparing((Integer lineage) -> stringBytes[built.entries[
+                    built.lineageOffset[lineage] + sortColumn - built.lineageFirst[lineage]]], LineageIndex::compareBytes));
+            for (int i = 0; i < columnLineages.length; i++) {
+                built.byColumn[start + i] = columnLineages[i];
+            }
+        }
+        return built;
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            int comparison = Integer.compare(a[i] & 0xff, b[i] & 0xff);
+            if (comparison != 0) return comparison;
+        }
+        return Integer.compare(a.length, b.length);
+    }
+
+    /**
+     * Usage: &lt;version&gt; &lt;key&gt;, prints the symbol's name in every version
+     */
+    public static void main(String[] args) throws IOException {
+        LineageIndex index = load();
+        MinecraftVersion version = MinecraftVersion.fromId(args[0])
+                .orElseThrow(() -> new IllegalArgumentException("Unknown version " + args[0]));
+        OptionalInt lineage = index.findLineage(version, args[1]);
+        if (!lineage.isPresent()) {
+            System.out.println(args[1] + " isn't in any match for " + version);
+            return;
+        }
+        index.getHistory(lineage.getAsInt()).forEach((historyVersion, name) ->
+                System.out.println(historyVersion + "\t" + name));
+    }
+
+}
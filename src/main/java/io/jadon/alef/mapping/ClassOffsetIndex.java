@@ -0,0 +1,260 @@
+package io.jadon.alef.mapping;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Where each class's section starts and ends in a text mapping or match file, so one class can be read without
+ * parsing the rest of the file.
+ * <p>
+ * The index is written next to the file as {@code <file>.<format>.offsets} and rebuilt when the file's size or
+ * modification time changes. Both files are memory mapped, so a lookup is a binary search over a few pages of the
+ * index followed by reading one section of the file. The index is a header followed by int arrays and the keys:
+ * <pre>
+ * keyOffset[classes + 1]  where each key starts in the key bytes, sorted by key
+ * start[classes]          where each class's section starts in the file
+ * end[classes]            where it ends
+ * </pre>
+ */
+public class ClassOffsetIndex {
+
+    private static final int MAGIC = 0x414c4f46;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 40;
+
+    /**
+     * File formats where every class starts on a line that isn't indented and its members follow it
+     */
+    @AllArgsConstructor
+    public enum Format {
+        /** {@code c\tLold;\tLnew;}, keyed by the old name */
+        MATCH(line -> line.startsWith("c\t") ? stripDescriptor(line.split("\t")[1]) : null),
+        /** {@code obf named}, keyed by the obfuscated name */
+        TSRG(line -> line.split(" ")[0]),
+        /** {@code c\tofficial\t...}, keyed by the first namespace */
+        TINY_V2(line -> line.startsWith("c\t") ? line.split("\t")[1] : null),
+        /** {@code named.Class -> obf:}, keyed by the obfuscated name */
+        PROGUARD(line -> line.startsWith("#") || !line.contains(" -> ") ? null
+                : line.substring(line.indexOf(" -> ") + 4, line.length() - 1).replace('.', '/')),
+        /** {@code named.Class -> obf:}, keyed by the named name */
+        PROGUARD_NAMED(line -> line.startsWith("#") || !line.contains(" -> ") ? null
+                : line.substring(0, line.indexOf(" -> ")).replace('.', '/'));
+
+        /** key of a line that isn't indented, or null if it doesn't start a class */
+        private final Function<String, String> key;
+
+        private static String stripDescriptor(String descriptor) {
+            return descriptor.substring(1, descriptor.length() - 1);
+        }
+    }
+
+    @Getter
+    private final File file;
+    @Getter
+    private final Format format;
+    @Getter
+    private final int classCount;
+    private final int headerEnd;
+    private final IntBuffer keyOffset;
+    private final IntBuffer start;
+    private final IntBuffer end;
+    private final ByteBuffer keys;
+    private final ByteBuffer contents;
+
+    private ClassOffsetIndex(File file, Format format, ByteBuffer index, ByteBuffer contents) {
+        this.file = file;
+        this.format = format;
+        this.classCount = index.getInt(12);
+        this.headerEnd = index.getInt(20);
+        int position = HEADER_BYTES;
+        keyOffset = ints(index, position, classCount + 1);
+        position += (classCount + 1) * 4;
+        start = ints(index, position, classCount);
+        position += classCount * 4;
+        end = ints(index, position, classCount);
+        position += classCount * 4;
+        ByteBuffer keys = index.duplicate();
+        keys.position(position);
+        this.keys = keys.slice();
+        this.contents = contents;
+    }
+
+    private static IntBuffer ints(ByteBuffer buffer, int position, int count) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(position);
+        slice.limit(position + count * 4);
+        return slice.slice().order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+    }
+
+    public static File getIndexFile(File file, Format format) {
+        return new File(file.getPath() + "." + format.name().toLowerCase(Locale.ROOT) + ".offsets");
+    }
+
+    /**
+     * Open the index of a file, building it first if it is missing or out of date
+     */
+    public static ClassOffsetIndex open(File file, Format format) throws IOException {
+        MappedByteBuffer contents = map(file);
+        File indexFile = getIndexFile(file, format);
+        if (indexFile.exists()) {
+            MappedByteBuffer index = map(indexFile);
+            if (isValid(index, file, format)) return new ClassOffsetIndex(file, format, index, contents);
+        }
+        build(file, format, contents, indexFile);
+        return new ClassOffsetIndex(file, format, map(indexFile), contents);
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static boolean isValid(ByteBuffer index, File file, Format format) {
+        return index.capacity() >= HEADER_BYTES && index.getInt(0) == MAGIC && index.getInt(4) == FORMAT_VERSION
+                && index.getInt(8) == format.ordinal() && index.getLong(24) == file.length()
+                && index.getLong(32) == file.lastModified();
+    }
+
+    private static void build(File file, Format format, ByteBuffer contents, File indexFile) throws IOException {
+        if (contents.capacity() > 0 && format == Format.TINY_V2 && contents.get(0) != 't') {
+            throw new IOException(file + " isn't a tiny v2 file");
+        }
+        // key -> start, end
+        TreeMap<byte[], int[]> sections = new TreeMap<>(ClassOffsetIndex::compareBytes);
+        int[] current = null;
+        int headerEnd = -1;
+        int length = contents.capacity();
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && contents.get(lineEnd) != '\n') lineEnd++;
+            byte first = contents.get(lineStart);
+            if (first != '\t' && first != ' ' && lineEnd > lineStart) {
+                byte[] line = new byte[lineEnd - lineStart];
+                for (int i = 0; i < line.length; i++) line[i] = contents.get(lineStart + i);
+                String key = format.key.apply(new String(line, StandardCharsets.UTF_8).trim());
+                if (key != null) {
+                    if (current != null) current[1] = lineStart;
+                    if (headerEnd == -1) headerEnd = lineStart;
+                    current = new int[]{lineStart, length};
+                    sections.putIfAbsent(key.getBytes(StandardCharsets.UTF_8), current);
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        if (headerEnd == -1) headerEnd = length;
+
+        int keyBytes = 0;
+        for (byte[] key : sections.keySet()) keyBytes += key.length;
+        File tempFile = new File(indexFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(format.ordinal());
+            out.writeInt(sections.size());
+            out.writeInt(keyBytes);
+            out.writeInt(headerEnd);
+            out.writeLong(file.length());
+            out.writeLong(file.lastModified());
+            int offset = 0;
+            for (byte[] key : sections.keySet()) {
+                out.writeInt(offset);
+                offset += key.length;
+            }
+            out.writeInt(offset);
+            for (int[] section : sections.values()) out.writeInt(section[0]);
+            for (int[] section : sections.values()) out.writeInt(section[1]);
+            for (byte[] key : sections.keySet()) out.write(key);
+        }
+        Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            int comparison = Integer.compare(a[i] & 0xff, b[i] & 0xff);
+            if (comparison != 0) return comparison;
+        }
+        return Integer.compare(a.length, b.length);
+    }
+
+    private int find(String key) {
+        byte[] query = key.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = classCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int keyStart = keyOffset.get(middle);
+            int keyLength = keyOffset.get(middle + 1) - keyStart;
+            int comparison = 0;
+            for (int i = 0; i < Math.min(keyLength, query.length) && comparison == 0; i++) {
+                comparison = Integer.compare(keys.get(keyStart + i) & 0xff, query[i] & 0xff);
+            }
+            if (comparison == 0) comparison = Integer.compare(keyLength, query.length);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private String read(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        ByteBuffer slice = contents.duplicate();
+        slice.position(from);
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public boolean hasClass(String key) {
+        return find(key) != -1;
+    }
+
+    /**
+     * @return lines of one class, starting with the line that names it
+     */
+    public Optional<String> getSection(String key) {
+        int index = find(key);
+        return index == -1 ? Optional.empty() : Optional.of(read(start.get(index), end.get(index)));
+    }
+
+    /**
+     * @return everything before the first class, like a tiny header
+     */
+    public String getHeader() {
+        return read(0, headerEnd);
+    }
+
+    /**
+     * @return every key, sorted
+     */
+    public List<String> getKeys() {
+        List<String> result = new ArrayList<>(classCount);
+        for (int i = 0; i < classCount; i++) {
+            byte[] key = new byte[keyOffset.get(i + 1) - keyOffset.get(i)];
+            ByteBuffer slice = keys.duplicate();
+            slice.position(keyOffset.get(i));
+            slice.get(key);
+            result.add(new String(key, StandardCharsets.UTF_8));
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,339 @@
+package io.jadon.alef.mapping;
+
+import lombok.Getter;
+import org.cadixdev.bombe.type.FieldType;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.InnerClassMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Read only copy of a mapping set stored in a few arrays instead of an object per mapping, so sets for many versions
+ * and providers can stay in memory at once.
+ * <p>
+ * Every name and descriptor is stored once in a UTF-8 string table sorted by its bytes, so string ids sort the same way
+ * as the strings. Classes are sorted by obfuscated name and each class owns a sorted span of the field and method
+ * arrays, so every lookup is a binary search for the string ids followed by binary searches over ints. Inner classes are
+ * stored under their full names.
+ * <p>
+ * {@link #toMappingSet()} builds a Lorenz set again for the code that needs one, like the writers.
+ */
+public class CompactMappingSet {
+
+    private static final int NONE = -1;
+
+    private final byte[] strings;
+    private final int[] stringOffset;
+
+    @Getter
+    private final int classCount;
+    private final int[] classObf;
+    private final int[] classDeobf;
+    /** where each class starts in the field arrays, one extra at the end */
+    private final int[] classFields;
+    /** where each class starts in the method arrays, one extra at the end */
+    private final int[] classMethods;
+
+    private final int[] fieldObf;
+    /** obfuscated descriptor, or -1 if the mapping didn't have one */
+    private final int[] fieldDesc;
+    private final int[] fieldDeobf;
+
+    private final int[] methodObf;
+    private final int[] methodDesc;
+    private final int[] methodDeobf;
+
+    private CompactMappingSet(byte[] strings, int[] stringOffset, int[] classObf, int[] classDeobf, int[] classFields,
+                              int[] classMethods, int[] fieldObf, int[] fieldDesc, int[] fieldDeobf, int[] methodObf,
+                              int[] methodDesc, int[] methodDeobf) {
+        this.strings = strings;
+        this.stringOffset = stringOffset;
+        this.classCount = classObf.length;
+        this.classObf = classObf;
+        this.classDeobf = classDeobf;
+        this.classFields = classFields;
+        this.classMethods = classMethods;
+        this.fieldObf = fieldObf;
+        this.fieldDesc = fieldDesc;
+        this.fieldDeobf = fieldDeobf;
+        this.methodObf = methodObf;
+        this.methodDesc = methodDesc;
+        this.methodDeobf = methodDeobf;
+    }
+
+    public static CompactMappingSet of(MappingSet mappings) {
+        List<ClassMapping<?, ?>> classMappings = new ArrayList<>();
+        for (ClassMapping<?, ?> classMapping : mappings.getTopLevelClassMappings()) {
+            addClass(classMapping, classMappings);
+        }
+
+        // collect and sort every string so ids compare like the strings do
+        Map<String, byte[]> encoded = new HashMap<>();
+        for (ClassMapping<?, ?> classMapping : classMappings) {
+            intern(encoded, classMapping.getFullObfuscatedName());
+            intern(encoded, classMapping.getFullDeobfuscatedName());
+            for (FieldMapping fieldMapping : classMapping.getFieldMappings()) {
+                intern(encoded, fieldMapping.getObfuscatedName());
+                intern(encoded, fieldMapping.getDeobfuscatedName());
+                fieldMapping.getType().ifPresent(type -> intern(encoded, type.toString()));
+            }
+            for (MethodMapping methodMapping : classMapping.getMethodMappings()) {
+                intern(encoded, methodMapping.getObfuscatedName());
+                intern(encoded, methodMapping.getDeobfuscatedName());
+                intern(encoded, methodMapping.getObfuscatedDescriptor());
+            }
+        }
+        List<Map.Entry<String, byte[]>> sorted = new ArrayList<>(encoded.entrySet());
+        sorted.sort((a, b) -> compareBytes(a.getValue(), b.getValue()));
+        Map<String, Integer> ids = new HashMap<>(sorted.size() * 2);
+        int[] stringOffset = new int[sorted.size() + 1];
+        int totalBytes = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            ids.put(sorted.get(i).getKey(), i);
+            stringOffset[i] = totalBytes;
+            totalBytes += sorted.get(i).getValue().length;
+        }
+        stringOffset[sorted.size()] = totalBytes;
+        byte[] strings = new byte[totalBytes];
+        for (int i = 0; i < sorted.size(); i++) {
+            byte[] bytes = sorted.get(i).getValue();
+            System.arraycopy(bytes, 0, strings, stringOffset[i], bytes.length);
+        }
+
+        classMappings.sort(Comparator.comparingInt(classMapping -> ids.get(classMapping.getFullObfuscatedName())));
+        int classCount = classMappings.size();
+        int fieldCount = 0;
+        int methodCount = 0;
+        for (ClassMapping<?, ?> classMapping : classMappings) {
+            fieldCount += classMapping.getFieldMappings().size();
+            methodCount += classMapping.getMethodMappings().size();
+        }
+        int[] classObf = new int[classCount];
+        int[] classDeobf = new int[classCount];
+        int[] classFields = new int[classCount + 1];
+        int[] classMethods = new int[classCount + 1];
+        int[] fieldObf = new int[fieldCount];
+        int[] fieldDesc = new int[fieldCount];
+        int[] fieldDeobf = new int[fieldCount];
+        int[] methodObf = new int[methodCount];
+        int[] methodDesc = new int[methodCount];
+        int[] methodDeobf = new int[methodCount];
+
+        int field = 0;
+        int method = 0;
+        for (int i = 0; i < classCount; i++) {
+            ClassMapping<?, ?> classMapping = classMappings.get(i);
+            classObf[i] = ids.get(classMapping.getFullObfuscatedName());
+            classDeobf[i] = ids.get(classMapping.getFullDeobfuscatedName());
+
+            classFields[i] = field;
+            List<int[]> fields = new ArrayList<>();
+            for (FieldMapping fieldMapping : classMapping.getFieldMappings()) {
+                fields.add(new int[]{ids.get(fieldMapping.getObfuscatedName()),
+                        fieldMapping.getType().map(type -> ids.get(type.toString())).orElse(NONE),
+                        ids.get(fieldMapping.getDeobfuscatedName())});
+            }
+            fields.sort(CompactMappingSet::compareMember);
+            for (int[] entry : fields) {
+                fieldObf[field] = entry[0];
+                fieldDesc[field] = entry[1];
+                fieldDeobf[field] = entry[2];
+                field++;
+            }
+
+            classMethods[i] = method;
+            List<int[]> methods = new ArrayList<>();
+            for (MethodMapping methodMapping : classMapping.getMethodMappings()) {
+                methods.add(new int[]{ids.get(methodMapping.getObfuscatedName()),
+                        ids.get(methodMapping.getObfuscatedDescriptor()), ids.get(methodMapping.getDeobfuscatedName())});
+            }
+            methods.sort(CompactMappingSet::compareMember);
+            for (int[] entry : methods) {
+                methodObf[method] = entry[0];
+                methodDesc[method] = entry[1];
+                methodDeobf[method] = entry[2];
+                method++;
+            }
+        }
+        classFields[classCount] = field;
+        classMethods[classCount] = method;
+        return new CompactMappingSet(strings, stringOffset, classObf, classDeobf, classFields, classMethods,
+                fieldObf, fieldDesc, fieldDeobf, methodObf, methodDesc, methodDeobf);
+    }
+
+    private static void addClass(ClassMapping<?, ?> classMapping, List<ClassMapping<?, ?>> classMappings) {
+        classMappings.add(classMapping);
+        for (ClassMapping<?, ?> innerClassMapping : classMapping.getInnerClassMappings()) {
+            addClass(innerClassMapping, classMappings);
+        }
+    }
+
+    private static void intern(Map<String, byte[]> encoded, String string) {
+        encoded.computeIfAbsent(string, s -> s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** name, then descriptor */
+    private static int compareMember(int[] a, int[] b) {
+        int comparison = Integer.compare(a[0], b[0]);
+        return comparison != 0 ? comparison : Integer.compare(a[1], b[1]);
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            int comparison = Integer.compare(a[i] & 0xff, b[i] & 0xff);
+            if (comparison != 0) return comparison;
+        }
+        return Integer.compare(a.length, b.length);
+    }
+
+    private String getString(int id) {
+        return new String(strings, stringOffset[id], stringOffset[id + 1] - stringOffset[id], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return id of a string in the table, or -1 if no mapping uses it
+     */
+    private int findString(String string) {
+        byte[] query = string.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = stringOffset.length - 2;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int start = stringOffset[middle];
+            int length = stringOffset[middle + 1] - start;
+            int comparison = 0;
+            for (int i = 0; i < Math.min(length, query.length) && comparison == 0; i++) {
+                comparison = Integer.compare(strings[start + i] & 0xff, query[i] & 0xff);
+            }
+            if (comparison == 0) comparison = Integer.compare(length, query.length);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return NONE;
+    }
+
+    private int findClass(String obfuscatedName) {
+        int id = findString(obfuscatedName);
+        if (id == NONE) return NONE;
+        int index = Arrays.binarySearch(classObf, id);
+        return index < 0 ? NONE : index;
+    }
+
+    /**
+     * @return first entry in the span with this name, or -1
+     */
+    private static int findMember(int[] names, int from, int to, int name) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (names[middle] < name) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low < to && names[low] == name ? low : NONE;
+    }
+
+    public boolean hasClassMapping(String obfuscatedName) {
+        return findClass(obfuscatedName) != NONE;
+    }
+
+    /**
+     * @param obfuscatedName full obfuscated name, with inner classes separated by $
+     * @return full deobfuscated name
+     */
+    public Optional<String> getClassName(String obfuscatedName) {
+        int index = findClass(obfuscatedName);
+        return index == NONE ? Optional.empty() : Optional.of(getString(classDeobf[index]));
+    }
+
+    /**
+     * @return deobfuscated name of the first field with this name, like {@link ClassMapping#getFieldMapping(String)}
+     */
+    public Optional<String> getFieldName(String owner, String name) {
+        int index = findClass(owner);
+        int nameId = findString(name);
+        if (index == NONE || nameId == NONE) return Optional.empty();
+        int field = findMember(fieldObf, classFields[index], classFields[index + 1], nameId);
+        return field == NONE ? Optional.empty() : Optional.of(getString(fieldDeobf[field]));
+    }
+
+    /**
+     * @return deobfuscated name of the field with this name and descriptor
+     */
+    public Optional<String> getFieldName(String owner, String name, String descriptor) {
+        int index = findClass(owner);
+        int nameId = findString(name);
+        int descriptorId = findString(descriptor);
+        if (index == NONE || nameId == NONE || descriptorId == NONE) return Optional.empty();
+        int end = classFields[index + 1];
+        for (int field = findMember(fieldObf, classFields[index], end, nameId);
+             field != NONE && field < end && fieldObf[field] == nameId; field++) {
+            if (fieldDesc[field] == descriptorId) return Optional.of(getString(fieldDeobf[field]));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return deobfuscated name of the method with this name and obfuscated descriptor
+     */
+    public Optional<String> getMethodName(String owner, String name, String descriptor) {
+        int index = findClass(owner);
+        int nameId = findString(name);
+        int descriptorId = findString(descriptor);
+        if (index == NONE || nameId == NONE || descriptorId == NONE) return Optional.empty();
+        int end = classMethods[index + 1];
+        for (int method = findMember(methodObf, classMethods[index], end, nameId);
+             method != NONE && method < end && methodObf[method] == nameId; method++) {
+            if (methodDesc[method] == descriptorId) return Optional.of(getString(methodDeobf[method]));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return approximate bytes used by the arrays
+     */
+    public long getSizeInBytes() {
+        return strings.length + 4L * (stringOffset.length + classObf.length * 2 + classFields.length
+                + classMethods.length + fieldObf.length * 3 + methodObf.length * 3);
+    }
+
+    /**
+     * Build a Lorenz mapping set with the same mappings. The result isn't kept, so the compact set stays small.
+     */
+    public MappingSet toMappingSet() {
+        MappingSet mappings = MappingSet.create();
+        for (int i = 0; i < classCount; i++) {
+            ClassMapping<?, ?> classMapping = mappings.getOrCreateClassMapping(getString(classObf[i]));
+            String deobfuscatedName = getString(classDeobf[i]);
+            if (classMapping instanceof InnerClassMapping) {
+                // inner class mappings only hold the part after the last $
+                deobfuscatedName = deobfuscatedName.substring(deobfuscatedName.lastIndexOf('$') + 1);
+            }
+            classMapping.setDeobfuscatedName(deobfuscatedName);
+            for (int field = classFields[i]; field < classFields[i + 1]; field++) {
+                FieldMapping fieldMapping = fieldDesc[field] == NONE
+                        ? classMapping.getOrCreateFieldMapping(getString(fieldObf[field]))
+                        : classMapping.getOrCreateFieldMapping(getString(fieldObf[field]), FieldType.of(getString(fieldDesc[field])));
+                fieldMapping.setDeobfuscatedName(getString(fieldDeobf[field]));
+            }
+            for (int method = classMethods[i]; method < classMethods[i + 1]; method++) {
+                classMapping.getOrCreateMethodMapping(getString(methodObf[method]), getString(methodDesc[method]))
+                        .setDeobfuscatedName(getString(methodDeobf[method]));
+            }
+        }
+        return mappings;
+    }
+
+}
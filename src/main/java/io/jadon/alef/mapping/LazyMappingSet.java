@@ -0,0 +1,256 @@
+package io.jadon.alef.mapping;
+
+import io.jadon.alef.metrics.Metrics;
+import org.cadixdev.bombe.type.FieldType;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Obf -> named mappings that only read a class from its file the first time it is asked for, using
+ * {@link ClassOffsetIndex}es. Reads TSRG, tiny v2 and ProGuard files.
+ * <p>
+ * Classes are read into one Lorenz set as they are needed, outer classes before their inner classes so the full
+ * names come out right. With more than one file, a class comes from the first file that has it.
+ */
+public class LazyMappingSet {
+
+    private final MappingSet mappings = MappingSet.create();
+    private final List<Source> sources;
+    /** classes that were already looked for, whether they were found or not */
+    private final Set<String> loaded = new HashSet<>();
+
+    private static class Source {
+        private final ClassOffsetIndex index;
+        /** ProGuard only, used to find the obfuscated names of the classes in descriptors */
+        private final ClassOffsetIndex namedIndex;
+        /** tiny only, which name column to read */
+        private final int column;
+        private final Map<String, String> obfuscatedNames = new HashMap<>();
+
+        private Source(ClassOffsetIndex index, ClassOffsetIndex namedIndex, int column) {
+            this.index = index;
+            this.namedIndex = namedIndex;
+            this.column = column;
+        }
+    }
+
+    private LazyMappingSet(List<Source> sources) {
+        this.sources = sources;
+    }
+
+    public static LazyMappingSet tsrg(File file) throws IOException {
+        return new LazyMappingSet(Collections.singletonList(
+                new Source(ClassOffsetIndex.open(file, ClassOffsetIndex.Format.TSRG), null, 0)));
+    }
+
+    /**
+     * @param from namespace to map from, which has to be the first one in the file since descriptors use it
+     * @param to   namespace to map to
+     */
+    public static LazyMappingSet tiny(File file, String from, String to) throws IOException {
+        ClassOffsetIndex index = ClassOffsetIndex.open(file, ClassOffsetIndex.Format.TINY_V2);
+        List<String> namespaces = Arrays.asList(index.getHeader().split("\n")[0].trim().split("\t"));
+        // tiny 2 0 <namespaces...>
+        int fromColumn = namespaces.indexOf(from) - 3;
+        int toColumn = namespaces.indexOf(to) - 3;
+        if (fromColumn != 0) throw new IOException(from + " isn't the first namespace of " + file);
+        if (toColumn < 0) throw new IOException(file + " doesn't have the namespace " + to);
+        return new LazyMappingSet(Collections.singletonList(new Source(index, null, toColumn)));
+    }
+
+    /**
+     * @param files ProGuard files, which map named -> obf, looked through in order
+     */
+    public static LazyMappingSet proguard(File... files) throws IOException {
+        List<Source> sources = new ArrayList<>();
+        for (File file : files) {
+            sources.add(new Source(ClassOffsetIndex.open(file, ClassOffsetIndex.Format.PROGUARD),
+                    ClassOffsetIndex.open(file, ClassOffsetIndex.Format.PROGUARD_NAMED), 0));
+        }
+        return new LazyMappingSet(sources);
+    }
+
+    /**
+     * @param obfuscatedName full obfuscated name, with inner classes separated by $
+     */
+    public synchronized Optional<ClassMapping<?, ?>> getClassMapping(String obfuscatedName) {
+        for (int split = obfuscatedName.indexOf('$'); split != -1; split = obfuscatedName.indexOf('$', split + 1)) {
+            load(obfuscatedName.substring(0, split));
+        }
+        if (!load(obfuscatedName)) return Optional.empty();
+        return mappings.getClassMapping(obfuscatedName).map(classMapping -> classMapping);
+    }
+
+    public Optional<String> getClassName(String obfuscatedName) {
+        return getClassMapping(obfuscatedName).map(ClassMapping::getFullDeobfuscatedName);
+    }
+
+    public synchronized Optional<String> getFieldName(String owner, String name) {
+        return getClassMapping(owner).flatMap(classMapping -> classMapping.getFieldMapping(name))
+                .map(FieldMapping::getDeobfuscatedName);
+    }
+
+    public synchronized Optional<String> getMethodName(String owner, String name, String descriptor) {
+        return getClassMapping(owner).flatMap(classMapping -> classMapping.getMethodMapping(name, descriptor))
+                .map(MethodMapping::getDeobfuscatedName);
+    }
+
+    public synchronized int getLoadedClassCount() {
+        return loaded.size();
+    }
+
+    /**
+     * Read every class, for code that needs the whole set
+     */
+    public synchronized MappingSet toMappingSet() {
+        for (Source source : sources) {
+            for (String key : source.index.getKeys()) {
+                getClassMapping(key);
+            }
+        }
+        return mappings;
+    }
+
+    /**
+     * @return true if the class was found
+     */
+    private boolean load(String obfuscatedName) {
+        if (!loaded.add(obfuscatedName)) return mappings.getClassMapping(obfuscatedName).isPresent();
+        for (Source source : sources) {
+            Optional<String> section = source.index.getSection(obfuscatedName);
+            if (!section.isPresent()) continue;
+            Metrics.count("lazy.classes");
+            switch (source.index.getFormat()) {
+                case TSRG:
+                    readTsrg(section.get());
+                    break;
+                case TINY_V2:
+                    readTiny(section.get(), source.column);
+                    break;
+                case PROGUARD:
+                    readProguard(section.get(), source);
+                    break;
+                default:
+                    throw new IllegalStateException("Can't read " + source.index.getFormat());
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void readTsrg(String section) {
+        ClassMapping<?, ?> classMapping = null;
+        for (String line : section.split("\n")) {
+            if (line.trim().isEmpty()) continue;
+            String[] parts = line.trim().split(" ");
+            if (!line.startsWith("\t") && !line.startsWith(" ")) {
+                classMapping = mappings.getOrCreateClassMapping(parts[0]);
+                classMapping.setDeobfuscatedName(parts[1]);
+            } else if (parts.length == 2) {
+                classMapping.getOrCreateFieldMapping(parts[0]).setDeobfuscatedName(parts[1]);
+            } else if (parts.length == 3) {
+                classMapping.getOrCreateMethodMapping(parts[0], parts[1]).setDeobfuscatedName(parts[2]);
+            }
+        }
+    }
+
+    private void readTiny(String section, int column) {
+        ClassMapping<?, ?> classMapping = null;
+        for (String line : section.split("\n")) {
+            String[] parts = line.split("\t", -1);
+            if (line.startsWith("c\t")) {
+                classMapping = mappings.getOrCreateClassMapping(parts[1]);
+                classMapping.setDeobfuscatedName(getTinyName(parts, 1, column));
+            } else if (line.startsWith("\tf\t")) {
+                classMapping.getOrCreateFieldMapping(parts[3], FieldType.of(parts[2]))
+                        .setDeobfuscatedName(getTinyName(parts, 3, column));
+            } else if (line.startsWith("\tm\t")) {
+                classMapping.getOrCreateMethodMapping(parts[3], parts[2])
+                        .setDeobfuscatedName(getTinyName(parts, 3, column));
+            }
+        }
+    }
+
+    /**
+     * Empty names in tiny files mean the name doesn't change
+     */
+    private static String getTinyName(String[] parts, int first, int column) {
+        String name = parts.length > first + column ? parts[first + column].trim() : "";
+        return name.isEmpty() ? parts[first] : name;
+    }
+
+    private void readProguard(String section, Source source) {
+        ClassMapping<?, ?> classMapping = null;
+        for (String line : section.split("\n")) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            int arrow = line.indexOf(" -> ");
+            if (arrow == -1) continue;
+            String left = line.substring(0, arrow);
+            String obfuscated = line.substring(arrow + 4);
+            if (classMapping == null) {
+                classMapping = mappings.getOrCreateClassMapping(obfuscated.substring(0, obfuscated.length() - 1).replace('.', '/'));
+                classMapping.setDeobfuscatedName(left.replace('.', '/'));
+                continue;
+            }
+            // strip line numbers
+            while (!left.isEmpty() && (Character.isDigit(left.charAt(0)) || left.charAt(0) == ':')) {
+                left = left.substring(1);
+            }
+            String[] typeAndName = left.split(" ");
+            String type = toDescriptor(typeAndName[0], source);
+            int open = typeAndName[1].indexOf('(');
+            if (open == -1) {
+                classMapping.getOrCreateFieldMapping(obfuscated, FieldType.of(type)).setDeobfuscatedName(typeAndName[1]);
+            } else {
+                String name = typeAndName[1].substring(0, open);
+                String arguments = typeAndName[1].substring(open + 1, typeAndName[1].length() - 1);
+                StringBuilder descriptor = new StringBuilder("(");
+                if (!arguments.isEmpty()) {
+                    for (String argument : arguments.split(",")) {
+                        descriptor.append(toDescriptor(argument, source));
+                    }
+                }
+                descriptor.append(')').append(type);
+                classMapping.getOrCreateMethodMapping(obfuscated, descriptor.toString()).setDeobfuscatedName(name);
+            }
+        }
+    }
+
+    /**
+     * Turn a ProGuard type like {@code net.minecraft.Foo[]} into an obfuscated descriptor
+     */
+    private static String toDescriptor(String type, Source source) {
+        StringBuilder descriptor = new StringBuilder();
+        while (type.endsWith("[]")) {
+            descriptor.append('[');
+            type = type.substring(0, type.length() - 2);
+        }
+        switch (type) {
+            case "void": return descriptor.append('V').toString();
+            case "boolean": return descriptor.append('Z').toString();
+            case "byte": return descriptor.append('B').toString();
+            case "char": return descriptor.append('C').toString();
+            case "short": return descriptor.append('S').toString();
+            case "int": return descriptor.append('I').toString();
+            case "long": return descriptor.append('J').toString();
+            case "float": return descriptor.append('F').toString();
+            case "double": return descriptor.append('D').toString();
+            default:
+                String named = type.replace('.', '/');
+                // classes that aren't in the file, like java/lang/String, keep their name
+                String obfuscated = source.obfuscatedNames.computeIfAbsent(named, key -> source.namedIndex.getSection(key)
+                        .map(section -> section.split("\n", 2)[0].trim())
+                        .map(line -> line.substring(line.indexOf(" -> ") + 4, line.length() - 1).replace('.', '/'))
+                        .orElse(key));
+                return descriptor.append('L').append(obfuscated).append(';').toString();
+        }
+    }
+
+}
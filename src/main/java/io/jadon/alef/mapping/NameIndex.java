@@ -0,0 +1,565 @@
+package io.jadon.alef.mapping;
+
+import io.jadon.alef.MinecraftVersion;
+import io.jadon.alef.metrics.Metrics;
+import io.jadon.alef.provider.MappingProvider;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import org.cadixdev.bombe.type.FieldType;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Search index over the deobfuscated names of one provider's mappings for one version, for autocomplete.
+ * <p>
+ * Every class, field and method is indexed under its simple name, lower cased, in a sorted term array with postings
+ * back to the mapping. The sorted array is walked like a trie: prefix queries are a binary search, and edit distance
+ * queries share the distance table between terms with a common prefix and skip every term under a prefix that is
+ * already too far away. Camel hump queries like {@code gBS} look up the initials of the words in a name in a second
+ * sorted array and then check the words themselves.
+ * <p>
+ * Indexes are written to {@code <cache>/<version>/<provider>.names} the first time they are built, along with what
+ * the provider built the mappings from, and built again when that changes. Reading one is a few bulk copies out of
+ * a mapped file, so a one-shot lookup against a warm cache is cheap.
+ */
+public class NameIndex {
+
+    private static final int MAGIC = 0x414c4e49;
+    // 2: strings as one utf-8 block with end offsets, so they can be read without a call per byte
+    // 3: the source the mappings came from, after the version
+    private static final int FORMAT_VERSION = 3;
+    private static final int NONE = -1;
+    /** edit distance queries get slow quickly past this */
+    public static final int MAX_EDITS = 2;
+
+    @AllArgsConstructor
+    public enum Kind {
+        CLASS('c'), FIELD('f'), METHOD('m');
+
+        @Getter
+        private final char prefix;
+    }
+
+    @Data
+    public static class Hit {
+        private final Kind kind;
+        /** simple name that matched */
+        private final String name;
+        /** full deobfuscated name of the class, or of the class the member is in */
+        private final String owner;
+        private final String obfuscatedOwner;
+        /** obfuscated name of the member, null for classes */
+        private final @Nullable String obfuscatedName;
+        /** obfuscated descriptor of the member, null for classes and fields without one */
+        private final @Nullable String descriptor;
+        /** edits from the query, 0 for prefix and camel hump queries */
+        private final int distance;
+
+        @Override
+        public String toString() {
+            if (kind == Kind.CLASS) return "c " + owner + " " + obfuscatedOwner;
+            return kind.getPrefix() + " " + owner + " " + name + " " + obfuscatedOwner + " " + obfuscatedName
+                    + (descriptor == null ? "" : " " + descriptor);
+        }
+    }
+
+    private final String[] strings;
+    // one entry per mapping
+    private final byte[] entryKind;
+    private final int[] entryName;
+    private final int[] entryOwner;
+    private final int[] entryObfOwner;
+    private final int[] entryObfName;
+    private final int[] entryDesc;
+    // lower cased simple names, sorted, with the entries that have each one
+    private final String[] terms;
+    private final int[] termStart;
+    private final int[] termEntries;
+    // lower cased initials of the words in each name, sorted, with the entries that have them
+    private final String[] humps;
+    private final int[] humpStart;
+    private final int[] humpEntries;
+    private final int maxTermLength;
+    /** what the mappings were loaded from, see {@link MappingProvider#getSourceId} */
+    private String source = "";
+
+    private NameIndex(String[] strings, byte[] entryKind, int[] entryName, int[] entryOwner, int[] entryObfOwner,
+                      int[] entryObfName, int[] entryDesc, String[] terms, int[] termStart, int[] termEntries,
+                      String[] humps, int[] humpStart, int[] humpEntries) {
+        this.strings = strings;
+        this.entryKind = entryKind;
+        this.entryName = entryName;
+        this.entryOwner = entryOwner;
+        this.entryObfOwner = entryObfOwner;
+        this.entryObfName = entryObfName;
+        this.entryDesc = entryDesc;
+        this.terms = terms;
+        this.termStart = termStart;
+        this.termEntries = termEntries;
+        this.humps = humps;
+        this.humpStart = humpStart;
+        this.humpEntries = humpEntries;
+        int maxLength = 0;
+        for (String term : terms) maxLength = Math.max(maxLength, term.length());
+        this.maxTermLength = maxLength;
+    }
+
+    /**
+     * Get the index for a provider's mappings, reading it from the cache or building and caching it. A cached index
+     * is built again when the provider's source for the version changed, like a new Yarn build.
+     *
+     * @param provider name of the provider, see {@link MappingProvider#byName}
+     */
+    public static Optional<NameIndex> of(String provider, MinecraftVersion version) throws IOException {
+        return of(provider, version, true);
+    }
+
+    /**
+     * @param provider    name of the provider, see {@link MappingProvider#byName}
+     * @param checkSource build a cached index again if the provider's source changed. Checking can take a network
+     *                    request, like for the latest Yarn build, so one-shot lookups use any cached index.
+     */
+    public static Optional<NameIndex> of(String provider, MinecraftVersion version, boolean checkSource) throws IOException {
+        Optional<MappingProvider> mappingProvider = MappingProvider.byName(provider);
+        if (!mappingProvider.isPresent()) return Optional.empty();
+        File indexFile = new File(MappingProvider.CACHE_DIR, version + "/" + provider.toLowerCase() + ".names");
+        if (indexFile.isFile()) {
+            Optional<NameIndex> cached = read(indexFile);
+            if (cached.isPresent() && !checkSource) return cached;
+            if (cached.isPresent()) {
+                Optional<String> source = getSourceId(mappingProvider.get(), version);
+                // an index we can't check, like without a network, is better than none
+                if (!source.isPresent() || source.get().equals(cached.get().source)) return cached;
+                System.out.println("Mappings of " + provider + " " + version + " changed, building their name index again");
+            }
+        }
+        Optional<MappingSet> mappings = mappingProvider.get().getMappings(version);
+        if (!mappings.isPresent()) return Optional.empty();
+        NameIndex index = build(mappings.get());
+        // after loading, so the files the source is made from are there
+        index.source = getSourceId(mappingProvider.get(), version).orElse("");
+        index.write(indexFile);
+        return Optional.of(index);
+    }
+
+    private static Optional<String> getSourceId(MappingProvider provider, MinecraftVersion version) {
+        try {
+            return Optional.of(provider.getSourceId(version));
+        } catch (Exception e) {
+            System.out.println("Couldn't check the source of " + provider.getClass().getSimpleName() + " " + version + ": " + e);
+            return Optional.empty();
+        }
+    }
+
+    public static NameIndex build(MappingSet mappings) {
+        return Metrics.time("names.build", () -> buildIndex(mappings));
+    }
+
+    private static NameIndex buildIndex(MappingSet mappings) {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        List<int[]> entries = new ArrayList<>();
+        Deque<ClassMapping<?, ?>> queue = new ArrayDeque<>(mappings.getTopLevelClassMappings());
+        while (!queue.isEmpty()) {
+            ClassMapping<?, ?> classMapping = queue.poll();
+            queue.addAll(classMapping.getInnerClassMappings());
+            int owner = intern(ids, strings, classMapping.getFullDeobfuscatedName());
+            int obfOwner = intern(ids, strings, classMapping.getFullObfuscatedName());
+            int simpleName = intern(ids, strings, simpleName(classMapping.getFullDeobfuscatedName()));
+            entries.add(new int[]{Kind.CLASS.ordinal(), simpleName, owner, obfOwner, NONE, NONE});
+            for (FieldMapping fieldMapping : classMapping.getFieldMappings()) {
+                int descriptor = fieldMapping.getType().map(FieldType::toString)
+                        .map(type -> intern(ids, strings, type)).orElse(NONE);
+                entries.add(new int[]{Kind.FIELD.ordinal(), intern(ids, strings, fieldMapping.getDeobfuscatedName()),
+                        owner, obfOwner, intern(ids, strings, fieldMapping.getObfuscatedName()), descriptor});
+            }
+            for (MethodMapping methodMapping : classMapping.getMethodMappings()) {
+                entries.add(new int[]{Kind.METHOD.ordinal(), intern(ids, strings, methodMapping.getDeobfuscatedName()),
+                        owner, obfOwner, intern(ids, strings, methodMapping.getObfuscatedName()),
+                        intern(ids, strings, methodMapping.getObfuscatedDescriptor())});
+            }
+        }
+
+        int count = entries.size();
+        byte[] entryKind = new byte[count];
+        int[][] columns = new int[5][count];
+        for (int i = 0; i < count; i++) {
+            int[] entry = entries.get(i);
+            entryKind[i] = (byte) entry[0];
+            for (int column = 0; column < 5; column++) columns[column][i] = entry[column + 1];
+        }
+
+        String[] stringArray = strings.toArray(new String[0]);
+        SortedMap<String, List<Integer>> byTerm = new TreeMap<>();
+        SortedMap<String, List<Integer>> byHump = new TreeMap<>();
+        for (int i = 0; i < count; i++) {
+            String name = stringArray[columns[0][i]];
+            byTerm.computeIfAbsent(name.toLowerCase(Locale.ROOT), key -> new ArrayList<>()).add(i);
+            byHump.computeIfAbsent(initials(name), key -> new ArrayList<>()).add(i);
+        }
+        Postings termPostings = new Postings(byTerm);
+        Postings humpPostings = new Postings(byHump);
+        return new NameIndex(stringArray, entryKind, columns[0], columns[1], columns[2], columns[3], columns[4],
+                termPostings.keys, termPostings.start, termPostings.entries,
+                humpPostings.keys, humpPostings.start, humpPostings.entries);
+    }
+
+    /** sorted keys with a span of entry ids each */
+    private static class Postings {
+        private final String[] keys;
+        private final int[] start;
+        private final int[] entries;
+
+        private Postings(SortedMap<String, List<Integer>> map) {
+            keys = map.keySet().toArray(new String[0]);
+            start = new int[keys.length + 1];
+            int total = 0;
+            for (List<Integer> ids : map.values()) total += ids.size();
+            entries = new int[total];
+            int position = 0;
+            int key = 0;
+            for (List<Integer> ids : map.values()) {
+                start[key++] = position;
+                for (int id : ids) entries[position++] = id;
+            }
+            start[key] = position;
+        }
+    }
+
+    private static int intern(Map<String, Integer> ids, List<String> strings, String string) {
+        return ids.computeIfAbsent(string, s -> {
+            strings.add(s);
+            return strings.size() - 1;
+        });
+    }
+
+    private static String simpleName(String fullName) {
+        return fullName.substring(Math.max(fullName.lastIndexOf('/'), fullName.lastIndexOf('$')) + 1);
+    }
+
+    /**
+     * Words start at the start of the name, after _ or $, and at upper case letters that follow a lower case letter
+     * or start a capitalized word, so {@code getURLConnection} is get, URL, Connection and {@code MAX_VALUE} is
+     * MAX, VALUE
+     */
+    private static boolean isWordStart(String name, int index) {
+        char c = name.charAt(index);
+        if (c == '_' || c == '$') return false;
+        if (index == 0) return true;
+        char previous = name.charAt(index - 1);
+        if (previous == '_' || previous == '$') return true;
+        if (!Character.isUpperCase(c)) return false;
+        if (!Character.isUpperCase(previous)) return true;
+        return index + 1 < name.length() && Character.isLowerCase(name.charAt(index + 1));
+    }
+
+    private static String initials(String name) {
+        StringBuilder initials = new StringBuilder();
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (isWordStart(name, i)) initials.append(Character.toLowerCase(c));
+        }
+        return initials.toString();
+    }
+
+    /**
+     * Every name starting with a prefix, ignoring case, in name order
+     *
+     * @param kinds kinds to return, or empty for all
+     */
+    public List<Hit> prefix(String prefix, Set<Kind> kinds, int limit) {
+        String key = prefix.toLowerCase(Locale.ROOT);
+        List<Hit> hits = new ArrayList<>();
+        for (int term = lowerBound(terms, key); term < terms.length && terms[term].startsWith(key); term++) {
+            if (!addHits(termStart, termEntries, term, kinds, 0, hits, limit)) break;
+        }
+        return hits;
+    }
+
+    /**
+     * Names whose leading words start with the words of the query, like {@code gBS} or {@code getBlSt} for
+     * {@code getBlockState}. The first word of the query has to start the name and no word can be skipped.
+     */
+    public List<Hit> camelHump(String query, Set<Kind> kinds, int limit) {
+        // every upper case letter in the query starts a word
+        List<String> segments = new ArrayList<>();
+        StringBuilder segment = new StringBuilder();
+        for (int i = 0; i <= query.length(); i++) {
+            char c = i < query.length() ? query.charAt(i) : '_';
+            if ((c == '_' || c == '$' || Character.isUpperCase(c)) && segment.length() > 0) {
+                segments.add(segment.toString());
+                segment.setLength(0);
+            }
+            if (c != '_' && c != '$') segment.append(c);
+        }
+        if (segments.isEmpty()) return Collections.emptyList();
+        StringBuilder key = new StringBuilder();
+        for (String word : segments) key.append(Character.toLowerCase(word.charAt(0)));
+
+        List<Hit> hits = new ArrayList<>();
+        String prefix = key.toString();
+        for (int hump = lowerBound(humps, prefix); hump < humps.length && humps[hump].startsWith(prefix); hump++) {
+            for (int i = humpStart[hump]; i < humpStart[hump + 1]; i++) {
+                int entry = humpEntries[i];
+                if (!kinds.isEmpty() && !kinds.contains(Kind.values()[entryKind[entry]])) continue;
+                if (!matchesWords(strings[entryName[entry]], segments)) continue;
+                hits.add(hit(entry, 0));
+                if (hits.size() >= limit) return hits;
+            }
+        }
+        return hits;
+    }
+
+    private static boolean matchesWords(String name, List<String> segments) {
+        int word = 0;
+        for (String segment : segments) {
+            while (word < name.length() && (name.charAt(word) == '_' || name.charAt(word) == '$')) word++;
+            if (!name.regionMatches(true, word, segment, 0, segment.length())) return false;
+            // the rest of the segment has to stay inside the word
+            for (int i = word + 1; i < word + segment.length(); i++) {
+                if (isWordStart(name, i)) return false;
+            }
+            do {
+                word++;
+            } while (word < name.length() && !isWordStart(name, word));
+        }
+        return true;
+    }
+
+    /**
+     * Names within some edits of the query, ignoring case, closest first
+     *
+     * @param maxEdits at most {@link #MAX_EDITS}
+     */
+    public List<Hit> fuzzy(String query, int maxEdits, Set<Kind> kinds, int limit) {
+        if (maxEdits > MAX_EDITS) throw new IllegalArgumentException("At most " + MAX_EDITS + " edits");
+        String key = query.toLowerCase(Locale.ROOT);
+        int width = key.length() + 1;
+        // row d holds the distances from the first d characters of the current term to each prefix of the query
+        int[][] rows = new int[maxTermLength + 1][width];
+        for (int i = 0; i < width; i++) rows[0][i] = i;
+        int validRows = 0;
+        String previous = "";
+        List<int[]> matches = new ArrayList<>();
+
+        int term = 0;
+        while (term < terms.length) {
+            String current = terms[term];
+            int depth = Math.min(commonPrefix(previous, current), validRows);
+            boolean pruned = false;
+            while (depth < current.length()) {
+                int[] above = rows[depth];
+                int[] row = rows[++depth];
+                char c = current.charAt(depth - 1);
+                row[0] = depth;
+                int best = row[0];
+                for (int i = 1; i < width; i++) {
+                    row[i] = Math.min(Math.min(row[i - 1], above[i]) + 1, above[i - 1] + (key.charAt(i - 1) == c ? 0 : 1));
+                    best = Math.min(best, row[i]);
+                }
+                if (best > maxEdits) {
+                    pruned = true;
+                    break;
+                }
+            }
+            validRows = depth;
+            previous = current;
+            if (pruned) {
+                // nothing under this prefix can get closer
+                term = skipPrefix(term, current, depth);
+                continue;
+            }
+            int distance = rows[depth][width - 1];
+            if (distance <= maxEdits) matches.add(new int[]{distance, term});
+            term++;
+        }
+
+        matches.sort(Comparator.comparingInt((int[] match) -> match[0]).thenComparingInt(match -> match[1]));
+        List<Hit> hits = new ArrayList<>();
+        for (int[] match : matches) {
+            if (!addHits(termStart, termEntries, match[1], kinds, match[0], hits, limit)) break;
+        }
+        return hits;
+    }
+
+    /**
+     * @return false once the limit is reached
+     */
+    private boolean addHits(int[] start, int[] entries, int key, Set<Kind> kinds, int distance, List<Hit> hits, int limit) {
+        for (int i = start[key]; i < start[key + 1]; i++) {
+            int entry = entries[i];
+            if (!kinds.isEmpty() && !kinds.contains(Kind.values()[entryKind[entry]])) continue;
+            if (hits.size() >= limit) return false;
+            hits.add(hit(entry, distance));
+        }
+        return hits.size() < limit;
+    }
+
+    private Hit hit(int entry, int distance) {
+        return new Hit(Kind.values()[entryKind[entry]], strings[entryName[entry]], strings[entryOwner[entry]],
+                strings[entryObfOwner[entry]], string(entryObfName[entry]), string(entryDesc[entry]), distance);
+    }
+
+    private @Nullable String string(int id) {
+        return id == NONE ? null : strings[id];
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; i++) {
+            if (a.charAt(i) != b.charAt(i)) return i;
+        }
+        return length;
+    }
+
+    /**
+     * @return index of the first term after {@code from} that doesn't start with the first characters of a term
+     */
+    private int skipPrefix(int from, String term, int length) {
+        int low = from + 1;
+        int high = terms.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (terms[middle].regionMatches(0, term, 0, length)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return index of the first key that isn't less than the query
+     */
+    private static int lowerBound(String[] keys, String query) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle].compareTo(query) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public int getEntryCount() {
+        return entryKind.length;
+    }
+
+    public int getTermCount() {
+        return terms.length;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public void write(File file) throws IOException {
+        if (file.getParentFile() != null) file.getParentFile().mkdirs();
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            writeStrings(out, new String[]{source});
+            writeStrings(out, strings);
+            out.writeInt(entryKind.length);
+            out.write(entryKind);
+            for (int[] column : new int[][]{entryName, entryOwner, entryObfOwner, entryObfName, entryDesc}) {
+                writeInts(out, column);
+            }
+            writeStrings(out, terms);
+            writeInts(out, termStart);
+            writeInts(out, termEntries);
+            writeStrings(out, humps);
+            writeInts(out, humpStart);
+            writeInts(out, humpEntries);
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return the index, or empty if the file was written by another version of this format
+     */
+    public static Optional<NameIndex> read(File file) throws IOException {
+        return Metrics.time("names.read", () -> readIndex(file));
+    }
+
+    private static Optional<NameIndex> readIndex(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC || in.getInt() != FORMAT_VERSION) return Optional.empty();
+            String source = readStrings(in)[0];
+            String[] strings = readStrings(in);
+            byte[] entryKind = new byte[in.getInt()];
+            in.get(entryKind);
+            int[][] columns = new int[5][];
+            for (int column = 0; column < columns.length; column++) columns[column] = readInts(in);
+            String[] terms = readStrings(in);
+            int[] termStart = readInts(in);
+            int[] termEntries = readInts(in);
+            String[] humps = readStrings(in);
+            int[] humpStart = readInts(in);
+            int[] humpEntries = readInts(in);
+            NameIndex index = new NameIndex(strings, entryKind, columns[0], columns[1], columns[2], columns[3],
+                    columns[4], terms, termStart, termEntries, humps, humpStart, humpEntries);
+            index.source = source;
+            return Optional.of(index);
+        }
+    }
+
+    /**
+     * Count, end offset of each string, then the bytes of all of them
+     */
+    private static void writeStrings(DataOutputStream out, String[] strings) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int[] ends = new int[strings.length];
+        for (int i = 0; i < strings.length; i++) {
+            bytes.write(strings[i].getBytes(StandardCharsets.UTF_8));
+            ends[i] = bytes.size();
+        }
+        writeInts(out, ends);
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    private static String[] readStrings(ByteBuffer in) {
+        int[] ends = readInts(in);
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        String[] strings = new String[ends.length];
+        for (int i = 0, start = 0; i < strings.length; start = ends[i++]) {
+            strings[i] = new String(bytes, start, ends[i] - start, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] ints) throws IOException {
+        out.writeInt(ints.length);
+        for (int value : ints) out.writeInt(value);
+    }
+
+    private static int[] readInts(ByteBuffer in) {
+        int[] ints = new int[in.getInt()];
+        in.asIntBuffer().get(ints);
+        in.position(in.position() + ints.length * Integer.BYTES);
+        return ints;
+    }
+
+}
@@ -0,0 +1,64 @@
+package io.jadon.alef.match;
+
+import io.jadon.alef.mapping.ClassOffsetIndex;
+import io.jadon.alef.metrics.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A .match file that only parses a class the first time it is asked for, using a {@link ClassOffsetIndex}
+ */
+public class LazyMatch {
+
+    private final ClassOffsetIndex index;
+    private final Map<String, Optional<Match.ClassMatch>> classMatches = new ConcurrentHashMap<>();
+
+    private LazyMatch(ClassOffsetIndex index) {
+        this.index = index;
+    }
+
+    public static LazyMatch open(File file) throws IOException {
+        return new LazyMatch(ClassOffsetIndex.open(file, ClassOffsetIndex.Format.MATCH));
+    }
+
+    /**
+     * @param oldName class name in the old version
+     * @return the class's match, with its fields and methods
+     */
+    public Optional<Match.ClassMatch> getClassMatch(String oldName) {
+        return classMatches.computeIfAbsent(oldName, this::readClassMatch);
+    }
+
+    /**
+     * Parse a class's match without keeping it, for callers that only look at each class once
+     */
+    public Optional<Match.ClassMatch> readClassMatch(String oldName) {
+        return index.getSection(oldName).map(section -> {
+            Metrics.count("lazy.classes");
+            List<Match.ClassMatch> parsed = Match.parseLines(Arrays.asList(section.split("\n")));
+            return parsed.get(0);
+        });
+    }
+
+    public int getClassCount() {
+        return index.getClassCount();
+    }
+
+    public int getLoadedClassCount() {
+        return classMatches.size();
+    }
+
+    /**
+     * Parse the whole file
+     */
+    public Match toMatch() {
+        return Match.parse(index.getFile());
+    }
+
+}
@@ -1,16 +1,23 @@
 package io.jadon.alef.match;
 
+import io.jadon.alef.metrics.HopEvent;
+import io.jadon.alef.metrics.Metrics;
 import lombok.Data;
 import lombok.SneakyThrows;
+import org.cadixdev.bombe.type.FieldType;
+import org.cadixdev.bombe.type.signature.FieldSignature;
 import org.cadixdev.lorenz.MappingSet;
 import org.cadixdev.lorenz.io.MappingFormats;
 import org.cadixdev.lorenz.model.*;
 
 import javax.sound.midi.Patch;
 import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 @Data
 public class Match {
@@ -52,6 +59,10 @@ public class Match {
      */
     public Match chain(Match other) {
         List<ClassMatch> chainedClasses = new ArrayList<>(this.classMatches.size());
+        int fields = 0;
+        int fieldsKept = 0;
+        int methods = 0;
+        int methodsKept = 0;
         // chain classes
         for (ClassMatch classMatch : this.classMatches) {
             for (ClassMatch otherClassMatch : other.classMatches) {
@@ -81,13 +92,31 @@ public class Match {
                     }
 
                     chainedClasses.add(chainedClass);
+                    fieldsKept += chainedClass.fieldMatches.size();
+                    methodsKept += chainedClass.methodMatches.size();
                     break;
                 }
             }
+            fields += classMatch.fieldMatches.size();
+            methods += classMatch.methodMatches.size();
         }
+        recordHop(chainedClasses.size(), this.classMatches.size() - chainedClasses.size(),
+                fieldsKept, fields - fieldsKept, methodsKept, methods - methodsKept);
         return new Match(chainedClasses);
     }
 
+    private static void recordHop(int classesKept, int classesDropped, int fieldsKept, int fieldsDropped,
+                                  int methodsKept, int methodsDropped) {
+        Metrics.count("chain.classes.kept", classesKept);
+        Metrics.count("chain.classes.dropped", classesDropped);
+        Metrics.count("chain.fields.kept", fieldsKept);
+        Metrics.count("chain.fields.dropped", fieldsDropped);
+        Metrics.count("chain.methods.kept", methodsKept);
+        Metrics.count("chain.methods.dropped", methodsDropped);
+        HopEvent.emit(Metrics.currentDetail().orElse(null), classesKept, classesDropped, fieldsKept, fieldsDropped,
+                methodsKept, methodsDropped);
+    }
+
     /**
      * Combine Mapping Sets using this Match
      *
@@ -96,18 +125,26 @@ public class Match {
      * @return old named -> new named
      */
     public MappingSet combineMappings(MappingSet oldMappings, MappingSet newMappings) {
+        return Metrics.time("match.combine", () -> combine(oldMappings, newMappings));
+    }
+
+    private MappingSet combine(MappingSet oldMappings, MappingSet newMappings) {
         MappingSet combinedMappings = MappingSet.create();
         for (ClassMatch classMatch : this.classMatches) {
-            ClassMapping<?, ?> oldClassMapping = oldMappings.getOrCreateClassMapping(classMatch.oldName);
-            ClassMapping<?, ?> newClassMapping = newMappings.getOrCreateClassMapping(classMatch.newName);
-            ClassMapping<?, ?> classMapping = combinedMappings.getOrCreateClassMapping(oldClassMapping.getFullDeobfuscatedName());
-            classMapping.setDeobfuscatedName(newClassMapping.getFullDeobfuscatedName());
+            // only read the given sets, they can be shared with other jobs
+            ClassMapping<?, ?> oldClassMapping = oldMappings.getClassMapping(classMatch.oldName).orElse(null);
+            ClassMapping<?, ?> newClassMapping = newMappings.getClassMapping(classMatch.newName).orElse(null);
+            ClassMapping<?, ?> classMapping = combinedMappings.getOrCreateClassMapping(deobfuscateClass(oldMappings, classMatch.oldName));
+            classMapping.setDeobfuscatedName(deobfuscateClass(newMappings, classMatch.newName));
+            // without mappings on both sides there are no member names to combine
+            if (oldClassMapping == null || newClassMapping == null) continue;
 
             // add field mappings
             for (FieldMatch fieldMatch : classMatch.fieldMatches) {
                 oldClassMapping.getFieldMapping(fieldMatch.oldName).ifPresent(oldFieldMapping -> {
                     newClassMapping.getFieldMapping(fieldMatch.newName).ifPresent(newFieldMapping -> {
-                        classMapping.createFieldMapping(oldFieldMapping.getDeobfuscatedName(), newFieldMapping.getDeobfuscatedName());
+                        classMapping.createFieldMapping(getDeobfuscatedSignature(oldMappings, oldFieldMapping, fieldMatch.oldFieldType),
+                                newFieldMapping.getDeobfuscatedName());
                     });
                 });
             }
@@ -124,6 +161,29 @@ public class Match {
         return combinedMappings;
     }
 
+    /**
+     * Named name of a class without adding a mapping for it. Classes without a mapping keep their name, inner classes
+     * of mapped classes get their outer class' name.
+     */
+    private static String deobfuscateClass(MappingSet mappings, String obfuscatedName) {
+        Optional<? extends ClassMapping<?, ?>> classMapping = mappings.getClassMapping(obfuscatedName);
+        if (classMapping.isPresent()) return classMapping.get().getFullDeobfuscatedName();
+        int dollar = obfuscatedName.lastIndexOf('$');
+        if (dollar == -1) return obfuscatedName;
+        return deobfuscateClass(mappings, obfuscatedName.substring(0, dollar)) + obfuscatedName.substring(dollar);
+    }
+
+    /**
+     * Named signature of a field, typed with the match's type when the mappings don't have one. Formats like Tiny
+     * can't write a field without a type.
+     *
+     * @param matchedType obfuscated type from the match, empty if it isn't known
+     */
+    private static FieldSignature getDeobfuscatedSignature(MappingSet mappings, FieldMapping fieldMapping, String matchedType) {
+        if (fieldMapping.getType().isPresent() || matchedType.isEmpty()) return fieldMapping.getDeobfuscatedSignature();
+        return new FieldSignature(fieldMapping.getDeobfuscatedName(), mappings.deobfuscate(FieldType.of(matchedType)));
+    }
+
     /**
      * Updates Mapping Sets with this Match
      *
@@ -167,7 +227,7 @@ public class Match {
                 reversedClassMatch.fieldMatches.add(reversedFieldMatch);
             }
             for (MethodMatch methodMatch : classMatch.methodMatches) {
-                MethodMatch reversedMethodMatch = new MethodMatch(methodMatch.newName, methodMatch.newSignature, methodMatch.oldName, methodMatch.newSignature);
+                MethodMatch reversedMethodMatch = new MethodMatch(methodMatch.newName, methodMatch.newSignature, methodMatch.oldName, methodMatch.oldSignature);
                 reversedClassMatch.methodMatches.add(reversedMethodMatch);
             }
         }
@@ -193,6 +253,23 @@ public class Match {
         return mappings;
     }
 
+    /**
+     * Write this match in the .match format, without the input file header
+     */
+    public void write(Writer writer) throws IOException {
+        for (ClassMatch classMatch : classMatches) {
+            writer.write("c\tL" + classMatch.oldName + ";\tL" + classMatch.newName + ";\n");
+            for (MethodMatch methodMatch : classMatch.methodMatches) {
+                writer.write("\tm\t" + methodMatch.oldName + methodMatch.oldSignature + "\t"
+                        + methodMatch.newName + methodMatch.newSignature + "\n");
+            }
+            for (FieldMatch fieldMatch : classMatch.fieldMatches) {
+                writer.write("\tf\t" + fieldMatch.oldName + ";;" + fieldMatch.oldFieldType + "\t"
+                        + fieldMatch.newName + ";;" + fieldMatch.newFieldType + "\n");
+            }
+        }
+    }
+
     @SneakyThrows
     public static Match parse(File file) {
         assert file.exists() && file.isFile() : file.getAbsolutePath() + " is not a file!";
@@ -202,8 +279,14 @@ public class Match {
             return parse(matchMappings);
         }
 
+        return new Match(parseLines(Files.readAllLines(file.toPath())));
+    }
+
+    /**
+     * Parse lines of the .match format, ignoring the header
+     */
+    static List<ClassMatch> parseLines(List<String> lines) {
         List<ClassMatch> classMatches = new ArrayList<>();
-        List<String> lines = Files.readAllLines(file.toPath());
 
         ClassMatch currentClass = null;
 
@@ -245,7 +328,7 @@ public class Match {
             }
 
         }
-        return new Match(classMatches);
+        return classMatches;
     }
 
     public static Match parse(MappingSet mappings) {
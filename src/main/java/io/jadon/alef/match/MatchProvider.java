@@ -1,9 +1,16 @@
 package io.jadon.alef.match;
 
 import io.jadon.alef.MinecraftVersion;
+import io.jadon.alef.matcher.AutoMatcher;
+import io.jadon.alef.metrics.Metrics;
+import io.jadon.alef.version.Version;
+import io.jadon.alef.version.VersionRegistry;
 import lombok.AllArgsConstructor;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
 import java.util.Optional;
 
 @AllArgsConstructor
@@ -14,6 +21,10 @@ public enum MatchProvider {
 
     private final String directory;
 
+    public File getDirectory() {
+        return new File(directory);
+    }
+
     public Optional<File> findMatchFile(MinecraftVersion from, MinecraftVersion to) {
         File match = new File(this.directory, from.toString() + "-" + to.toString() + ".match");
         if (match.exists() && match.isFile()) {
@@ -34,8 +45,64 @@ public enum MatchProvider {
         return MODERN.findMatchFile(from, to);
     }
 
+    /**
+     * Get the match between two versions. With {@code -Dalef.autoMatch=true}, missing matches are generated from
+     * the client jars by the {@link AutoMatcher} and saved for next time.
+     */
     public static Optional<Match> getMatch(MinecraftVersion from, MinecraftVersion to) {
-        return getMatchFile(from, to).map(Match::parse);
+        String hop = from.toString() + "->" + to.toString();
+        Optional<Match> match = getMatchFile(from, to).map(file -> Metrics.time("match.parse", hop, () -> Match.parse(file)));
+        if (!match.isPresent() && Boolean.getBoolean("alef.autoMatch")) {
+            return AutoMatcher.generate(from, to, new File(ALEF.directory, from.toString() + "-" + to.toString() + ".match"));
+        }
+        return match;
+    }
+
+    /**
+     * Get a match that only parses the classes that get used. Only .match files can be read this way.
+     */
+    public static Optional<LazyMatch> getLazyMatch(MinecraftVersion from, MinecraftVersion to) {
+        return getMatchFile(from, to).filter(file -> file.getName().endsWith(".match")).map(file -> {
+            try {
+                return LazyMatch.open(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Get the match between two version ids, which don't have to be {@link MinecraftVersion}s
+     */
+    public static Optional<Match> getMatch(String from, String to) {
+        Optional<MinecraftVersion> fromVersion = MinecraftVersion.fromId(from);
+        Optional<MinecraftVersion> toVersion = MinecraftVersion.fromId(to);
+        if (fromVersion.isPresent() && toVersion.isPresent()) return getMatch(fromVersion.get(), toVersion.get());
+        return VersionRegistry.get().getMatchFile(from, to)
+                .map(file -> Metrics.time("match.parse", from + "->" + to, () -> Match.parse(file)));
+    }
+
+    /**
+     * Chain matches between two version ids along the shortest path of match files in the {@link VersionRegistry}
+     */
+    public static Optional<Match> chainMatches(String from, String to) {
+        List<Version> path = VersionRegistry.get().findMatchPath(from, to)
+                .orElseThrow(() -> new IllegalStateException("No match files lead from " + from + " to " + to));
+        Match chainedMatch = null;
+        for (int i = 0; i < path.size() - 1; i++) {
+            String fFrom = path.get(i).getId();
+            String fTo = path.get(i + 1).getId();
+            System.out.println("Using match " + fFrom + " -> " + fTo);
+            Match match = getMatch(fFrom, fTo)
+                    .orElseThrow(() -> new IllegalStateException("Can't find match from " + fFrom + " to " + fTo));
+            if (chainedMatch == null) {
+                chainedMatch = match;
+            } else {
+                chainedMatch = chain(chainedMatch, match, fFrom + "->" + fTo);
+                System.out.println("Found " + chainedMatch.getClassMatches().size() + " class matches");
+            }
+        }
+        return Optional.ofNullable(chainedMatch);
     }
 
     public static Optional<Match> chainMatches(MinecraftVersion from, MinecraftVersion to) {
@@ -55,7 +122,7 @@ public enum MatchProvider {
             if (chainedMatch == null) {
                 chainedMatch = match;
             } else {
-                chainedMatch = chainedMatch.chain(match);
+                chainedMatch = chain(chainedMatch, match, fFrom.toString() + "->" + fTo.toString());
                 System.out.println("Found " + chainedMatch.getClassMatches().size() + " class matches");
             }
         }
@@ -73,11 +140,15 @@ public enum MatchProvider {
             if (chainedMatch == null) {
                 chainedMatch = match;
             } else {
-                chainedMatch = chainedMatch.chain(match);
+                chainedMatch = chain(chainedMatch, match, from.toString() + "->" + to.toString());
                 System.out.println("Found " + chainedMatch.getClassMatches().size() + " class matches");
             }
         }
         return Optional.ofNullable(chainedMatch);
     }
 
+    private static Match chain(Match chainedMatch, Match match, String hop) {
+        return Metrics.time("match.chain", hop, () -> chainedMatch.chain(match));
+    }
+
 }
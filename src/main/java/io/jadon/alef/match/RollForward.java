@@ -0,0 +1,280 @@
+package io.jadon.alef.match;
+
+import io.jadon.alef.MinecraftVersion;
+import io.jadon.alef.metrics.Metrics;
+import lombok.Data;
+import org.cadixdev.bombe.type.FieldType;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Carries a named mapping set forward through a run of hops, one class at a time.
+ * <p>
+ * {@link Match#updateMappings} builds a whole mapping set for every version on the way. This takes each class of
+ * the input set through every hop before it starts the next one, so only one class is held besides the output.
+ * Hops read from .match files go through a {@link LazyMatch} and only parse the classes being carried. Other hops
+ * are parsed whole once. Sinks get each class as it reaches their version, so snapshots of the versions on the way
+ * can be written out as a stream.
+ */
+public class RollForward {
+
+    /**
+     * One hop's class matches, looked up by the class's name before the hop
+     */
+    public interface Hop {
+        Optional<Match.ClassMatch> getClassMatch(String oldName);
+    }
+
+    /**
+     * Gets classes as they reach a version. Classes come in no particular order.
+     */
+    public interface Sink {
+        void accept(ClassState state);
+
+        default void finish() {
+        }
+    }
+
+    @Data
+    public static class Member {
+        private final String obfuscatedName;
+        /** obfuscated descriptor, null for fields that don't have one */
+        private final @Nullable String descriptor;
+        private final String name;
+    }
+
+    /**
+     * A class at one version: its obfuscated names in that version and the names carried from the input
+     */
+    @Data
+    public static class ClassState {
+        private final String obfuscatedName;
+        private final String name;
+        private final List<Member> fields;
+        private final List<Member> methods;
+    }
+
+    private final List<MinecraftVersion> versions;
+    private final List<Hop> hops;
+    private final Map<MinecraftVersion, List<Sink>> sinks = new HashMap<>();
+
+    /**
+     * @param versions versions to go through, the first one is the version of the input set
+     * @param hops     hop from each version to the next
+     */
+    public RollForward(List<MinecraftVersion> versions, List<Hop> hops) {
+        if (hops.size() != versions.size() - 1) throw new IllegalArgumentException("Need one hop between each version");
+        this.versions = versions;
+        this.hops = hops;
+    }
+
+    /**
+     * Go through every version between two versions, using their match files
+     */
+    public static RollForward between(MinecraftVersion from, MinecraftVersion to) {
+        List<MinecraftVersion> versions = new ArrayList<>();
+        List<Hop> hops = new ArrayList<>();
+        versions.add(from);
+        for (int i = from.ordinal(); i < to.ordinal(); i++) {
+            MinecraftVersion hopFrom = MinecraftVersion.values()[i];
+            MinecraftVersion hopTo = MinecraftVersion.values()[i + 1];
+            versions.add(hopTo);
+            hops.add(hop(hopFrom, hopTo));
+        }
+        return new RollForward(versions, hops);
+    }
+
+    public static Hop hop(MinecraftVersion from, MinecraftVersion to) {
+        Optional<LazyMatch> lazyMatch = MatchProvider.getLazyMatch(from, to);
+        if (lazyMatch.isPresent()) return lazyMatch.get()::readClassMatch;
+        Match match = MatchProvider.getMatch(from, to)
+                .orElseThrow(() -> new IllegalStateException("Can't find match from " + from + " to " + to));
+        return hop(match);
+    }
+
+    public static Hop hop(Match match) {
+        Map<String, Match.ClassMatch> byOldName = new HashMap<>();
+        for (Match.ClassMatch classMatch : match.getClassMatches()) {
+            byOldName.put(classMatch.getOldName(), classMatch);
+        }
+        return oldName -> Optional.ofNullable(byOldName.get(oldName));
+    }
+
+    /**
+     * Also send every class that reaches a version to a sink
+     */
+    public RollForward snapshot(MinecraftVersion version, Sink sink) {
+        if (!versions.contains(version)) throw new IllegalArgumentException(version + " isn't on the way");
+        sinks.computeIfAbsent(version, v -> new ArrayList<>()).add(sink);
+        return this;
+    }
+
+    /**
+     * @param mappings obf -> named mappings of the first version
+     * @return obf -> named mappings of the last version
+     */
+    public MappingSet run(MappingSet mappings) {
+        MappingSet result = MappingSet.create();
+        run(classes(mappings), collect(result));
+        return result;
+    }
+
+    /**
+     * @param classes classes of the first version
+     * @param sink    gets the classes that make it to the last version
+     */
+    public void run(Iterator<ClassState> classes, Sink sink) {
+        MinecraftVersion last = versions.get(versions.size() - 1);
+        snapshot(last, sink);
+        try {
+            Metrics.time("rollforward", versions.get(0) + "->" + last, () -> rollForward(classes));
+        } finally {
+            sinks.get(last).remove(sink);
+        }
+        for (List<Sink> versionSinks : sinks.values()) {
+            versionSinks.forEach(Sink::finish);
+        }
+        sink.finish();
+    }
+
+    private void rollForward(Iterator<ClassState> classes) {
+        while (classes.hasNext()) {
+            ClassState state = classes.next();
+            emit(versions.get(0), state);
+            for (int i = 0; i < hops.size() && state != null; i++) {
+                state = apply(hops.get(i), state);
+                if (state != null) emit(versions.get(i + 1), state);
+            }
+            Metrics.count(state == null ? "rollforward.classes.dropped" : "rollforward.classes.kept");
+        }
+    }
+
+    private void emit(MinecraftVersion version, ClassState state) {
+        List<Sink> versionSinks = sinks.get(version);
+        if (versionSinks == null) return;
+        for (Sink sink : versionSinks) {
+            sink.accept(state);
+        }
+    }
+
+    /**
+     * @return the class after the hop, or null if the hop doesn't have it
+     */
+    private static @Nullable ClassState apply(Hop hop, ClassState state) {
+        Optional<Match.ClassMatch> classMatch = hop.getClassMatch(state.obfuscatedName);
+        if (!classMatch.isPresent()) return null;
+
+        List<Member> fields = new ArrayList<>(state.fields.size());
+        for (Member field : state.fields) {
+            for (Match.FieldMatch fieldMatch : classMatch.get().getFieldMatches()) {
+                if (fieldMatch.getOldName().equals(field.obfuscatedName)) {
+                    fields.add(new Member(fieldMatch.getNewName(), fieldMatch.getNewFieldType(), field.name));
+                    break;
+                }
+            }
+        }
+        List<Member> methods = new ArrayList<>(state.methods.size());
+        for (Member method : state.methods) {
+            for (Match.MethodMatch methodMatch : classMatch.get().getMethodMatches()) {
+                if (methodMatch.getOldName().equals(method.obfuscatedName)
+                        && methodMatch.getOldSignature().equals(method.descriptor)) {
+                    methods.add(new Member(methodMatch.getNewName(), methodMatch.getNewSignature(), method.name));
+                    break;
+                }
+            }
+        }
+        return new ClassState(classMatch.get().getNewName(), state.name, fields, methods);
+    }
+
+    /**
+     * Walk a mapping set's classes, inner classes included, turning one into a {@link ClassState} at a time
+     */
+    public static Iterator<ClassState> classes(MappingSet mappings) {
+        Deque<ClassMapping<?, ?>> queue = new ArrayDeque<>(mappings.getTopLevelClassMappings());
+        return new Iterator<ClassState>() {
+            @Override
+            public boolean hasNext() {
+                return !queue.isEmpty();
+            }
+
+            @Override
+            public ClassState next() {
+                ClassMapping<?, ?> classMapping = queue.poll();
+                if (classMapping == null) throw new NoSuchElementException();
+                queue.addAll(classMapping.getInnerClassMappings());
+                List<Member> fields = new ArrayList<>();
+                for (FieldMapping fieldMapping : classMapping.getFieldMappings()) {
+                    fields.add(new Member(fieldMapping.getObfuscatedName(),
+                            fieldMapping.getType().map(FieldType::toString).orElse(null), fieldMapping.getDeobfuscatedName()));
+                }
+                List<Member> methods = new ArrayList<>();
+                for (MethodMapping methodMapping : classMapping.getMethodMappings()) {
+                    methods.add(new Member(methodMapping.getObfuscatedName(), methodMapping.getObfuscatedDescriptor(),
+                            methodMapping.getDeobfuscatedName()));
+                }
+                return new ClassState(classMapping.getFullObfuscatedName(), classMapping.getFullDeobfuscatedName(),
+                        fields, methods);
+            }
+        };
+    }
+
+    /**
+     * Sink that adds every class to a mapping set
+     */
+    public static Sink collect(MappingSet mappings) {
+        return state -> {
+            ClassMapping<?, ?> classMapping = mappings.getOrCreateClassMapping(state.obfuscatedName);
+            // inner class mappings keep the part after the last $ of this
+            classMapping.setDeobfuscatedName(state.name);
+            for (Member field : state.fields) {
+                FieldMapping fieldMapping = field.descriptor == null
+                        ? classMapping.getOrCreateFieldMapping(field.obfuscatedName)
+                        : classMapping.getOrCreateFieldMapping(field.obfuscatedName, field.descriptor);
+                fieldMapping.setDeobfuscatedName(field.name);
+            }
+            for (Member method : state.methods) {
+                classMapping.getOrCreateMethodMapping(method.obfuscatedName, method.descriptor).setDeobfuscatedName(method.name);
+            }
+        };
+    }
+
+    /**
+     * Sink that writes classes as TSRG as they come in, so a snapshot doesn't have to fit in memory
+     */
+    public static Sink tsrg(Writer writer) {
+        return new Sink() {
+            @Override
+            public void accept(ClassState state) {
+                try {
+                    writer.write(state.obfuscatedName + " " + state.name + "\n");
+                    for (Member field : state.fields) {
+                        writer.write("\t" + field.obfuscatedName + " " + field.name + "\n");
+                    }
+                    for (Member method : state.methods) {
+                        writer.write("\t" + method.obfuscatedName + " " + method.descriptor + " " + method.name + "\n");
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public void finish() {
+                try {
+                    writer.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+}
@@ -0,0 +1,466 @@
+package io.jadon.alef.matcher;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import io.jadon.alef.MinecraftVersion;
+import io.jadon.alef.match.Match;
+import io.jadon.alef.matcher.JarFeatures.ClassFeatures;
+import io.jadon.alef.matcher.JarFeatures.FieldFeatures;
+import io.jadon.alef.matcher.JarFeatures.MethodFeatures;
+import io.jadon.alef.metrics.Metrics;
+import io.jadon.alef.provider.MojangProvider;
+import lombok.Data;
+import lombok.SneakyThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Matches the classes and members of two versions of a jar from their bytecode.
+ * <p>
+ * Classes that aren't obfuscated are matched by name. Then every class gets hashed by its string constants and by the
+ * shape of its members, and hashes that are unique on both sides are matched straight away. The rest are scored
+ * against every candidate of the same kind in parallel, using member descriptors, string constants, referenced
+ * members and the class hierarchy. Class names in descriptors are replaced with their match as soon as there is one,
+ * so each pass has more to go on than the last. A class is only matched when it is clearly the best candidate for
+ * its counterpart and the other way around.
+ * <p>
+ * Members of matched classes are then paired up greedily, best score first.
+ */
+public class AutoMatcher {
+
+    private static final int PASSES = 8;
+    private static final double CLASS_THRESHOLD = 0.5;
+    private static final double CLASS_MARGIN = 0.04;
+    private static final double METHOD_THRESHOLD = 0.45;
+    private static final double FIELD_THRESHOLD = 0.5;
+    private static final String UNKNOWN = "*";
+
+    private final JarFeatures oldJar;
+    private final JarFeatures newJar;
+    /** old class name -> new class name */
+    private final Map<String, String> classes = new ConcurrentHashMap<>();
+    /** new class name -> old class name */
+    private final Map<String, String> reverseClasses = new ConcurrentHashMap<>();
+
+    public AutoMatcher(JarFeatures oldJar, JarFeatures newJar) {
+        this.oldJar = oldJar;
+        this.newJar = newJar;
+    }
+
+    public static Match match(File oldJar, File newJar) throws IOException {
+        return new AutoMatcher(JarFeatures.read(oldJar), JarFeatures.read(newJar)).run();
+    }
+
+    /**
+     * Match the client jars of two versions and write the result
+     *
+     * @param output .match file to write
+     * @return match, if both versions have a client jar
+     */
+    @SneakyThrows
+    public static Optional<Match> generate(MinecraftVersion from, MinecraftVersion to, File output) {
+        Optional<File> oldJar = MojangProvider.getClientJar(from);
+        Optional<File> newJar = MojangProvider.getClientJar(to);
+        if (!oldJar.isPresent() || !newJar.isPresent()) return Optional.empty();
+        System.out.println("Generating match " + from.toString() + " -> " + to.toString());
+        String hop = from.toString() + "->" + to.toString();
+        AutoMatcher matcher = Metrics.time("automatch.read", hop,
+                () -> new AutoMatcher(JarFeatures.read(oldJar.get()), JarFeatures.read(newJar.get())));
+        Match match = Metrics.time("automatch.match", hop, matcher::run);
+        matcher.write(match, output);
+        return Optional.of(match);
+    }
+
+    public Match run() {
+        long start = System.nanoTime();
+        matchByName();
+        System.out.println("Matched " + classes.size() + " classes by name");
+        matchByHash((features, oldSide) -> String.join("\n", new TreeSet<>(features.getStrings())), 2);
+        matchByHash((features, oldSide) -> String.join("\n", new TreeSet<>(shape(features, oldSide))), 3);
+        System.out.println("Matched " + classes.size() + " classes after hashing");
+        for (int pass = 0; pass < PASSES; pass++) {
+            int matched = matchByScore();
+            System.out.println("Pass " + (pass + 1) + " matched " + matched + " classes, " + classes.size() + " total");
+            if (matched == 0) break;
+        }
+        Match match = matchMembers();
+        System.out.println(String.format("Matched %d of %d classes in %.1fs", classes.size(),
+                oldJar.getClasses().size(), (System.nanoTime() - start) / 1e9));
+        return match;
+    }
+
+    private void add(String oldName, String newName) {
+        classes.put(oldName, newName);
+        reverseClasses.put(newName, oldName);
+    }
+
+    private void matchByName() {
+        for (String name : oldJar.getClasses().keySet()) {
+            if (!JarFeatures.isObfuscated(name) && newJar.getClasses().containsKey(name)) {
+                add(name, name);
+            }
+        }
+    }
+
+    /**
+     * Match classes whose key is unique on both sides
+     *
+     * @param minimumLines keys with fewer lines than this don't say enough about a class
+     */
+    private void matchByHash(BiFunction<ClassFeatures, Boolean, String> key, int minimumLines) {
+        Map<String, List<String>> oldIndex = index(oldJar, classes.keySet(), features -> key.apply(features, true), minimumLines);
+        Map<String, List<String>> newIndex = index(newJar, reverseClasses.keySet(), features -> key.apply(features, false), minimumLines);
+        for (Map.Entry<String, List<String>> entry : oldIndex.entrySet()) {
+            List<String> candidates = newIndex.get(entry.getKey());
+            if (entry.getValue().size() == 1 && candidates != null && candidates.size() == 1) {
+                add(entry.getValue().get(0), candidates.get(0));
+            }
+        }
+    }
+
+    private static Map<String, List<String>> index(JarFeatures jar, Set<String> matched,
+                                                   Function<ClassFeatures, String> key, int minimumLines) {
+        return jar.getClasses().values().parallelStream()
+                .filter(features -> !matched.contains(features.getName()))
+                .map(features -> new AbstractMap.SimpleEntry<>(key.apply(features), features.getName()))
+                .filter(entry -> entry.getKey().split("\n").length >= minimumLines && !entry.getKey().isEmpty())
+                .collect(Collectors.groupingByConcurrent(entry -> Hashing.sha256()
+                                .hashString(entry.getKey(), StandardCharsets.UTF_8).toString(),
+                        Collectors.mapping(Map.Entry::getValue, Collectors.toList())));
+    }
+
+    /**
+     * Features of a class with obfuscated names replaced, so they can be compared across versions
+     */
+    @Data
+    private static class Profile {
+        private final ClassFeatures features;
+        private final Set<String> members;
+        private final Set<String> strings;
+        private final Set<String> references;
+        private final Set<String> hierarchy;
+    }
+
+    private Profile profile(ClassFeatures features, boolean oldSide) {
+        Set<String> references = new HashSet<>();
+        for (MethodFeatures method : features.getMethods()) {
+            for (String reference : method.getReferences()) {
+                references.add(normalizeReference(reference, oldSide));
+            }
+        }
+        Set<String> hierarchy = new HashSet<>();
+        if (features.getSuperName() != null) hierarchy.add("super " + normalizeClass(features.getSuperName(), oldSide));
+        for (String anInterface : features.getInterfaces()) {
+            hierarchy.add("interface " + normalizeClass(anInterface, oldSide));
+        }
+        return new Profile(features, shape(features, oldSide), features.getStrings(), references, hierarchy);
+    }
+
+    /**
+     * Member descriptors, numbered so that repeated descriptors still count
+     */
+    private Set<String> shape(ClassFeatures features, boolean oldSide) {
+        Set<String> shape = new HashSet<>();
+        Map<String, Integer> counts = new HashMap<>();
+        for (FieldFeatures field : features.getFields()) {
+            String key = (features.isStatic(field.getAccess()) ? "sf " : "f ") + normalize(field.getDescriptor(), oldSide);
+            shape.add(key + "#" + counts.merge(key, 1, Integer::sum));
+        }
+        for (MethodFeatures method : features.getMethods()) {
+            String name = JarFeatures.isObfuscatedMember(method.getName()) ? "" : method.getName();
+            String key = (features.isStatic(method.getAccess()) ? "sm " : "m ") + name + normalize(method.getDescriptor(), oldSide);
+            shape.add(key + "#" + counts.merge(key, 1, Integer::sum));
+        }
+        return shape;
+    }
+
+    /**
+     * @return class name the other side would use, its new name if it is matched, or * if it is still unknown
+     */
+    private String normalizeClass(String name, boolean oldSide) {
+        if (!JarFeatures.isObfuscated(name)) return name;
+        if (oldSide) return classes.getOrDefault(name, UNKNOWN);
+        return reverseClasses.containsKey(name) ? name : UNKNOWN;
+    }
+
+    private String normalize(String descriptor, boolean oldSide) {
+        StringBuilder normalized = new StringBuilder(descriptor.length());
+        int i = 0;
+        while (i < descriptor.length()) {
+            char c = descriptor.charAt(i);
+            if (c == 'L') {
+                int end = descriptor.indexOf(';', i);
+                normalized.append('L').append(normalizeClass(descriptor.substring(i + 1, end), oldSide)).append(';');
+                i = end + 1;
+            } else {
+                normalized.append(c);
+                i++;
+            }
+        }
+        return normalized.toString();
+    }
+
+    private String normalizeReference(String reference, boolean oldSide) {
+        int dot = reference.indexOf('.');
+        String owner = reference.substring(0, dot);
+        int descriptorStart = reference.indexOf('(', dot);
+        if (descriptorStart == -1) descriptorStart = reference.indexOf(':', dot);
+        String name = reference.substring(dot + 1, descriptorStart);
+        if (JarFeatures.isObfuscated(owner) && JarFeatures.isObfuscatedMember(name)) name = "";
+        return normalizeClass(owner, oldSide) + "." + name + normalize(reference.substring(descriptorStart), oldSide);
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        if (a.isEmpty() && b.isEmpty()) return Double.NaN;
+        Set<String> smaller = a.size() < b.size() ? a : b;
+        Set<String> larger = smaller == a ? b : a;
+        int shared = 0;
+        for (String value : smaller) {
+            if (larger.contains(value)) shared++;
+        }
+        return shared / (double) (a.size() + b.size() - shared);
+    }
+
+    /**
+     * Weighted average of the similarities, leaving out features both classes don't have
+     */
+    private static double score(Profile a, Profile b) {
+        double[] similarities = {
+                jaccard(a.members, b.members),
+                jaccard(a.strings, b.strings),
+                jaccard(a.references, b.references),
+                jaccard(a.hierarchy, b.hierarchy)
+        };
+        double[] weights = {0.35, 0.25, 0.25, 0.15};
+        double total = 0;
+        double weight = 0;
+        for (int i = 0; i < similarities.length; i++) {
+            if (Double.isNaN(similarities[i])) continue;
+            total += similarities[i] * weights[i];
+            weight += weights[i];
+        }
+        return weight == 0 ? 0 : total / weight;
+    }
+
+    private static boolean isCandidate(ClassFeatures a, ClassFeatures b) {
+        if (a.getKind() != b.getKind()) return false;
+        int aMembers = a.getMethods().size() + a.getFields().size();
+        int bMembers = b.getMethods().size() + b.getFields().size();
+        if (Math.max(aMembers, bMembers) < 4) return true;
+        return Math.min(aMembers, bMembers) * 2 >= Math.max(aMembers, bMembers);
+    }
+
+    @Data
+    private static class Best {
+        private final String name;
+        private final double score;
+        private final double secondScore;
+    }
+
+    /**
+     * @return number of classes matched in this pass
+     */
+    private int matchByScore() {
+        List<Profile> oldProfiles = oldJar.getClasses().values().parallelStream()
+                .filter(features -> JarFeatures.isObfuscated(features.getName()) && !classes.containsKey(features.getName()))
+                .map(features -> profile(features, true))
+                .collect(Collectors.toList());
+        List<Profile> newProfiles = newJar.getClasses().values().parallelStream()
+                .filter(features -> JarFeatures.isObfuscated(features.getName()) && !reverseClasses.containsKey(features.getName()))
+                .map(features -> profile(features, false))
+                .collect(Collectors.toList());
+
+        Map<String, Best> oldBest = best(oldProfiles, newProfiles);
+        Map<String, Best> newBest = best(newProfiles, oldProfiles);
+        int matched = 0;
+        for (Map.Entry<String, Best> entry : oldBest.entrySet()) {
+            Best best = entry.getValue();
+            if (best.score < CLASS_THRESHOLD || best.score - best.secondScore < CLASS_MARGIN) continue;
+            Best reverse = newBest.get(best.name);
+            if (reverse == null || !reverse.name.equals(entry.getKey())) continue;
+            if (reverse.score - reverse.secondScore < CLASS_MARGIN) continue;
+            add(entry.getKey(), best.name);
+            matched++;
+        }
+        return matched;
+    }
+
+    private static Map<String, Best> best(List<Profile> profiles, List<Profile> candidates) {
+        Map<String, Best> best = new ConcurrentHashMap<>();
+        profiles.parallelStream().forEach(profile -> {
+            String bestName = null;
+            double bestScore = 0;
+            double secondScore = 0;
+            for (Profile candidate : candidates) {
+                if (!isCandidate(profile.features, candidate.features)) continue;
+                double score = score(profile, candidate);
+                if (score > bestScore) {
+                    secondScore = bestScore;
+                    bestScore = score;
+                    bestName = candidate.features.getName();
+                } else if (score > secondScore) {
+                    secondScore = score;
+                }
+            }
+            if (bestName != null) {
+                best.put(profile.features.getName(), new Best(bestName, bestScore, secondScore));
+            }
+        });
+        return best;
+    }
+
+    private Match matchMembers() {
+        List<Match.ClassMatch> classMatches = classes.entrySet().parallelStream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(entry -> matchMembers(oldJar.getClasses().get(entry.getKey()), newJar.getClasses().get(entry.getValue())))
+                .collect(Collectors.toList());
+        return new Match(classMatches);
+    }
+
+    private Match.ClassMatch matchMembers(ClassFeatures oldClass, ClassFeatures newClass) {
+        Match.ClassMatch classMatch = new Match.ClassMatch(oldClass.getName(), newClass.getName());
+
+        List<double[]> methodPairs = new ArrayList<>();
+        List<Set<String>> oldReferences = references(oldClass, true);
+        List<Set<String>> newReferences = references(newClass, false);
+        for (int i = 0; i < oldClass.getMethods().size(); i++) {
+            MethodFeatures oldMethod = oldClass.getMethods().get(i);
+            String oldDescriptor = normalize(oldMethod.getDescriptor(), true);
+            for (int j = 0; j < newClass.getMethods().size(); j++) {
+                MethodFeatures newMethod = newClass.getMethods().get(j);
+                if (oldClass.isStatic(oldMethod.getAccess()) != newClass.isStatic(newMethod.getAccess())) continue;
+                boolean sameName = oldMethod.getName().equals(newMethod.getName());
+                boolean obfuscated = JarFeatures.isObfuscatedMember(oldMethod.getName())
+                        && JarFeatures.isObfuscatedMember(newMethod.getName());
+                if (!sameName && !obfuscated) continue;
+                double score = 0.4 * (oldDescriptor.equals(normalize(newMethod.getDescriptor(), false)) ? 1 : 0)
+                        + 0.2 * orZero(jaccard(oldMethod.getStrings(), newMethod.getStrings()))
+                        + 0.25 * orZero(jaccard(oldReferences.get(i), newReferences.get(j)))
+                        + 0.15 * sizeSimilarity(oldMethod.getInstructions(), newMethod.getInstructions());
+                if (sameName && !obfuscated) score += 1;
+                methodPairs.add(new double[]{score, i, j});
+            }
+        }
+        for (int[] pair : assign(methodPairs, METHOD_THRESHOLD)) {
+            MethodFeatures oldMethod = oldClass.getMethods().get(pair[0]);
+            MethodFeatures newMethod = newClass.getMethods().get(pair[1]);
+            classMatch.getMethodMatches().add(new Match.MethodMatch(oldMethod.getName(), oldMethod.getDescriptor(),
+                    newMethod.getName(), newMethod.getDescriptor()));
+        }
+
+        List<double[]> fieldPairs = new ArrayList<>();
+        for (FieldFeatures oldField : oldClass.getFields()) {
+            String oldDescriptor = normalize(oldField.getDescriptor(), true);
+            for (FieldFeatures newField : newClass.getFields()) {
+                if (oldClass.isStatic(oldField.getAccess()) != newClass.isStatic(newField.getAccess())) continue;
+                double position = 1 - Math.abs(oldField.getIndex() / (double) oldClass.getFields().size()
+                        - newField.getIndex() / (double) newClass.getFields().size());
+                double score = 0.6 * (oldDescriptor.equals(normalize(newField.getDescriptor(), false)) ? 1 : 0)
+                        + 0.4 * position;
+                if (!JarFeatures.isObfuscatedMember(oldField.getName()) && oldField.getName().equals(newField.getName())) {
+                    score += 1;
+                }
+                fieldPairs.add(new double[]{score, oldField.getIndex(), newField.getIndex()});
+            }
+        }
+        for (int[] pair : assign(fieldPairs, FIELD_THRESHOLD)) {
+            FieldFeatures oldField = oldClass.getFields().get(pair[0]);
+            FieldFeatures newField = newClass.getFields().get(pair[1]);
+            classMatch.getFieldMatches().add(new Match.FieldMatch(oldField.getName(), oldField.getDescriptor(),
+                    newField.getName(), newField.getDescriptor()));
+        }
+        return classMatch;
+    }
+
+    private List<Set<String>> references(ClassFeatures features, boolean oldSide) {
+        List<Set<String>> references = new ArrayList<>(features.getMethods().size());
+        for (MethodFeatures method : features.getMethods()) {
+            Set<String> normalized = new HashSet<>();
+            for (String reference : method.getReferences()) {
+                normalized.add(normalizeReference(reference, oldSide));
+            }
+            references.add(normalized);
+        }
+        return references;
+    }
+
+    private static double orZero(double value) {
+        return Double.isNaN(value) ? 0 : value;
+    }
+
+    private static double sizeSimilarity(int a, int b) {
+        if (a == 0 && b == 0) return 1;
+        return Math.min(a, b) / (double) Math.max(a, b);
+    }
+
+    /**
+     * Greedily pair up members, best score first
+     *
+     * @param pairs score, old index, new index
+     * @return old index, new index
+     */
+    private static List<int[]> assign(List<double[]> pairs, double threshold) {
+        pairs.sort((a, b) -> Double.compare(b[0], a[0]));
+        Set<Integer> usedOld = new HashSet<>();
+        Set<Integer> usedNew = new HashSet<>();
+        List<int[]> assigned = new ArrayList<>();
+        for (double[] pair : pairs) {
+            if (pair[0] < threshold) break;
+            int oldIndex = (int) pair[1];
+            int newIndex = (int) pair[2];
+            if (usedOld.contains(oldIndex) || usedNew.contains(newIndex)) continue;
+            usedOld.add(oldIndex);
+            usedNew.add(newIndex);
+            assigned.add(new int[]{oldIndex, newIndex});
+        }
+        assigned.sort(Comparator.comparingInt(pair -> pair[0]));
+        return assigned;
+    }
+
+    /**
+     * Write a match in the format {@link Match#parse(File)} reads, with the input jars in the header
+     */
+    public void write(Match match, File file) throws IOException {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("Matches saved " + ZonedDateTime.now() + ", input files:\n");
+            writeInput(writer, "a", oldJar.getJar());
+            writeInput(writer, "b", newJar.getJar());
+            writer.write("\tcp:\n\tcp a:\n\tcp b:\n");
+            match.write(writer);
+        }
+    }
+
+    private static void writeInput(Writer writer, String side, File jar) throws IOException {
+        byte[] hash = com.google.common.io.Files.asByteSource(jar).hash(Hashing.sha256()).asBytes();
+        writer.write("\t" + side + ":\n\t\t" + jar.length() + "\t" + BaseEncoding.base64().encode(hash) + "\t"
+                + jar.getName() + "\n");
+    }
+
+    /**
+     * Usage: &lt;old jar&gt; &lt;new jar&gt; &lt;output .match&gt; or &lt;from version&gt; &lt;to version&gt;
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3) {
+            AutoMatcher matcher = new AutoMatcher(JarFeatures.read(new File(args[0])), JarFeatures.read(new File(args[1])));
+            matcher.write(matcher.run(), new File(args[2]));
+            return;
+        }
+        MinecraftVersion from = MinecraftVersion.fromId(args[0])
+                .orElseThrow(() -> new IllegalArgumentException("Unknown version " + args[0]));
+        MinecraftVersion to = MinecraftVersion.fromId(args[1])
+                .orElseThrow(() -> new IllegalArgumentException("Unknown version " + args[1]));
+        generate(from, to, new File("mappings/matches", from.toString() + "-" + to.toString() + ".match"));
+    }
+
+}
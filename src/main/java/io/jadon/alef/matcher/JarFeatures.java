@@ -0,0 +1,178 @@
+package io.jadon.alef.matcher;
+
+import com.google.common.io.ByteStreams;
+import lombok.Data;
+import lombok.Getter;
+import org.objectweb.asm.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Everything {@link AutoMatcher} looks at in a jar: the hierarchy, member descriptors, string constants and the
+ * members each method uses.
+ */
+public class JarFeatures {
+
+    @Getter
+    private final File jar;
+    @Getter
+    private final Map<String, ClassFeatures> classes;
+
+    private JarFeatures(File jar, Map<String, ClassFeatures> classes) {
+        this.jar = jar;
+        this.classes = classes;
+    }
+
+    @Data
+    public static class ClassFeatures {
+        private final String name;
+        private final int access;
+        private final String superName;
+        private final List<String> interfaces;
+        private final List<FieldFeatures> fields = new ArrayList<>();
+        private final List<MethodFeatures> methods = new ArrayList<>();
+
+        public boolean isStatic(int memberAccess) {
+            return (memberAccess & Opcodes.ACC_STATIC) != 0;
+        }
+
+        /**
+         * Interface, enum, annotation or plain class, two classes of different kinds never match
+         */
+        public int getKind() {
+            return access & (Opcodes.ACC_INTERFACE | Opcodes.ACC_ENUM | Opcodes.ACC_ANNOTATION);
+        }
+
+        public Set<String> getStrings() {
+            Set<String> strings = new HashSet<>();
+            for (MethodFeatures method : methods) {
+                strings.addAll(method.strings);
+            }
+            return strings;
+        }
+    }
+
+    @Data
+    public static class MethodFeatures {
+        private final String name;
+        private final String descriptor;
+        private final int access;
+        private final Set<String> strings = new HashSet<>();
+        /** owner.name + descriptor for methods, owner.name:descriptor for fields */
+        private final Set<String> references = new HashSet<>();
+        private int instructions;
+    }
+
+    @Data
+    public static class FieldFeatures {
+        private final String name;
+        private final String descriptor;
+        private final int access;
+        /** position in the class, fields usually keep their order between versions */
+        private final int index;
+    }
+
+    /**
+     * Obfuscated classes are in the default package, everything else keeps its name between versions
+     */
+    public static boolean isObfuscated(String className) {
+        return className.indexOf('/') == -1;
+    }
+
+    public static boolean isObfuscatedMember(String name) {
+        return name.length() <= 3 && !name.startsWith("<");
+    }
+
+    public static JarFeatures read(File jar) throws IOException {
+        List<byte[]> classFiles = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(jar)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.getName().endsWith(".class")) continue;
+                try (InputStream stream = zip.getInputStream(entry)) {
+                    classFiles.add(ByteStreams.toByteArray(stream));
+                }
+            }
+        }
+        Map<String, ClassFeatures> classes = classFiles.parallelStream()
+                .map(JarFeatures::scan)
+                .collect(Collectors.toMap(ClassFeatures::getName, features -> features, (a, b) -> a, TreeMap::new));
+        return new JarFeatures(jar, classes);
+    }
+
+    private static ClassFeatures scan(byte[] classFile) {
+        ClassFeatures[] result = new ClassFeatures[1];
+        new ClassReader(classFile).accept(new ClassVisitor(Opcodes.ASM8) {
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                result[0] = new ClassFeatures(name, access, superName,
+                        interfaces == null ? Collections.emptyList() : Arrays.asList(interfaces));
+            }
+
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+                result[0].fields.add(new FieldFeatures(name, descriptor, access, result[0].fields.size()));
+                return null;
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                MethodFeatures method = new MethodFeatures(name, descriptor, access);
+                result[0].methods.add(method);
+                return new MethodVisitor(Opcodes.ASM8) {
+                    @Override
+                    public void visitInsn(int opcode) {
+                        method.instructions++;
+                    }
+
+                    @Override
+                    public void visitIntInsn(int opcode, int operand) {
+                        method.instructions++;
+                    }
+
+                    @Override
+                    public void visitVarInsn(int opcode, int var) {
+                        method.instructions++;
+                    }
+
+                    @Override
+                    public void visitTypeInsn(int opcode, String type) {
+                        method.instructions++;
+                    }
+
+                    @Override
+                    public void visitJumpInsn(int opcode, Label label) {
+                        method.instructions++;
+                    }
+
+                    @Override
+                    public void visitLdcInsn(Object value) {
+                        method.instructions++;
+                        if (value instanceof String) method.strings.add((String) value);
+                    }
+
+                    @Override
+                    public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+                        method.instructions++;
+                        method.references.add(owner + "." + name + ":" + descriptor);
+                    }
+
+                    @Override
+                    public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+                        method.instructions++;
+                        method.references.add(owner + "." + name + descriptor);
+                    }
+                };
+            }
+        }, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return result[0];
+    }
+
+}
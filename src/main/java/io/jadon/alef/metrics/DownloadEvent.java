@@ -0,0 +1,38 @@
+package io.jadon.alef.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A file downloaded into the artifact cache
+ */
+@Name("io.jadon.alef.Download")
+@Label("Download")
+@Category("Alef")
+@Description("A file downloaded into the artifact cache")
+public class DownloadEvent extends Event {
+
+    @Label("URL")
+    String url;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    public static DownloadEvent start(String url) {
+        DownloadEvent event = new DownloadEvent();
+        event.url = url;
+        event.begin();
+        return event;
+    }
+
+    public void finish(long bytes) {
+        this.bytes = bytes;
+        commit();
+    }
+
+}
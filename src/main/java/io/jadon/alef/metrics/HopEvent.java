@@ -0,0 +1,53 @@
+package io.jadon.alef.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Result of chaining two matches
+ */
+@Name("io.jadon.alef.Hop")
+@Label("Hop")
+@Category("Alef")
+@Description("Classes, fields and methods kept or dropped by chaining a match")
+public class HopEvent extends Event {
+
+    @Label("Hop")
+    String hop;
+
+    @Label("Classes Kept")
+    int classesKept;
+
+    @Label("Classes Dropped")
+    int classesDropped;
+
+    @Label("Fields Kept")
+    int fieldsKept;
+
+    @Label("Fields Dropped")
+    int fieldsDropped;
+
+    @Label("Methods Kept")
+    int methodsKept;
+
+    @Label("Methods Dropped")
+    int methodsDropped;
+
+    public static void emit(String hop, int classesKept, int classesDropped, int fieldsKept, int fieldsDropped,
+                            int methodsKept, int methodsDropped) {
+        HopEvent event = new HopEvent();
+        if (!event.shouldCommit()) return;
+        event.hop = hop;
+        event.classesKept = classesKept;
+        event.classesDropped = classesDropped;
+        event.fieldsKept = fieldsKept;
+        event.fieldsDropped = fieldsDropped;
+        event.methodsKept = methodsKept;
+        event.methodsDropped = methodsDropped;
+        event.commit();
+    }
+
+}
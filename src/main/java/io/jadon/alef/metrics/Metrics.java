@@ -0,0 +1,191 @@
+package io.jadon.alef.metrics;
+
+import jdk.jfr.FlightRecorder;
+import lombok.Data;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stage timers and counters for the migration pipeline.
+ * <p>
+ * Stages are timed with {@code Metrics.time("parse", version, () -> ...)} and each one is also a {@link StageEvent}
+ * while JFR is running, so a recording shows them without any setup. A counter bumped
+ * inside a stage with a detail is also counted under {@code name[detail]}, which gives per-hop and per-version
+ * numbers for free.
+ * <p>
+ * Run with {@code -Dalef.metrics=stdout} or {@code -Dalef.metrics=<file>} to get a report when the JVM exits.
+ */
+public class Metrics {
+
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Stage> currentStage = new ThreadLocal<>();
+    private static volatile Optional<MetricsReporter> reporter = Optional.empty();
+
+    static {
+        MetricsReporter.fromProperty(System.getProperty("alef.metrics")).ifPresent(propertyReporter -> {
+            reporter = Optional.of(propertyReporter);
+            Runtime.getRuntime().addShutdownHook(new Thread(Metrics::report, "alef-metrics"));
+        });
+    }
+
+    @Data
+    public static class Timer {
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        private Timer add(long nanos) {
+            return new Timer(count + 1, totalNanos + nanos, Math.max(maxNanos, nanos));
+        }
+    }
+
+    @Data
+    public static class Snapshot {
+        private final Map<String, Timer> timers;
+        private final Map<String, Long> counters;
+    }
+
+    public static class Stage implements AutoCloseable {
+        private final String name;
+        private final String detail;
+        private final Stage parent;
+        /** only made once JFR is running, loading the event class starts JFR up, which takes longer than a lookup */
+        private final @Nullable StageEvent event = FlightRecorder.isInitialized() ? new StageEvent() : null;
+        private final long start = System.nanoTime();
+
+        private Stage(String name, String detail, Stage parent) {
+            this.name = name;
+            this.detail = detail;
+            this.parent = parent;
+            if (event != null) event.begin();
+        }
+
+        @Override
+        public void close() {
+            long nanos = System.nanoTime() - start;
+            timers.merge(name, new Timer(1, nanos, nanos), (timer, added) -> timer.add(nanos));
+            currentStage.set(parent);
+            if (event != null && event.shouldCommit()) {
+                event.stage = name;
+                event.detail = detail;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Work to time, which may throw
+     */
+    @FunctionalInterface
+    public interface Timed<T, E extends Exception> {
+        T get() throws E;
+    }
+
+    @FunctionalInterface
+    public interface TimedRunnable<E extends Exception> {
+        void run() throws E;
+    }
+
+    public static <T, E extends Exception> T time(String name, Timed<T, E> timed) throws E {
+        return time(name, null, timed);
+    }
+
+    /**
+     * Time a stage on this thread
+     *
+     * @param name   stage name, timers are grouped by it
+     * @param detail what the stage is working on, like a version or a hop
+     * @return what the timed work returned
+     */
+    public static <T, E extends Exception> T time(String name, String detail, Timed<T, E> timed) throws E {
+        Stage stage = stage(name, detail);
+        try {
+            return timed.get();
+        } finally {
+            stage.close();
+        }
+    }
+
+    public static <E extends Exception> void time(String name, TimedRunnable<E> timed) throws E {
+        time(name, null, timed);
+    }
+
+    public static <E extends Exception> void time(String name, String detail, TimedRunnable<E> timed) throws E {
+        time(name, detail, () -> {
+            timed.run();
+            return null;
+        });
+    }
+
+    public static Stage stage(String name) {
+        return stage(name, null);
+    }
+
+    /**
+     * Start timing a stage on this thread, for stages that don't fit in a lambda. The stage ends when it is closed.
+     *
+     * @param name   stage name, timers are grouped by it
+     * @param detail what the stage is working on, like a version or a hop
+     */
+    public static Stage stage(String name, String detail) {
+        Stage stage = new Stage(name, detail, currentStage.get());
+        currentStage.set(stage);
+        return stage;
+    }
+
+    /**
+     * @return detail of the closest enclosing stage that has one
+     */
+    public static Optional<String> currentDetail() {
+        for (Stage stage = currentStage.get(); stage != null; stage = stage.parent) {
+            if (stage.detail != null) return Optional.of(stage.detail);
+        }
+        return Optional.empty();
+    }
+
+    public static void count(String name) {
+        count(name, 1);
+    }
+
+    public static void count(String name, long delta) {
+        counters.computeIfAbsent(name, key -> new LongAdder()).add(delta);
+        currentDetail().ifPresent(detail ->
+                counters.computeIfAbsent(name + "[" + detail + "]", key -> new LongAdder()).add(delta));
+    }
+
+    public static Snapshot snapshot() {
+        Map<String, Long> counterValues = new TreeMap<>();
+        counters.forEach((name, value) -> counterValues.put(name, value.sum()));
+        return new Snapshot(new TreeMap<>(timers), counterValues);
+    }
+
+    public static void reset() {
+        counters.clear();
+        timers.clear();
+    }
+
+    public static void setReporter(MetricsReporter metricsReporter) {
+        reporter = Optional.ofNullable(metricsReporter);
+    }
+
+    /**
+     * Send everything recorded so far to the reporter, if there is one
+     */
+    public static void report() {
+        reporter.ifPresent(metricsReporter -> {
+            try {
+                metricsReporter.report(snapshot());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+}
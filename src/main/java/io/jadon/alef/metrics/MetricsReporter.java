@@ -0,0 +1,60 @@
+package io.jadon.alef.metrics;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Where {@link Metrics} end up at the end of a run
+ */
+public interface MetricsReporter {
+
+    void report(Metrics.Snapshot snapshot) throws IOException;
+
+    static MetricsReporter stdout() {
+        return snapshot -> print(snapshot, new PrintWriter(System.out, true));
+    }
+
+    /**
+     * Write the report to a file, replacing it if it already exists
+     */
+    static MetricsReporter file(Path path) {
+        return snapshot -> {
+            if (path.getParent() != null) Files.createDirectories(path.getParent());
+            try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+                print(snapshot, new PrintWriter(writer));
+            }
+        };
+    }
+
+    /**
+     * @param value "stdout" or a file path, usually from the {@code alef.metrics} system property
+     * @return reporter, or empty if the value is null or blank
+     */
+    static Optional<MetricsReporter> fromProperty(String value) {
+        if (value == null || value.trim().isEmpty()) return Optional.empty();
+        if (value.equals("stdout")) return Optional.of(stdout());
+        return Optional.of(file(Paths.get(value)));
+    }
+
+    static void print(Metrics.Snapshot snapshot, PrintWriter writer) {
+        writer.printf("%-40s %8s %12s %12s%n", "stage", "count", "total ms", "max ms");
+        for (Map.Entry<String, Metrics.Timer> timer : snapshot.getTimers().entrySet()) {
+            writer.printf("%-40s %8d %12.1f %12.1f%n", timer.getKey(), timer.getValue().getCount(),
+                    timer.getValue().getTotalNanos() / 1e6, timer.getValue().getMaxNanos() / 1e6);
+        }
+        writer.println();
+        writer.printf("%-60s %12s%n", "counter", "value");
+        for (Map.Entry<String, Long> counter : snapshot.getCounters().entrySet()) {
+            writer.printf("%-60s %12d%n", counter.getKey(), counter.getValue());
+        }
+        writer.flush();
+    }
+
+}
@@ -0,0 +1,24 @@
+package io.jadon.alef.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * One {@link Metrics.Stage}, so recordings show where a run spent its time
+ */
+@Name("io.jadon.alef.Stage")
+@Label("Stage")
+@Category("Alef")
+@Description("A timed stage of the migration pipeline")
+public class StageEvent extends Event {
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Detail")
+    String detail;
+
+}
@@ -0,0 +1,204 @@
+package io.jadon.alef.provider;
+
+import com.google.common.io.BaseEncoding;
+import lombok.SneakyThrows;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Content addressed store for everything we download.
+ * <p>
+ * Downloads are written to a temporary file while their SHA-1 is computed, checked against the expected hash if
+ * there is one, and then moved to {@code cache/objects/ab/abcdef...}. The path a provider asked for is a hard link
+ * to that object with a {@code .sha1} file next to it, which is only written once the link is in place. An
+ * interrupted download never leaves a file behind that looks valid, and identical files from different versions
+ * are only stored once.
+ */
+public class ArtifactCache {
+
+    private static final String HASH_SUFFIX = ".sha1";
+    /** temp files younger than this may be a download in progress in another process sharing the cache */
+    private static final long STALE_TEMP_MILLIS = TimeUnit.HOURS.toMillis(Long.getLong("alef.cache.staleTempHours", 24));
+
+    /**
+     * Store a stream in the cache and link it to a destination. The stream is not closed.
+     *
+     * @param inputStream  contents to store
+     * @param destination  where the contents should show up
+     * @param expectedSha1 hash the contents must have, or null if it isn't known
+     * @return SHA-1 of the contents
+     * @throws IOException if the contents don't match the expected hash
+     */
+    public static String store(InputStream inputStream, File destination, @Nullable String expectedSha1) throws IOException {
+        String hash = put(inputStream, expectedSha1);
+        link(hash, destination);
+        return hash;
+    }
+
+    /**
+     * Store a stream in the cache
+     *
+     * @param inputStream  contents to store, not closed
+     * @param expectedSha1 hash the contents must have, or null if it isn't known
+     * @return SHA-1 of the contents
+     */
+    public static String put(InputStream inputStream, @Nullable String expectedSha1) throws IOException {
+        File tempDir = getTempDir();
+        tempDir.mkdirs();
+        File tempFile = new File(tempDir, UUID.randomUUID().toString());
+        try {
+            MessageDigest digest = newDigest();
+            try (OutputStream output = new BufferedOutputStream(new FileOutputStream(tempFile))) {
+                DigestInputStream digestStream = new DigestInputStream(inputStream, digest);
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = digestStream.read(buffer)) != -1) {
+                    output.write(buffer, 0, read);
+                }
+            }
+            String hash = BaseEncoding.base16().lowerCase().encode(digest.digest());
+            if (expectedSha1 != null && !expectedSha1.equalsIgnoreCase(hash)) {
+                throw new IOException("Hash mismatch: expected " + expectedSha1 + " but downloaded " + hash);
+            }
+            File object = getObject(hash);
+            if (!object.exists()) {
+                object.getParentFile().mkdirs();
+                Files.move(tempFile.toPath(), object.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            return hash;
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    /**
+     * Make a stored object available at a path
+     *
+     * @param hash        SHA-1 of the object
+     * @param destination path to link it to
+     */
+    public static void link(String hash, File destination) throws IOException {
+        File object = getObject(hash);
+        if (!object.exists()) throw new FileNotFoundException("No object for " + hash);
+        File parent = destination.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        File hashFile = getHashFile(destination);
+        Files.deleteIfExists(hashFile.toPath());
+
+        Path tempLink = new File(parent, destination.getName() + ".tmp").toPath();
+        Files.deleteIfExists(tempLink);
+        try {
+            Files.createLink(tempLink, object.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            // different file system or no hard links, fall back to a copy
+            Files.copy(object.toPath(), tempLink, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(tempLink, destination.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.write(hashFile.toPath(), hash.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Check if a file was completely written by the cache. This is only a length check against the object, so it
+     * stays cheap enough to run on every cache lookup: it catches interrupted and truncated files, but not bytes that
+     * changed on disk. {@link #verifyAll} rehashes the objects themselves.
+     *
+     * @param file file to check
+     * @return true if the file has a hash file and is as long as its object
+     */
+    @SneakyThrows
+    public static boolean isValid(File file) {
+        File hashFile = getHashFile(file);
+        if (!file.exists() || !hashFile.exists()) return false;
+        String hash = new String(Files.readAllBytes(hashFile.toPath()), StandardCharsets.UTF_8).trim();
+        File object = getObject(hash);
+        return object.exists() && object.length() == file.length();
+    }
+
+    /**
+     * Rehash every stored object in parallel and remove the ones that don't match their name.
+     * Files linked to a removed object are no longer valid and get downloaded again. Temp files are only removed
+     * once they are older than a day ({@code -Dalef.cache.staleTempHours}), since other processes sharing the cache
+     * may still be writing them.
+     *
+     * @return number of objects removed
+     */
+    @SneakyThrows
+    public static int verifyAll() {
+        File objectsDir = getObjectsDir();
+        if (!objectsDir.exists()) return 0;
+        Path tempDir = getTempDir().toPath();
+        List<Path> objects;
+        try (Stream<Path> paths = Files.walk(objectsDir.toPath())) {
+            objects = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        AtomicInteger removed = new AtomicInteger();
+        long staleBefore = System.currentTimeMillis() - STALE_TEMP_MILLIS;
+        objects.parallelStream().forEach(path -> {
+            try {
+                boolean remove = path.startsWith(tempDir)
+                        ? Files.getLastModifiedTime(path).toMillis() < staleBefore
+                        : !hash(path.toFile()).equals(path.getFileName().toString());
+                if (remove) {
+                    Files.deleteIfExists(path);
+                    removed.incrementAndGet();
+                }
+            } catch (NoSuchFileException e) {
+                // a temp file that was moved or deleted by its own process
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        if (removed.get() > 0) {
+            System.out.println("Removed " + removed.get() + " corrupt cache objects and stale temp files");
+        }
+        return removed.get();
+    }
+
+    public static String hash(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(file))) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return BaseEncoding.base16().lowerCase().encode(digest.digest());
+    }
+
+    public static File getObjectsDir() {
+        return new File(MappingProvider.CACHE_DIR, "objects");
+    }
+
+    private static File getTempDir() {
+        return new File(getObjectsDir(), "tmp");
+    }
+
+    public static File getObject(String hash) {
+        return new File(getObjectsDir(), hash.substring(0, 2) + "/" + hash);
+    }
+
+    private static File getHashFile(File file) {
+        return new File(file.getAbsoluteFile().getParentFile(), file.getName() + HASH_SUFFIX);
+    }
+
+    @SneakyThrows
+    private static MessageDigest newDigest() {
+        return MessageDigest.getInstance("SHA-1");
+    }
+
+}
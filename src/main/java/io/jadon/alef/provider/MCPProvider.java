@@ -1,32 +1,96 @@
 package io.jadon.alef.provider;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableMap;
 import io.jadon.alef.MinecraftVersion;
+import io.jadon.alef.mapping.LazyMappingSet;
+import io.jadon.alef.metrics.Metrics;
+import lombok.Data;
 import lombok.SneakyThrows;
 import org.cadixdev.lorenz.MappingSet;
 import org.cadixdev.lorenz.io.MappingFormats;
 import org.cadixdev.lorenz.model.*;
 
 import java.io.File;
-import java.io.InputStream;
+import java.io.IOException;
 import java.net.URL;
 import java.nio.file.Files;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 public class MCPProvider extends MappingProvider {
 
+    /**
+     * Parsed snapshot csvs by MCP version. Several Minecraft versions use the same snapshot, so each one is
+     * downloaded and parsed once and shared.
+     */
+    private final Map<String, Supplier<SnapshotCsvs>> snapshots = new ConcurrentHashMap<>();
+
+    /**
+     * srg -> mcp names from one MCP snapshot
+     */
+    @Data
+    public static class SnapshotCsvs {
+        private final ImmutableMap<String, String> fields;
+        private final ImmutableMap<String, String> methods;
+    }
+
     protected MCPProvider() {
     }
 
+    /**
+     * Every version that has an MCP snapshot
+     */
+    public static class Service implements ProviderService {
+        @Override
+        public String getName() {
+            return "mcp";
+        }
+
+        @Override
+        public List<String> getNamespaces() {
+            return Collections.singletonList("mcp");
+        }
+
+        @Override
+        public List<VersionRange> getVersionRanges() {
+            List<VersionRange> ranges = new ArrayList<>();
+            for (MinecraftVersion version : MinecraftVersion.values()) {
+                if (getSnapshot(version).isPresent()) ranges.add(VersionRange.only(version));
+            }
+            return ranges;
+        }
+
+        @Override
+        public MappingProvider create() {
+            return new MCPProvider();
+        }
+    }
+
     public static final String LEGACY_URL = "http://files.minecraftforge.net/maven/de/oceanlabs/mcp/mcp/%s/mcp-%s-csrg.zip";
     public static final String MODERN_URL = "https://raw.githubusercontent.com/MinecraftForge/MCPConfig/master/versions/release/%s/joined.tsrg";
     public static final String SNAPSHOT_URL = "http://export.mcpbot.bspk.rs/mcp_snapshot_nodoc/%s/mcp_snapshot_nodoc-%s.zip";
 
     public Optional<String> getMcpVersion(MinecraftVersion minecraftVersion) {
+        return getSnapshot(minecraftVersion);
+    }
+
+    /**
+     * @return every Minecraft version that gets its names from the snapshot
+     */
+    public static List<MinecraftVersion> getVersionsUsing(String mcpVersion) {
+        List<MinecraftVersion> versions = new ArrayList<>();
+        for (MinecraftVersion version : MinecraftVersion.values()) {
+            if (getSnapshot(version).filter(mcpVersion::equals).isPresent()) versions.add(version);
+        }
+        return versions;
+    }
+
+    private static Optional<String> getSnapshot(MinecraftVersion minecraftVersion) {
         switch (minecraftVersion) {
             case v1_16_1:
             case v1_15_1:
@@ -57,44 +121,80 @@ public class MCPProvider extends MappingProvider {
 
     @SneakyThrows
     public void downloadLegacy(File destination, MinecraftVersion version) {
-        if (destination.exists()) return;
+        if (isCached(destination)) return;
         destination.getParentFile().mkdirs();
-        URL url = new URL(LEGACY_URL.replaceAll("%s", version.toString()));
-        ZipInputStream inputStream = new ZipInputStream(url.openStream());
-        ZipEntry entry = inputStream.getNextEntry();
-        while (entry != null) {
-            if (entry.getName().equals("joined.csrg")) {
-                copyToFile(inputStream, destination);
-                return;
+        URL url = Mirror.url(LEGACY_URL.replaceAll("%s", version.toString()));
+        Metrics.time("download", () -> extractLegacy(url, destination));
+    }
+
+    private static void extractLegacy(URL url, File destination) throws IOException {
+        try (ZipInputStream inputStream = new ZipInputStream(url.openStream())) {
+            ZipEntry entry = inputStream.getNextEntry();
+            while (entry != null) {
+                if (entry.getName().equals("joined.csrg")) {
+                    copyToFile(inputStream, destination);
+                    countDownload(destination.length());
+                    return;
+                }
+                entry = inputStream.getNextEntry();
             }
-            entry = inputStream.getNextEntry();
         }
-        inputStream.close();
     }
 
     @SneakyThrows
     public void downloadModernSrg(File destination, MinecraftVersion version) {
-        if (destination.exists()) return;
+        if (isCached(destination)) return;
         destination.getParentFile().mkdirs();
-        URL url = new URL(MODERN_URL.replaceAll("%s", version.toString()));
-        InputStream inputStream = url.openStream();
-        MappingProvider.copyToFile(inputStream, destination);
-        inputStream.close();
+        copyToFile(Mirror.url(MODERN_URL.replaceAll("%s", version.toString())), destination);
     }
 
     @SneakyThrows
     public void downloadSnapshotCsvs(File destinationDir, String mcpVersion) {
+        if (isCached(new File(destinationDir, "fields.csv")) && isCached(new File(destinationDir, "methods.csv"))) return;
         destinationDir.mkdirs();
-        URL url = new URL(SNAPSHOT_URL.replaceAll("%s", mcpVersion));
-        ZipInputStream inputStream = new ZipInputStream(url.openStream());
-        ZipEntry entry = inputStream.getNextEntry();
-        while (entry != null) {
-            if (entry.getName().equals("fields.csv") || entry.getName().equals("methods.csv")) {
-                copyToFile(inputStream, new File(destinationDir, entry.getName()));
+        URL url = Mirror.url(SNAPSHOT_URL.replaceAll("%s", mcpVersion));
+        Metrics.time("download", () -> extractSnapshotCsvs(url, destinationDir));
+    }
+
+    private static void extractSnapshotCsvs(URL url, File destinationDir) throws IOException {
+        try (ZipInputStream inputStream = new ZipInputStream(url.openStream())) {
+            ZipEntry entry = inputStream.getNextEntry();
+            while (entry != null) {
+                if (entry.getName().equals("fields.csv") || entry.getName().equals("methods.csv")) {
+                    File csv = new File(destinationDir, entry.getName());
+                    copyToFile(inputStream, csv);
+                    countDownload(csv.length());
+                }
+                entry = inputStream.getNextEntry();
             }
-            entry = inputStream.getNextEntry();
         }
-        inputStream.close();
+    }
+
+    /**
+     * Get the names from a snapshot, downloading it to {@code cache/mcp_snapshot/<mcp version>} and parsing it the
+     * first time any version asks for it
+     */
+    public SnapshotCsvs getSnapshotCsvs(String mcpVersion) {
+        return snapshots.computeIfAbsent(mcpVersion, version -> Suppliers.memoize(() -> {
+            File snapshotDir = new File(CACHE_DIR, "mcp_snapshot/" + version);
+            downloadSnapshotCsvs(snapshotDir, version);
+            return Metrics.time("mcp.csv", version, () -> new SnapshotCsvs(
+                    ImmutableMap.copyOf(parseCsv(new File(snapshotDir, "fields.csv"))),
+                    ImmutableMap.copyOf(parseCsv(new File(snapshotDir, "methods.csv")))));
+        })).get();
+    }
+
+    /**
+     * Forget the parsed csvs of a snapshot, so they are read again the next time a version asks for them. Mappings
+     * that were already built from them are up to the caller.
+     */
+    public void invalidateSnapshot(String mcpVersion) {
+        snapshots.remove(mcpVersion);
+    }
+
+    @Override
+    public void reset() {
+        snapshots.clear();
     }
 
     @SneakyThrows
@@ -119,18 +219,16 @@ public class MCPProvider extends MappingProvider {
         File versionDir = new File(CACHE_DIR, minecraftVersion.toString());
         File csrgFile = new File(versionDir, "searge.csrg");
         File mcpFile = new File(versionDir, "mcp.tsrg");
-        downloadSnapshotCsvs(versionDir, mcpVersion);
+        SnapshotCsvs snapshot = getSnapshotCsvs(mcpVersion);
         downloadLegacy(csrgFile, minecraftVersion);
 
-        Map<String, String> mcpFields = parseCsv(new File(versionDir, "fields.csv"));
-        Map<String, String> mcpMethods = parseCsv(new File(versionDir, "methods.csv"));
-        MappingSet srgMappings = MappingFormats.CSRG.read(csrgFile.toPath());
+        MappingSet srgMappings = Metrics.time("mcp.parse", () -> MappingFormats.CSRG.read(csrgFile.toPath()));
 
         for (TopLevelClassMapping classMapping : srgMappings.getTopLevelClassMappings()) {
-            replaceSrgNames(mcpFields, mcpMethods, classMapping);
+            replaceSrgNames(snapshot.fields, snapshot.methods, classMapping);
         }
 
-        MappingFormats.TSRG.write(srgMappings, mcpFile.toPath());
+        writeMcpFile(srgMappings, mcpFile, csrgFile, mcpVersion);
         return srgMappings;
     }
 
@@ -143,17 +241,15 @@ public class MCPProvider extends MappingProvider {
         File versionDir = new File(CACHE_DIR, minecraftVersion.toString());
         File seargeFile = new File(versionDir, "searge.tsrg");
         File mcpFile = new File(versionDir, "mcp.tsrg");
-        downloadSnapshotCsvs(versionDir, mcpVersion);
+        SnapshotCsvs snapshot = getSnapshotCsvs(mcpVersion);
         downloadModernSrg(seargeFile, minecraftVersion);
-        Map<String, String> mcpFields = parseCsv(new File(versionDir, "fields.csv"));
-        Map<String, String> mcpMethods = parseCsv(new File(versionDir, "methods.csv"));
-        MappingSet srgMappings = MappingFormats.TSRG.read(seargeFile.toPath());
+        MappingSet srgMappings = Metrics.time("mcp.parse", () -> MappingFormats.TSRG.read(seargeFile.toPath()));
 
         for (TopLevelClassMapping classMapping : srgMappings.getTopLevelClassMappings()) {
-            replaceSrgNames(mcpFields, mcpMethods, classMapping);
+            replaceSrgNames(snapshot.fields, snapshot.methods, classMapping);
         }
 
-        MappingFormats.TSRG.write(srgMappings, mcpFile.toPath());
+        writeMcpFile(srgMappings, mcpFile, seargeFile, mcpVersion);
         return srgMappings;
     }
 
@@ -175,8 +271,64 @@ public class MCPProvider extends MappingProvider {
         }
     }
 
+    /**
+     * Write the mcp.tsrg that {@link #getLazyMappings} reads, unless it was already written from the same srg file and
+     * snapshot. It is written next to it and moved into place, so a lazy set reading the old one never sees a
+     * partial file.
+     */
+    private void writeMcpFile(MappingSet mappings, File mcpFile, File srgFile, String mcpVersion) throws IOException {
+        if (isMcpFileCurrent(mcpFile, srgFile, mcpVersion)) return;
+        File tempFile = File.createTempFile(mcpFile.getName(), ".tmp", mcpFile.getParentFile());
+        try {
+            MappingFormats.TSRG.write(mappings, tempFile.toPath());
+            Files.move(tempFile.toPath(), mcpFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    /**
+     * @return true if the mcp.tsrg is newer than the srg file and snapshot it is made from
+     */
+    private static boolean isMcpFileCurrent(File mcpFile, File srgFile, String mcpVersion) {
+        if (!mcpFile.isFile()) return false;
+        File snapshotDir = new File(CACHE_DIR, "mcp_snapshot/" + mcpVersion);
+        long madeFrom = Math.max(srgFile.lastModified(), Math.max(new File(snapshotDir, "fields.csv").lastModified(),
+                new File(snapshotDir, "methods.csv").lastModified()));
+        return mcpFile.lastModified() >= madeFrom;
+    }
+
+    /**
+     * Reads the mcp.tsrg left behind by {@link #getMappings}, which is loaded once to write it if it isn't there or is
+     * older than the files it is made from
+     */
+    @Override
+    @SneakyThrows
+    public Optional<LazyMappingSet> getLazyMappings(MinecraftVersion minecraftVersion) {
+        Optional<String> mcpVersion = getMcpVersion(minecraftVersion);
+        if (!mcpVersion.isPresent()) return Optional.empty();
+        File versionDir = new File(CACHE_DIR, minecraftVersion.toString());
+        File mcpFile = new File(versionDir, "mcp.tsrg");
+        File srgFile = new File(versionDir, minecraftVersion.ordinal() <= MinecraftVersion.v1_12_2.ordinal() ? "searge.csrg" : "searge.tsrg");
+        if (!isMcpFileCurrent(mcpFile, srgFile, mcpVersion.get()) && !getMappings(minecraftVersion).isPresent()) {
+            return Optional.empty();
+        }
+        return Optional.of(LazyMappingSet.tsrg(mcpFile));
+    }
+
+    /**
+     * The snapshot and its csvs, which can be downloaded again or edited
+     */
+    @Override
+    public String getSourceId(MinecraftVersion minecraftVersion) {
+        return getMcpVersion(minecraftVersion).map(mcpVersion -> {
+            File snapshotDir = new File(CACHE_DIR, "mcp_snapshot/" + mcpVersion);
+            return "mcp " + mcpVersion + " " + stamp(new File(snapshotDir, "fields.csv"), new File(snapshotDir, "methods.csv"));
+        }).orElse("mcp none");
+    }
+
     @Override
-    public Optional<MappingSet> getMappings(MinecraftVersion minecraftVersion) {
+    protected Optional<MappingSet> loadMappings(MinecraftVersion minecraftVersion) {
         if (!minecraftVersion.isRelease()) return Optional.empty();
         if (minecraftVersion.ordinal() <= MinecraftVersion.v1_12_2.ordinal()) {
             return getLegacyMappings(minecraftVersion);
@@ -1,45 +1,226 @@
 package io.jadon.alef.provider;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import io.jadon.alef.MinecraftVersion;
+import io.jadon.alef.mapping.CompactMappingSet;
+import io.jadon.alef.mapping.LazyMappingSet;
+import io.jadon.alef.metrics.DownloadEvent;
+import io.jadon.alef.metrics.Metrics;
 import io.jadon.alef.provider.spigot.SpigotProvider;
 import lombok.SneakyThrows;
 import org.cadixdev.lorenz.MappingSet;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.net.URL;
-import java.nio.channels.Channels;
-import java.nio.channels.FileChannel;
-import java.nio.channels.ReadableByteChannel;
-import java.util.Optional;
+import java.util.*;
 
+/**
+ * Source of obf -> named mappings for Minecraft versions.
+ * <p>
+ * Providers are found through {@link ProviderService}s and only created the first time they are used. The built in
+ * ones are mcp, mojang, yarn and spigot.
+ */
 public abstract class MappingProvider {
 
-    public static MCPProvider MCP = new MCPProvider();
-    public static MojangProvider MOJANG = new MojangProvider();
-    public static YarnProvider YARN = new YarnProvider();
-    public static SpigotProvider SPIGOT = new SpigotProvider();
-    protected static File CACHE_DIR = new File("cache/");
+    public static File CACHE_DIR = new File("cache/");
+
+    /** set when the provider comes from a service */
+    private @Nullable ProviderService service;
+
+    /**
+     * Every service on the classpath, loaded the first time a provider is asked for
+     */
+    private static class Registry {
+        private static final Map<String, ProviderService> SERVICES = new LinkedHashMap<>();
+        private static final Map<String, Supplier<MappingProvider>> PROVIDERS = new HashMap<>();
+
+        static {
+            for (ProviderService service : ServiceLoader.load(ProviderService.class)) {
+                String name = service.getName().toLowerCase(Locale.ROOT);
+                if (SERVICES.containsKey(name)) {
+                    throw new IllegalStateException("Two providers are named " + name + ": "
+                            + SERVICES.get(name).getClass().getName() + " and " + service.getClass().getName());
+                }
+                SERVICES.put(name, service);
+                PROVIDERS.put(name, Suppliers.memoize(() -> {
+                    MappingProvider provider = service.create();
+                    provider.service = service;
+                    return provider;
+                }));
+            }
+        }
+    }
+
+    public static MCPProvider mcp() {
+        return (MCPProvider) get("mcp");
+    }
+
+    public static MojangProvider mojang() {
+        return (MojangProvider) get("mojang");
+    }
+
+    public static YarnProvider yarn() {
+        return (YarnProvider) get("yarn");
+    }
+
+    public static SpigotProvider spigot() {
+        return (SpigotProvider) get("spigot");
+    }
+
+    private static MappingProvider get(String name) {
+        return byName(name).orElseThrow(() -> new IllegalStateException("No " + name + " provider on the classpath"));
+    }
 
-    @SneakyThrows
     protected static void copyToFile(URL url, File file) {
-        InputStream inputStream = url.openStream();
-        copyToFile(inputStream, file);
-        inputStream.close();
+        copyToFile(url, file, null);
     }
 
+    /**
+     * Download a file through the {@link ArtifactCache}
+     *
+     * @param url  url to download
+     * @param file where to put it
+     * @param sha1 expected hash of the file, or null if it isn't known
+     */
+    @SneakyThrows
+    protected static void copyToFile(URL url, File file, @Nullable String sha1) {
+        DownloadEvent event = DownloadEvent.start(url.toString());
+        Metrics.time("download", () -> {
+            try (InputStream inputStream = url.openStream()) {
+                ArtifactCache.store(inputStream, file, sha1);
+            }
+        });
+        countDownload(file.length());
+        event.finish(file.length());
+    }
+
+    protected static void countDownload(long bytes) {
+        Metrics.count("download.files");
+        Metrics.count("download.bytes", bytes);
+    }
+
+    /**
+     * Store a stream through the {@link ArtifactCache}. The stream is left open.
+     */
     @SneakyThrows
     protected static void copyToFile(InputStream inputStream, File file) {
-        ReadableByteChannel readChannel = Channels.newChannel(inputStream);
-        FileOutputStream output = new FileOutputStream(file);
-        FileChannel writeChannel = output.getChannel();
-        writeChannel.transferFrom(readChannel, 0, Long.MAX_VALUE);
-        writeChannel.force(false);
-        writeChannel.close();
-        output.close();
+        ArtifactCache.store(inputStream, file, null);
+    }
+
+    /**
+     * @param file file to check
+     * @return true if the file was completely downloaded and hasn't been corrupted since
+     */
+    protected static boolean isCached(File file) {
+        boolean cached = ArtifactCache.isValid(file);
+        Metrics.count(cached ? "cache.hits" : "cache.misses");
+        return cached;
     }
 
-    public abstract Optional<MappingSet> getMappings(MinecraftVersion minecraftVersion);
+    /**
+     * Get a version's mappings. Loading is timed as the {@code provider.load} stage.
+     *
+     * @param minecraftVersion version to get
+     * @return obf -> named mappings, if this provider has that version
+     */
+    public Optional<MappingSet> getMappings(MinecraftVersion minecraftVersion) {
+        if (!supports(minecraftVersion)) return Optional.empty();
+        return Metrics.time("provider.load", getClass().getSimpleName() + " " + minecraftVersion,
+                () -> loadMappings(minecraftVersion));
+    }
+
+    protected abstract Optional<MappingSet> loadMappings(MinecraftVersion minecraftVersion);
+
+    /**
+     * Get a version's mappings in a form that is cheap to keep in memory. The full set is still loaded first, so
+     * this saves memory for as long as the result is kept, not while loading.
+     *
+     * @param minecraftVersion version to get
+     * @return obf -> named mappings, if this provider has that version
+     */
+    public Optional<CompactMappingSet> getCompactMappings(MinecraftVersion minecraftVersion) {
+        return getMappings(minecraftVersion).map(CompactMappingSet::of);
+    }
+
+    /**
+     * Get a version's mappings without parsing them, so only the classes that get looked up are read.
+     * Providers that can't do that return empty, and {@link #getMappings} has to be used instead.
+     *
+     * @param minecraftVersion version to get
+     * @return obf -> named mappings, if this provider has that version in a file it can index
+     */
+    public Optional<LazyMappingSet> getLazyMappings(MinecraftVersion minecraftVersion) {
+        return Optional.empty();
+    }
+
+    /**
+     * Identify what loading a version reads, like a build number or the size and time of the files it comes from,
+     * without reading it. Things built from the mappings, like name indexes, are rebuilt when this changes. Providers
+     * whose mappings for a version never change keep the default.
+     */
+    public String getSourceId(MinecraftVersion minecraftVersion) {
+        return getClass().getSimpleName() + " " + minecraftVersion;
+    }
+
+    /**
+     * Forget what this provider keeps in memory between loads, like resolved builds or parsed snapshots, so the next
+     * load reads the cache directory again
+     */
+    public void reset() {
+    }
+
+    /**
+     * @return length and modification time of each file, 0:0 for files that don't exist
+     */
+    protected static String stamp(File... files) {
+        StringBuilder stamp = new StringBuilder();
+        for (File file : files) {
+            if (stamp.length() > 0) stamp.append(' ');
+            stamp.append(file.length()).append(':').append(file.lastModified());
+        }
+        return stamp.toString();
+    }
+
+    /**
+     * @return false if this provider's service says it doesn't have the version, which doesn't need any I/O
+     */
+    public boolean supports(MinecraftVersion minecraftVersion) {
+        return service == null || service.supports(minecraftVersion);
+    }
+
+    public Optional<ProviderService> getService() {
+        return Optional.ofNullable(service);
+    }
+
+    /**
+     * @param name mcp, mojang, yarn, spigot or the name of another {@link ProviderService}
+     * @return provider with that name, created if this is the first time it is used
+     */
+    public static Optional<MappingProvider> byName(String name) {
+        return Optional.ofNullable(Registry.PROVIDERS.get(name.toLowerCase(Locale.ROOT))).map(Supplier::get);
+    }
+
+    /**
+     * @return every provider service, without creating any provider
+     */
+    public static Collection<ProviderService> getServices() {
+        return Collections.unmodifiableCollection(Registry.SERVICES.values());
+    }
+
+    /**
+     * @return names of the providers that may have a version in a namespace, without creating any provider
+     */
+    public static List<String> findProviders(MinecraftVersion minecraftVersion, String namespace) {
+        List<String> names = new ArrayList<>();
+        for (ProviderService service : getServices()) {
+            if (service.getNamespaces().contains(namespace) && service.supports(minecraftVersion)) {
+                names.add(service.getName());
+            }
+        }
+        return names;
+    }
 
 }
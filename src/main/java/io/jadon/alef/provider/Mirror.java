@@ -0,0 +1,59 @@
+package io.jadon.alef.provider;
+
+import lombok.SneakyThrows;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.net.URL;
+
+/**
+ * Where downloads come from.
+ * <p>
+ * With {@code -Dalef.mirror=http://mirror:8643}, {@code https://host/path} is downloaded from
+ * {@code http://mirror:8643/host/path} instead, which is the layout {@link io.jadon.alef.service.MirrorServer} serves.
+ * One host can be sent somewhere else with {@code -Dalef.mirror.<host>=<base url>}, which replaces the scheme and host,
+ * like {@code -Dalef.mirror.maven.fabricmc.net=http://nexus.lan/fabric}.
+ */
+public class Mirror {
+
+    private static volatile @Nullable String base = System.getProperty("alef.mirror");
+
+    /**
+     * @param mirror base url of a mirror, or null to download from the real hosts
+     */
+    public static void setBase(@Nullable String mirror) {
+        base = mirror;
+    }
+
+    public static @Nullable String getBase() {
+        return base;
+    }
+
+    /**
+     * @param url upstream url
+     * @return where to download it from
+     */
+    public static String rewrite(String url) {
+        int schemeEnd = url.indexOf("://");
+        if (schemeEnd == -1) return url;
+        int hostEnd = url.indexOf('/', schemeEnd + 3);
+        if (hostEnd == -1) hostEnd = url.length();
+        String host = url.substring(schemeEnd + 3, hostEnd);
+        String path = url.substring(hostEnd);
+
+        String hostMirror = System.getProperty("alef.mirror." + host);
+        if (hostMirror != null) return trimSlash(hostMirror) + path;
+        String mirror = base;
+        if (mirror != null) return trimSlash(mirror) + "/" + host + path;
+        return url;
+    }
+
+    @SneakyThrows
+    public static URL url(String url) {
+        return new URL(rewrite(url));
+    }
+
+    private static String trimSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+}
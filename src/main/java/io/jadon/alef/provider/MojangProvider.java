@@ -2,20 +2,25 @@ package io.jadon.alef.provider;
 
 import com.google.common.collect.Lists;
 import com.google.common.io.Resources;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
 import io.jadon.alef.MinecraftVersion;
+import io.jadon.alef.mapping.LazyMappingSet;
+import io.jadon.alef.metrics.Metrics;
+import io.jadon.alef.version.Version;
+import io.jadon.alef.version.VersionRegistry;
 import lombok.SneakyThrows;
 import org.cadixdev.lorenz.MappingSet;
 import org.cadixdev.lorenz.io.proguard.ProGuardReader;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileReader;
-import java.io.InputStream;
-import java.net.URL;
 import java.nio.charset.Charset;
-import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
 public class MojangProvider extends MappingProvider {
@@ -25,6 +30,28 @@ public class MojangProvider extends MappingProvider {
     protected MojangProvider() {
     }
 
+    public static class Service implements ProviderService {
+        @Override
+        public String getName() {
+            return "mojang";
+        }
+
+        @Override
+        public List<String> getNamespaces() {
+            return Collections.singletonList("mojang");
+        }
+
+        @Override
+        public List<VersionRange> getVersionRanges() {
+            return Arrays.asList(VersionRange.since(MinecraftVersion.v1_14_4), VersionRange.only(MinecraftVersion.s1_16_combat_0));
+        }
+
+        @Override
+        public MappingProvider create() {
+            return new MojangProvider();
+        }
+    }
+
     /**
      * Download the version manifest json and parse it
      *
@@ -32,7 +59,7 @@ public class MojangProvider extends MappingProvider {
      */
     @SneakyThrows
     public static JsonObject getVersionManifestJson() {
-        String manifest = Resources.toString(new URL(MANIFEST), Charset.defaultCharset());
+        String manifest = Resources.toString(Mirror.url(MANIFEST), Charset.defaultCharset());
         return JsonParser.parseString(manifest).getAsJsonObject();
     }
 
@@ -42,53 +69,111 @@ public class MojangProvider extends MappingProvider {
      * @param minecraftVersion version to download
      * @return json if it exists
      */
-    @SneakyThrows
     public static Optional<String> getVersionJson(MinecraftVersion minecraftVersion) {
-        JsonObject versionManifestJson = getVersionManifestJson();
-        // find the version we want
-        for (JsonElement version : versionManifestJson.getAsJsonArray("versions")) {
-            JsonObject versionObj = version.getAsJsonObject();
-            if (versionObj.get("id").getAsString().equals(minecraftVersion.toString())) {
-                // grab the url and read it
-                URL url = new URL(versionObj.get("url").getAsString());
-                String versionJson = Resources.toString(url, Charset.defaultCharset());
-                return Optional.of(versionJson);
-            }
-        }
-        return Optional.empty();
+        return getVersionJson(minecraftVersion.toString());
+    }
+
+    /**
+     * Download a version's json, finding its url in the {@link VersionRegistry}
+     *
+     * @param id version id, which doesn't have to be a {@link MinecraftVersion}
+     * @return json if it exists
+     */
+    @SneakyThrows
+    public static Optional<String> getVersionJson(String id) {
+        Optional<String> url = VersionRegistry.get().getVersion(id).flatMap(Version::getUrl);
+        if (!url.isPresent()) return Optional.empty();
+        return Optional.of(Resources.toString(Mirror.url(url.get()), Charset.defaultCharset()));
     }
 
     @SneakyThrows
     public static Optional<JsonObject> downloadVersionJson(MinecraftVersion version, File file) {
-        if (file.exists()) return Optional.of(JsonParser.parseReader(new FileReader(file)).getAsJsonObject());
+        if (file.exists()) {
+            try (FileReader reader = new FileReader(file)) {
+                return Optional.of(JsonParser.parseReader(reader).getAsJsonObject());
+            } catch (JsonParseException | IllegalStateException e) {
+                // partially written, download it again
+                System.out.println("Ignoring broken version json " + file);
+            }
+        }
         String versionJson = getVersionJson(version).orElse(null);
         if (versionJson == null) return Optional.empty();
-        Files.write(file.toPath(), versionJson.getBytes());
+        countDownload(versionJson.length());
+        copyToFile(new ByteArrayInputStream(versionJson.getBytes()), file);
         return Optional.of(JsonParser.parseString(versionJson).getAsJsonObject());
     }
 
+    /**
+     * Download a version's client jar
+     *
+     * @param version version to download
+     * @return client jar, if the version json has one
+     */
+    @SneakyThrows
+    public static Optional<File> getClientJar(MinecraftVersion version) {
+        File jar = new File(CACHE_DIR, version.toString() + "/client.jar");
+        if (isCached(jar)) return Optional.of(jar);
+        jar.getParentFile().mkdirs();
+        JsonObject versionJson = downloadVersionJson(version, new File(CACHE_DIR, version.toString() + "/" + version.toString() + ".json")).orElse(null);
+        if (versionJson == null || !versionJson.getAsJsonObject("downloads").has("client")) return Optional.empty();
+        JsonObject client = versionJson.getAsJsonObject("downloads").getAsJsonObject("client");
+        String sha1 = client.has("sha1") ? client.get("sha1").getAsString() : null;
+        copyToFile(Mirror.url(client.get("url").getAsString()), jar, sha1);
+        return Optional.of(jar);
+    }
+
+    /**
+     * Download one side's ProGuard mappings if they aren't cached
+     *
+     * @param side client or server
+     * @return the cached file, which maps named -> obf
+     */
+    @SneakyThrows
+    public static Optional<File> getProguardFile(MinecraftVersion minecraftVersion, String side) {
+        File proguardFile = new File(CACHE_DIR, minecraftVersion.toString() + "/mojang-" + side + ".proguard");
+        if (!isCached(proguardFile)) {
+            proguardFile.getParentFile().mkdirs();
+            JsonObject versionJson = downloadVersionJson(minecraftVersion, new File(CACHE_DIR, minecraftVersion.toString() + "/" + minecraftVersion.toString() + ".json")).orElse(null);
+            if (versionJson == null) {
+                System.out.println("version json is null for "+  minecraftVersion.name() + " " + minecraftVersion.toString());
+                return Optional.empty();}
+            JsonObject downloads = versionJson.getAsJsonObject("downloads");
+            // todo: server?
+            JsonObject mappingDownload = downloads.getAsJsonObject(side + "_mappings");
+            String mappingUrl = mappingDownload.get("url").getAsString();
+            String mappingSha1 = mappingDownload.has("sha1") ? mappingDownload.get("sha1").getAsString() : null;
+            copyToFile(Mirror.url(mappingUrl), proguardFile, mappingSha1);
+        }
+        return Optional.of(proguardFile);
+    }
+
+    /**
+     * Classes are looked up in the client mappings first, then the server mappings
+     */
     @Override
     @SneakyThrows
-    public Optional<MappingSet> getMappings(MinecraftVersion minecraftVersion) {
+    public Optional<LazyMappingSet> getLazyMappings(MinecraftVersion minecraftVersion) {
+        if (!supports(minecraftVersion)) return Optional.empty();
+        Optional<File> client = getProguardFile(minecraftVersion, "client");
+        Optional<File> server = getProguardFile(minecraftVersion, "server");
+        if (!client.isPresent() || !server.isPresent()) return Optional.empty();
+        return Optional.of(LazyMappingSet.proguard(client.get(), server.get()));
+    }
+
+    @Override
+    @SneakyThrows
+    protected Optional<MappingSet> loadMappings(MinecraftVersion minecraftVersion) {
         if (minecraftVersion.ordinal() < MinecraftVersion.v1_14_4.ordinal() && !minecraftVersion.name().contains("combat")) return Optional.empty();
 
         MappingSet complete = MappingSet.create();
         for (String side : Lists.newArrayList("server", "client")) {
-            File proguardFile = new File(CACHE_DIR, minecraftVersion.toString() + "/mojang-" + side + ".proguard");
-            if (!proguardFile.exists()) {
-                proguardFile.getParentFile().mkdirs();
-                JsonObject versionJson = downloadVersionJson(minecraftVersion, new File(CACHE_DIR, minecraftVersion.toString() + "/" + minecraftVersion.toString() + ".json")).orElse(null);
-                if (versionJson == null) {
-                    System.out.println("version json is null for "+  minecraftVersion.name() + " " + minecraftVersion.toString());
-                    return Optional.empty();}
-                JsonObject downloads = versionJson.getAsJsonObject("downloads");
-                // todo: server?
-                String mappingUrl = downloads.getAsJsonObject(side + "_mappings").get("url").getAsString();
-                InputStream inputStream = new URL(mappingUrl).openStream();
-                copyToFile(inputStream, proguardFile);
-                inputStream.close();
-            }
-            MappingSet sideMappings = new ProGuardReader(new FileReader(proguardFile)).read().reverse();
+            File proguardFile = getProguardFile(minecraftVersion, side).orElse(null);
+            if (proguardFile == null) return Optional.empty();
+            MappingSet sideMappings = Metrics.time("mojang.parse", () -> {
+                try (ProGuardReader reader = new ProGuardReader(new FileReader(proguardFile))) {
+                    return reader.read().reverse();
+                }
+            });
             complete = complete.merge(sideMappings);
         }
 
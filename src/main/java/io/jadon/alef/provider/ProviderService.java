@@ -0,0 +1,42 @@
+package io.jadon.alef.provider;
+
+import io.jadon.alef.MinecraftVersion;
+
+import java.util.List;
+
+/**
+ * Describes a {@link MappingProvider} without creating it, so code that plans work can tell which versions and
+ * namespaces are available without any I/O.
+ * <p>
+ * Services are found with {@link java.util.ServiceLoader}: list the implementation in
+ * {@code META-INF/services/io.jadon.alef.provider.ProviderService} on the classpath and it can be used by name
+ * everywhere a built in provider can. Implementations need a public no argument constructor and should be cheap to
+ * create, the provider itself is only created the first time it is used.
+ */
+public interface ProviderService {
+
+    /**
+     * @return name the provider is looked up by, like yarn
+     */
+    String getName();
+
+    /**
+     * @return namespaces the provider maps obfuscated names to
+     */
+    List<String> getNamespaces();
+
+    /**
+     * @return versions the provider may have mappings for. Versions outside of these are never loaded.
+     */
+    List<VersionRange> getVersionRanges();
+
+    default boolean supports(MinecraftVersion version) {
+        for (VersionRange range : getVersionRanges()) {
+            if (range.contains(version)) return true;
+        }
+        return false;
+    }
+
+    MappingProvider create();
+
+}
@@ -0,0 +1,53 @@
+package io.jadon.alef.provider;
+
+import io.jadon.alef.MinecraftVersion;
+import lombok.Data;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Versions between two versions in {@link MinecraftVersion} order, both included
+ */
+@Data
+public class VersionRange {
+
+    /** first version, or null to start at the first one */
+    private final @Nullable MinecraftVersion from;
+    /** last version, or null to go on to the latest one */
+    private final @Nullable MinecraftVersion to;
+    /** skip snapshots and other versions that aren't releases */
+    private final boolean releasesOnly;
+
+    public static VersionRange all() {
+        return new VersionRange(null, null, false);
+    }
+
+    public static VersionRange releases() {
+        return new VersionRange(null, null, true);
+    }
+
+    public static VersionRange since(MinecraftVersion from) {
+        return new VersionRange(from, null, false);
+    }
+
+    public static VersionRange between(MinecraftVersion from, MinecraftVersion to) {
+        return new VersionRange(from, to, false);
+    }
+
+    public static VersionRange only(MinecraftVersion version) {
+        return new VersionRange(version, version, false);
+    }
+
+    public boolean contains(MinecraftVersion version) {
+        if (from != null && version.ordinal() < from.ordinal()) return false;
+        if (to != null && version.ordinal() > to.ordinal()) return false;
+        return !releasesOnly || version.isRelease();
+    }
+
+    @Override
+    public String toString() {
+        String range = from == to && from != null ? from.toString()
+                : (from == null ? "" : from.toString()) + ".." + (to == null ? "" : to.toString());
+        return releasesOnly ? range + " releases" : range;
+    }
+
+}
@@ -1,47 +1,113 @@
 package io.jadon.alef.provider;
 
-import com.google.common.io.ByteStreams;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import io.jadon.alef.MinecraftVersion;
+import io.jadon.alef.mapping.LazyMappingSet;
+import io.jadon.alef.metrics.Metrics;
 import lombok.SneakyThrows;
 import net.fabricmc.lorenztiny.TinyMappingFormat;
 import org.cadixdev.lorenz.MappingSet;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
-import java.nio.channels.Channels;
-import java.nio.channels.FileChannel;
-import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
 public class YarnProvider extends MappingProvider {
 
+    public static class Service implements ProviderService {
+        @Override
+        public String getName() {
+            return "yarn";
+        }
+
+        @Override
+        public List<String> getNamespaces() {
+            return Collections.singletonList("yarn");
+        }
+
+        @Override
+        public List<VersionRange> getVersionRanges() {
+            return Collections.singletonList(VersionRange.since(MinecraftVersion.v1_13_1));
+        }
+
+        @Override
+        public MappingProvider create() {
+            return new YarnProvider();
+        }
+    }
+
     public static final String VERSIONS_URL = "https://meta.fabricmc.net/v1/versions/mappings/";
     public static final String YARN_MAPPINGS_URL = "https://maven.fabricmc.net/net/fabricmc/yarn/%s/yarn-%s.jar";
     public static final String YARN_MERGED_MAPPINGS_URL = "https://maven.fabricmc.net/net/fabricmc/yarn/%s/yarn-%s-mergedv2.jar";
     public static final String INTERMEDIARY_MAPPINGS_URL = "https://maven.fabricmc.net/net/fabricmc/intermediary/%s/intermediary-%s.jar";
 
+    /** how long a resolved latest build is used before asking again, {@code -Dalef.yarn.refreshMinutes} */
+    private static final long LATEST_MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(Long.getLong("alef.yarn.refreshMinutes", 60));
+    private static final Map<MinecraftVersion, String> latestBuilds = new ConcurrentHashMap<>();
+
+    /**
+     * Forget the latest builds resolved so far. They are shared by every Yarn provider.
+     */
+    @Override
+    public void reset() {
+        latestBuilds.clear();
+    }
+
     /**
-     * Get the latest Yarn build version for a given Minecraft version
+     * Get the latest Yarn build version for a given Minecraft version. The answer is kept for the rest of the run and
+     * in {@code <cache>/yarn/latest-<version>.txt}, which later runs use for an hour by default, or for as long as the
+     * network is down. One-shot lookups would otherwise ask the meta server every time.
      *
      * @param minecraftVersion Minecraft Version
      * @return Yarn build version as a string, usually looks like 1.16.1+build.12
      */
-    @SneakyThrows
     public static String getLatestYarnVersion(MinecraftVersion minecraftVersion) {
-        URL url = new URL(VERSIONS_URL + minecraftVersion.toString());
-        InputStreamReader reader = new InputStreamReader(url.openStream());
-        JsonObject versionObject = JsonParser.parseReader(reader).getAsJsonArray().get(0).getAsJsonObject();
-        return versionObject.get("version").getAsString();
+        return latestBuilds.computeIfAbsent(minecraftVersion, YarnProvider::resolveLatestYarnVersion);
+    }
+
+    @SneakyThrows
+    private static String resolveLatestYarnVersion(MinecraftVersion minecraftVersion) {
+        File latestFile = new File(CACHE_DIR, "yarn/latest-" + minecraftVersion + ".txt");
+        if (latestFile.isFile() && System.currentTimeMillis() - latestFile.lastModified() < LATEST_MAX_AGE_MILLIS) {
+            return readLatest(latestFile);
+        }
+        String buildVersion;
+        try {
+            URL url = Mirror.url(VERSIONS_URL + minecraftVersion.toString());
+            try (InputStreamReader reader = new InputStreamReader(url.openStream())) {
+                JsonObject versionObject = JsonParser.parseReader(reader).getAsJsonArray().get(0).getAsJsonObject();
+                buildVersion = versionObject.get("version").getAsString();
+            }
+        } catch (IOException e) {
+            if (!latestFile.isFile()) throw e;
+            System.out.println("Couldn't look up the latest Yarn build for " + minecraftVersion + ", using the last one: " + e);
+            return readLatest(latestFile);
+        }
+        latestFile.getParentFile().mkdirs();
+        File tempFile = new File(latestFile.getPath() + ".tmp");
+        Files.write(tempFile.toPath(), buildVersion.getBytes(StandardCharsets.UTF_8));
+        Files.move(tempFile.toPath(), latestFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return buildVersion;
+    }
+
+    private static String readLatest(File latestFile) throws IOException {
+        return new String(Files.readAllBytes(latestFile.toPath()), StandardCharsets.UTF_8).trim();
     }
 
     /**
@@ -89,39 +155,53 @@ public class YarnProvider extends MappingProvider {
     @SneakyThrows
     private static MappingSet getMappings(String kind, MinecraftVersion minecraftVersion,
                                           String buildVersion, String from, String to) {
+        File tinyFile = getTinyFile(kind, buildVersion);
+        return Metrics.time("yarn.parse",
+                () -> TinyMappingFormat.DETECT.createReader(tinyFile.toPath(), from, to).read());
+    }
+
+    /**
+     * Download a tiny file if it isn't cached
+     *
+     * @return the extracted tiny file
+     */
+    @SneakyThrows
+    private static File getTinyFile(String kind, String buildVersion) {
         File cache = new File(CACHE_DIR, "yarn");
         cache.mkdirs();
         File jarFile = new File(cache, "/" + kind + "-" + buildVersion + ".jar");
 
-        if (!jarFile.exists()) {
+        if (!isCached(jarFile)) {
             InputStream jarStream = null;
             if ("yarn".equals(kind)) {
                 jarStream = getValidYarnStream(buildVersion);
             } else if ("intermediary".equals(kind)) {
-                jarStream = new URL(INTERMEDIARY_MAPPINGS_URL.replaceAll("%s", buildVersion)).openStream();
+                jarStream = Mirror.url(INTERMEDIARY_MAPPINGS_URL.replaceAll("%s", buildVersion)).openStream();
             }
-            ReadableByteChannel readChannel = Channels.newChannel(jarStream);
-            FileOutputStream output = new FileOutputStream(jarFile);
-            FileChannel writeChannel = output.getChannel();
-            writeChannel.transferFrom(readChannel, 0, Long.MAX_VALUE);
+            try (InputStream inputStream = jarStream) {
+                Metrics.time("download", () -> copyToFile(inputStream, jarFile));
+            }
+            countDownload(jarFile.length());
         }
 
         File tinyFile = new File(cache, "/" + kind + "-" + buildVersion + ".tiny");
 
-        if (!tinyFile.exists()) {
-            JarFile jar = new JarFile(jarFile);
-            final Enumeration<JarEntry> entries = jar.entries();
-            while (entries.hasMoreElements()) {
-                final JarEntry entry = entries.nextElement();
-                if (entry.getName().contains("mappings.tiny")) {
-                    byte[] bytes = ByteStreams.toByteArray(jar.getInputStream(entry));
-                    Files.write(tinyFile.toPath(), bytes);
-                    break;
+        if (!isCached(tinyFile)) {
+            try (JarFile jar = new JarFile(jarFile)) {
+                final Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    final JarEntry entry = entries.nextElement();
+                    if (entry.getName().contains("mappings.tiny")) {
+                        try (InputStream inputStream = jar.getInputStream(entry)) {
+                            copyToFile(inputStream, tinyFile);
+                        }
+                        break;
+                    }
                 }
             }
         }
 
-        return TinyMappingFormat.DETECT.createReader(tinyFile.toPath(), from, to).read();
+        return tinyFile;
     }
 
     private static InputStream getValidYarnStream(String buildVersion) {
@@ -134,13 +214,34 @@ public class YarnProvider extends MappingProvider {
 
     private static @Nullable InputStream getUrlStream(String url) {
         try {
-            return new URL(url).openStream();
+            return Mirror.url(url).openStream();
         } catch (Exception ignored) { }
         return null;
     }
 
+    /**
+     * Only merged tiny v2 files can be indexed, older Yarn builds return empty
+     */
+    @Override
+    public Optional<LazyMappingSet> getLazyMappings(MinecraftVersion minecraftVersion) {
+        if (!supports(minecraftVersion)) return Optional.empty();
+        try {
+            return Optional.of(LazyMappingSet.tiny(getTinyFile("yarn", getLatestYarnVersion(minecraftVersion)), "official", "named"));
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * The latest build, so indexes are rebuilt once a new one is published
+     */
+    @Override
+    public String getSourceId(MinecraftVersion minecraftVersion) {
+        return "yarn " + getLatestYarnVersion(minecraftVersion);
+    }
+
     @Override
-    public Optional<MappingSet> getMappings(MinecraftVersion minecraftVersion) {
+    protected Optional<MappingSet> loadMappings(MinecraftVersion minecraftVersion) {
         if (minecraftVersion.ordinal() < MinecraftVersion.v1_13_1.ordinal()) return Optional.empty();
         return Optional.of(getLatestYarnMappings(minecraftVersion));
     }
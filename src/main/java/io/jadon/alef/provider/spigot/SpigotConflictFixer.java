@@ -1,20 +1,17 @@
 package io.jadon.alef.provider.spigot;
 
-import com.google.common.collect.Lists;
-import com.google.common.io.ByteStreams;
+import io.jadon.alef.jar.ClassHierarchyIndex;
 import org.cadixdev.bombe.type.signature.MethodSignature;
 import org.cadixdev.lorenz.MappingSet;
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.ClassNode;
-import org.objectweb.asm.tree.MethodNode;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.Enumeration;
-import java.util.List;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
 
 /**
  * Takes a spigot jar and generates mappings to resolve conflicts of methods that Spigot adds
@@ -23,35 +20,88 @@ import java.util.jar.JarFile;
  */
 public class SpigotConflictFixer {
 
-    private static final List<String> ALLOWED_METHODS = Lists.newArrayList("get", "getDouble");
-
-    public static MappingSet generateMappingFixes(File jarFile) throws IOException {
+    /**
+     * Compare an obfuscated Spigot jar against the vanilla server jar and rename every method Spigot added
+     *
+     * @param jarFile        obfuscated spigot jar
+     * @param vanillaJarFile vanilla server jar of the same version
+     * @return mappings from the added methods to spigot_ prefixed names
+     */
+    public static MappingSet generateMappingFixes(File jarFile, File vanillaJarFile) throws IOException {
         MappingSet fixes = MappingSet.create();
+        ClassHierarchyIndex spigot = ClassHierarchyIndex.of(jarFile);
+        ClassHierarchyIndex vanilla = ClassHierarchyIndex.of(vanillaJarFile);
 
-        JarFile jar = new JarFile(jarFile);
-        Enumeration<JarEntry> entries = jar.entries();
-        while (entries.hasMoreElements()) {
-            JarEntry entry = entries.nextElement();
-            String name = entry.getName();
-            if (name.endsWith(".class") && !name.contains("/")) {
-                InputStream stream = jar.getInputStream(entry);
-                byte[] bytes = ByteStreams.toByteArray(stream);
-                ClassNode node = parseNode(bytes);
-                for (MethodNode method : node.methods) {
-                    if (method.name.startsWith("get") && !ALLOWED_METHODS.contains(method.name)) {
-                        // assume this is a method added by spigot
-                        fixes.getOrCreateClassMapping(node.name)
-                                .createMethodMapping(MethodSignature.of(method.name, method.desc), "spigot_" + method.name);
-                    }
-                }
-                stream.close();
+        for (ClassHierarchyIndex.ClassEntry classEntry : spigot.getClasses()) {
+            // only obfuscated classes that also exist in vanilla
+            if (classEntry.getName().contains("/") || !vanilla.hasClass(classEntry.getName())) continue;
+            for (String method : classEntry.getMethods().keySet()) {
+                int split = method.indexOf('(');
+                String name = method.substring(0, split);
+                String descriptor = method.substring(split);
+                if (name.startsWith("<")) continue;
+                if (vanilla.findMethodOwner(classEntry.getName(), name, descriptor).isPresent()) continue;
+                if (isUnobfuscatedMethod(spigot, vanilla, classEntry, name, descriptor)) continue;
+                if (isLibraryMethod(spigot, classEntry.getName(), name, descriptor)) continue;
+                // spigot added this method
+                fixes.getOrCreateClassMapping(classEntry.getName())
+                        .createMethodMapping(MethodSignature.of(name, descriptor), "spigot_" + name);
             }
         }
-        jar.close();
+        spigot.complete(fixes);
 
         return fixes;
     }
 
+    /**
+     * Check if a method overrides one declared on a class in the jar that isn't obfuscated, like a Bukkit interface or
+     * a CraftBukkit class. Those methods keep their names, so the override has to keep its name too.
+     */
+    private static boolean isUnobfuscatedMethod(ClassHierarchyIndex spigot, ClassHierarchyIndex vanilla,
+                                                ClassHierarchyIndex.ClassEntry classEntry, String name, String descriptor) {
+        List<String> parents = new ArrayList<>(classEntry.getInterfaces());
+        if (classEntry.getSuperName() != null) parents.add(classEntry.getSuperName());
+        for (String parent : parents) {
+            Optional<String> owner = spigot.findMethodOwner(parent, name, descriptor);
+            if (owner.isPresent() && (owner.get().contains("/") || !vanilla.hasClass(owner.get()))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Check if a method overrides one from a class outside of the jar, like an interface from the JDK.
+     * Renaming those would break the override.
+     */
+    private static boolean isLibraryMethod(ClassHierarchyIndex index, String owner, String name, String descriptor) {
+        for (String libraryClass : index.getLibraryParents(owner)) {
+            try {
+                Class<?> clazz = Class.forName(libraryClass.replace('/', '.'), false, SpigotConflictFixer.class.getClassLoader());
+                if (declaresMethod(clazz, name, descriptor, new HashSet<>())) return true;
+            } catch (ClassNotFoundException | LinkageError e) {
+                // we can't see this class, so be safe and don't rename anything that could override it
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Walk a library class and all of its parents for a method that can be overridden. getMethods would miss
+     * protected methods like clone or removeEldestEntry.
+     */
+    private static boolean declaresMethod(Class<?> clazz, String name, String descriptor, Set<Class<?>> visited) {
+        if (clazz == null || !visited.add(clazz)) return false;
+        for (Method method : clazz.getDeclaredMethods()) {
+            if (Modifier.isPrivate(method.getModifiers()) || Modifier.isStatic(method.getModifiers())) continue;
+            if (method.getName().equals(name) && Type.getMethodDescriptor(method).equals(descriptor)) return true;
+        }
+        if (declaresMethod(clazz.getSuperclass(), name, descriptor, visited)) return true;
+        for (Class<?> anInterface : clazz.getInterfaces()) {
+            if (declaresMethod(anInterface, name, descriptor, visited)) return true;
+        }
+        return false;
+    }
+
     public static ClassNode parseNode(byte[] bytes) {
         ClassNode classNode = new ClassNode();
         ClassReader classReader = new ClassReader(bytes);
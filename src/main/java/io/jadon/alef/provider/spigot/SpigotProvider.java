@@ -5,6 +5,10 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import io.jadon.alef.MinecraftVersion;
 import io.jadon.alef.provider.MappingProvider;
+import io.jadon.alef.provider.Mirror;
+import io.jadon.alef.provider.ProviderService;
+import io.jadon.alef.provider.VersionRange;
+import io.jadon.alef.metrics.Metrics;
 import lombok.SneakyThrows;
 import org.cadixdev.lorenz.MappingSet;
 import org.cadixdev.lorenz.io.MappingFormats;
@@ -12,14 +16,37 @@ import org.cadixdev.lorenz.model.TopLevelClassMapping;
 
 import java.io.File;
 import java.io.FileReader;
-import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Optional;
 
 public class SpigotProvider extends MappingProvider {
 
+    public static class Service implements ProviderService {
+        @Override
+        public String getName() {
+            return "spigot";
+        }
+
+        @Override
+        public List<String> getNamespaces() {
+            return Collections.singletonList("spigot");
+        }
+
+        @Override
+        public List<VersionRange> getVersionRanges() {
+            return Collections.singletonList(VersionRange.releases());
+        }
+
+        @Override
+        public MappingProvider create() {
+            return new SpigotProvider();
+        }
+    }
+
     public static final String INFO_URL = "https://hub.spigotmc.org/versions/%s.json";
     public static final String STASH_URL = "https://hub.spigotmc.org/stash/projects/SPIGOT/repos/builddata/browse/";
 
@@ -27,8 +54,8 @@ public class SpigotProvider extends MappingProvider {
     protected String getBuildDataCommit(MinecraftVersion version) {
         File infoJson = new File(CACHE_DIR, version.toString() + "/spigot.json");
         infoJson.getParentFile().mkdirs();
-        if (!infoJson.exists()) {
-            copyToFile(new URL(INFO_URL.replace("%s", version.toString())), infoJson);
+        if (!isCached(infoJson)) {
+            copyToFile(Mirror.url(INFO_URL.replace("%s", version.toString())), infoJson);
         }
         JsonObject info = JsonParser.parseReader(new FileReader(infoJson)).getAsJsonObject();
         return info.getAsJsonObject("refs").get("BuildData").getAsString();
@@ -44,23 +71,23 @@ public class SpigotProvider extends MappingProvider {
         File packageCsrg = new File(cacheDir, "package.csrg");
 
         // something is missing!
-        if (!(classCsrg.exists() && memberCsrg.exists() && packageCsrg.exists())) {
+        if (!(isCached(classCsrg) && isCached(memberCsrg) && isCached(packageCsrg))) {
             // figure out where the files are from the info.json in the build data
             JsonObject info = JsonParser.parseString(Resources.toString(
-                    new URL(STASH_URL + "info.json?at=" + buildDataCommit + "&raw"),
+                    Mirror.url(STASH_URL + "info.json?at=" + buildDataCommit + "&raw"),
                     Charset.defaultCharset())).getAsJsonObject();
             String classMappingLocation = info.get("classMappings").getAsString();
             String memberMappingLocation = info.get("memberMappings").getAsString();
             String packageMappingLocation = info.get("packageMappings").getAsString();
 
-            if (!classCsrg.exists()) {
-                copyToFile(new URL(STASH_URL + "mappings/" + classMappingLocation + "?at=" + buildDataCommit + "&raw"), classCsrg);
+            if (!isCached(classCsrg)) {
+                copyToFile(Mirror.url(STASH_URL + "mappings/" + classMappingLocation + "?at=" + buildDataCommit + "&raw"), classCsrg);
             }
-            if (!memberCsrg.exists()) {
-                copyToFile(new URL(STASH_URL + "mappings/" + memberMappingLocation + "?at=" + buildDataCommit + "&raw"), memberCsrg);
+            if (!isCached(memberCsrg)) {
+                copyToFile(Mirror.url(STASH_URL + "mappings/" + memberMappingLocation + "?at=" + buildDataCommit + "&raw"), memberCsrg);
             }
-            if (!packageCsrg.exists()) {
-                copyToFile(new URL(STASH_URL + "mappings/" + packageMappingLocation + "?at=" + buildDataCommit + "&raw"), packageCsrg);
+            if (!isCached(packageCsrg)) {
+                copyToFile(Mirror.url(STASH_URL + "mappings/" + packageMappingLocation + "?at=" + buildDataCommit + "&raw"), packageCsrg);
             }
         }
         // this file isn't really csrg so we need to parse it ourselves
@@ -77,9 +104,11 @@ public class SpigotProvider extends MappingProvider {
             newPackages.put(from, to);
         }
 
-        MappingSet classMappings = MappingFormats.CSRG.read(classCsrg.toPath());
-        MappingSet memberMappings = MappingFormats.CSRG.read(memberCsrg.toPath());
-        MappingSet merged = classMappings.merge(memberMappings);
+        MappingSet merged = Metrics.time("spigot.parse", () -> {
+            MappingSet classMappings = MappingFormats.CSRG.read(classCsrg.toPath());
+            MappingSet memberMappings = MappingFormats.CSRG.read(memberCsrg.toPath());
+            return classMappings.merge(memberMappings);
+        });
         for (TopLevelClassMapping classMapping : merged.getTopLevelClassMappings()) {
             String newPackage = newPackages.getOrDefault(classMapping.getDeobfuscatedPackage(), classMapping.getDeobfuscatedPackage());
             classMapping.setDeobfuscatedName(newPackage + classMapping.getSimpleDeobfuscatedName());
@@ -88,7 +117,7 @@ public class SpigotProvider extends MappingProvider {
     }
 
     @Override
-    public Optional<MappingSet> getMappings(MinecraftVersion minecraftVersion) {
+    protected Optional<MappingSet> loadMappings(MinecraftVersion minecraftVersion) {
         if (!minecraftVersion.isRelease()) return Optional.empty();
         return Optional.of(combineMappings(minecraftVersion));
     }
@@ -0,0 +1,45 @@
+package io.jadon.alef.service;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent request latencies and reports percentiles over them
+ */
+public class LatencyRecorder {
+
+    private final long[] samples;
+    private long count = 0;
+
+    public LatencyRecorder(int capacity) {
+        this.samples = new long[capacity];
+    }
+
+    public synchronized void record(long nanos) {
+        samples[(int) (count % samples.length)] = nanos;
+        count++;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * @param percentiles percentiles to report, like 50 or 99.9
+     * @return latency in nanoseconds for each percentile, 0 if nothing was recorded yet
+     */
+    public long[] getPercentiles(double... percentiles) {
+        long[] sorted;
+        synchronized (this) {
+            sorted = Arrays.copyOf(samples, (int) Math.min(count, samples.length));
+        }
+        Arrays.sort(sorted);
+        long[] result = new long[percentiles.length];
+        if (sorted.length == 0) return result;
+        for (int i = 0; i < percentiles.length; i++) {
+            int index = (int) Math.ceil(percentiles[i] / 100.0 * sorted.length) - 1;
+            result[i] = sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        }
+        return result;
+    }
+
+}
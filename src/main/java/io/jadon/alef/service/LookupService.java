@@ -0,0 +1,296 @@
+package io.jadon.alef.service;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.jadon.alef.MinecraftVersion;
+import io.jadon.alef.mapping.CompactMappingSet;
+import io.jadon.alef.mapping.NameIndex;
+import io.jadon.alef.match.Match;
+import io.jadon.alef.match.MatchProvider;
+import io.jadon.alef.provider.MappingProvider;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.ClassMapping;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Resident lookup service that keeps provider mapping sets, chained matches and translation tables in memory.
+ * <p>
+ * {@code POST /translate?from=1.15.2&fromNamespace=obf&to=1.16.1&toNamespace=yarn} takes one symbol per line and
+ * answers with one line per symbol, in the same order:
+ * <pre>
+ * c a                      ->  c net/minecraft/...
+ * f a b                    ->  f net/minecraft/... field
+ * m a b (La;)V             ->  m net/minecraft/... method (Lnet/minecraft/...;)V
+ * </pre>
+ * Symbols that can't be translated come back as {@code ! <original line>}. A namespace is either {@code obf} or the
+ * name of a {@link MappingProvider}.
+ * <p>
+ * {@code GET /search?version=1.16.1&namespace=yarn&q=getBlock} searches the names of a provider's mappings with a
+ * {@link NameIndex} and answers with one line per hit, like {@code m net/minecraft/... getBlockState a b (I)La;}.
+ * {@code mode} is {@code prefix} (default), {@code hump} or {@code fuzzy} with up to {@code edits} edits (default 1),
+ * {@code kind} is any of {@code c}, {@code f} and {@code m}, and {@code limit} defaults to 50.
+ * <p>
+ * {@code GET /stats} reports request latency percentiles.
+ * <p>
+ * The server only listens on the loopback address.
+ */
+public class LookupService {
+
+    public static final String OBF = "obf";
+
+    // loads take seconds, so they run in memoized suppliers outside of the maps' locks
+    private final Map<String, Supplier<Optional<CompactMappingSet>>> providerSets = new ConcurrentHashMap<>();
+    private final Map<String, Supplier<Optional<Match>>> matches = new ConcurrentHashMap<>();
+    private final Map<String, Supplier<Optional<Translator>>> translators = new ConcurrentHashMap<>();
+    private final Map<String, Supplier<Optional<NameIndex>>> nameIndexes = new ConcurrentHashMap<>();
+    private final LatencyRecorder latencies = new LatencyRecorder(100_000);
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public void start(int port, int threads) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/translate", this::handleTranslate);
+        server.createContext("/search", this::handleSearch);
+        server.createContext("/stats", this::handleStats);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.start();
+        System.out.println("Lookup service listening on " + server.getAddress());
+    }
+
+    public void stop() {
+        if (server != null) server.stop(0);
+        if (executor != null) executor.shutdownNow();
+    }
+
+    /**
+     * Get the translator between two versions and namespaces, building it the first time it is asked for. Obfuscated
+     * to named at one version reads classes as they are looked up when the provider can do that.
+     */
+    public Optional<Translator> getTranslator(MinecraftVersion from, String fromNamespace, MinecraftVersion to, String toNamespace) {
+        String key = from + "/" + fromNamespace + "/" + to + "/" + toNamespace;
+        return translators.computeIfAbsent(key, k -> Suppliers.memoize(() -> {
+            if (from == to && fromNamespace.equals(OBF) && !toNamespace.equals(OBF)) {
+                return MappingProvider.byName(toNamespace).flatMap(provider -> Translator.of(provider, to));
+            }
+            return createMappings(from, fromNamespace, to, toNamespace).map(Translator::of);
+        })).get();
+    }
+
+    /**
+     * Get the search index of a provider's names, reading or building it the first time it is asked for
+     */
+    public Optional<NameIndex> getNameIndex(MinecraftVersion version, String namespace) {
+        return nameIndexes.computeIfAbsent(version + "/" + namespace, key -> Suppliers.memoize(() -> {
+            try {
+                return NameIndex.of(namespace, version);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        })).get();
+    }
+
+    private Optional<MappingSet> createMappings(MinecraftVersion from, String fromNamespace, MinecraftVersion to, String toNamespace) {
+        if (from == to) {
+            if (fromNamespace.equals(toNamespace)) return Optional.empty();
+            if (fromNamespace.equals(OBF)) return getProviderSet(to, toNamespace);
+            Optional<MappingSet> fromSet = getProviderSet(from, fromNamespace);
+            if (toNamespace.equals(OBF)) return fromSet.map(MappingSet::reverse);
+            Optional<MappingSet> toSet = getProviderSet(to, toNamespace);
+            if (!fromSet.isPresent() || !toSet.isPresent()) return Optional.empty();
+            return Optional.of(fromSet.get().reverse().merge(toSet.get()));
+        }
+
+        Optional<Match> match = getMatch(from, to);
+        if (!match.isPresent()) return Optional.empty();
+        Optional<MappingSet> fromSet = fromNamespace.equals(OBF)
+                ? Optional.of(identity(match.get(), true)) : getProviderSet(from, fromNamespace);
+        Optional<MappingSet> toSet = toNamespace.equals(OBF)
+                ? Optional.of(identity(match.get(), false)) : getProviderSet(to, toNamespace);
+        if (!fromSet.isPresent() || !toSet.isPresent()) return Optional.empty();
+        return Optional.of(match.get().combineMappings(fromSet.get(), toSet.get()));
+    }
+
+    /**
+     * Provider sets stay resident in their compact form and are only turned back into Lorenz sets to build translators
+     */
+    private Optional<MappingSet> getProviderSet(MinecraftVersion version, String namespace) {
+        return providerSets.computeIfAbsent(version + "/" + namespace, key -> Suppliers.memoize(() ->
+                MappingProvider.byName(namespace).flatMap(provider -> provider.getCompactMappings(version))))
+                .get()
+                .map(CompactMappingSet::toMappingSet);
+    }
+
+    private Optional<Match> getMatch(MinecraftVersion from, MinecraftVersion to) {
+        if (from.ordinal() > to.ordinal()) return getMatch(to, from).map(Match::reverse);
+        return matches.computeIfAbsent(from + "/" + to, key -> Suppliers.memoize(() -> MatchProvider.chainMatches(from, to))).get();
+    }
+
+    /**
+     * Mappings from one side of a match to itself, for translating obfuscated names
+     */
+    private static MappingSet identity(Match match, boolean oldSide) {
+        MappingSet mappings = MappingSet.create();
+        for (Match.ClassMatch classMatch : match.getClassMatches()) {
+            ClassMapping<?, ?> classMapping = mappings.getOrCreateClassMapping(oldSide ? classMatch.getOldName() : classMatch.getNewName());
+            for (Match.FieldMatch fieldMatch : classMatch.getFieldMatches()) {
+                String name = oldSide ? fieldMatch.getOldName() : fieldMatch.getNewName();
+                classMapping.getOrCreateFieldMapping(name).setDeobfuscatedName(name);
+            }
+            for (Match.MethodMatch methodMatch : classMatch.getMethodMatches()) {
+                String name = oldSide ? methodMatch.getOldName() : methodMatch.getNewName();
+                String signature = oldSide ? methodMatch.getOldSignature() : methodMatch.getNewSignature();
+                classMapping.getOrCreateMethodMapping(name, signature).setDeobfuscatedName(name);
+            }
+        }
+        return mappings;
+    }
+
+    private void handleTranslate(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            Optional<MinecraftVersion> from = MinecraftVersion.fromId(query.getOrDefault("from", ""));
+            Optional<MinecraftVersion> to = MinecraftVersion.fromId(query.getOrDefault("to", ""));
+            String fromNamespace = query.getOrDefault("fromNamespace", OBF);
+            String toNamespace = query.getOrDefault("toNamespace", OBF);
+            if (!from.isPresent() || !to.isPresent()) {
+                respond(exchange, 400, "Unknown version\n");
+                return;
+            }
+            Optional<Translator> translator = getTranslator(from.get(), fromNamespace, to.get(), toNamespace);
+            if (!translator.isPresent()) {
+                respond(exchange, 404, "No mappings from " + from.get() + " " + fromNamespace + " to " + to.get() + " " + toNamespace + "\n");
+                return;
+            }
+
+            StringBuilder response = new StringBuilder();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.trim().isEmpty()) continue;
+                    response.append(translator.get().translate(line.trim())).append('\n');
+                }
+            }
+            respond(exchange, 200, response.toString());
+        } catch (RuntimeException e) {
+            respond(exchange, 500, e.getMessage() + "\n");
+        } finally {
+            latencies.record(System.nanoTime() - start);
+        }
+    }
+
+    private void handleSearch(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            Optional<MinecraftVersion> version = MinecraftVersion.fromId(query.getOrDefault("version", ""));
+            String namespace = query.getOrDefault("namespace", "");
+            String text = query.getOrDefault("q", "");
+            if (!version.isPresent()) {
+                respond(exchange, 400, "Unknown version\n");
+                return;
+            }
+            Optional<NameIndex> index = getNameIndex(version.get(), namespace);
+            if (!index.isPresent()) {
+                respond(exchange, 404, "No mappings for " + version.get() + " " + namespace + "\n");
+                return;
+            }
+            Set<NameIndex.Kind> kinds = EnumSet.noneOf(NameIndex.Kind.class);
+            for (NameIndex.Kind kind : NameIndex.Kind.values()) {
+                if (query.getOrDefault("kind", "").indexOf(kind.getPrefix()) != -1) kinds.add(kind);
+            }
+            int limit;
+            int edits;
+            try {
+                limit = Integer.parseInt(query.getOrDefault("limit", "50"));
+                edits = Integer.parseInt(query.getOrDefault("edits", "1"));
+            } catch (NumberFormatException e) {
+                limit = edits = -1;
+            }
+            if (limit < 0 || edits < 0) {
+                respond(exchange, 400, "limit and edits have to be numbers from 0\n");
+                return;
+            }
+
+            List<NameIndex.Hit> hits;
+            switch (query.getOrDefault("mode", "prefix")) {
+                case "prefix":
+                    hits = index.get().prefix(text, kinds, limit);
+                    break;
+                case "hump":
+                    hits = index.get().camelHump(text, kinds, limit);
+                    break;
+                case "fuzzy":
+                    hits = index.get().fuzzy(text, Math.min(edits, NameIndex.MAX_EDITS), kinds, limit);
+                    break;
+                default:
+                    respond(exchange, 400, "Unknown mode\n");
+                    return;
+            }
+            StringBuilder response = new StringBuilder();
+            for (NameIndex.Hit hit : hits) {
+                response.append(hit).append('\n');
+            }
+            respond(exchange, 200, response.toString());
+        } catch (RuntimeException e) {
+            respond(exchange, 500, e.getMessage() + "\n");
+        } finally {
+            latencies.record(System.nanoTime() - start);
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        long[] percentiles = latencies.getPercentiles(50, 90, 99, 99.9);
+        String stats = "requests " + latencies.getCount() + "\n"
+                + "translators " + translators.size() + "\n"
+                + String.format("p50 %.3fms\np90 %.3fms\np99 %.3fms\np99.9 %.3fms\n",
+                percentiles[0] / 1e6, percentiles[1] / 1e6, percentiles[2] / 1e6, percentiles[3] / 1e6);
+        respond(exchange, 200, stats);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) throws IOException {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null) return parameters;
+        for (String parameter : query.split("&")) {
+            int split = parameter.indexOf('=');
+            if (split == -1) continue;
+            parameters.put(URLDecoder.decode(parameter.substring(0, split), "UTF-8"),
+                    URLDecoder.decode(parameter.substring(split + 1), "UTF-8"));
+        }
+        return parameters;
+    }
+
+    /**
+     * Usage: [port]
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8642;
+        new LookupService().start(port, Runtime.getRuntime().availableProcessors());
+    }
+
+}
@@ -0,0 +1,159 @@
+package io.jadon.alef.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.jadon.alef.provider.Mirror;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves a recorded copy of every host the providers download from, so runs and benchmarks don't need the network.
+ * <p>
+ * {@code GET /<host>/<path>?<query>} is answered from {@code <root>/<host>/<path>@<query>}, which is the layout
+ * {@link Mirror} rewrites urls to. In record mode, files that are missing are downloaded from the real host first,
+ * so one online run with {@code -Dalef.mirror} pointing here fills the mirror for every later offline run.
+ * <p>
+ * The server only listens on the loopback address unless it is given a bind address.
+ */
+public class MirrorServer {
+
+    private final Path root;
+    private final boolean record;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * @param root   directory with one directory per host
+     * @param record download and save files that aren't in the mirror yet
+     */
+    public MirrorServer(Path root, boolean record) {
+        this.root = root;
+        this.record = record;
+    }
+
+    public void start(int port) throws IOException {
+        start(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    public void start(InetSocketAddress address) throws IOException {
+        server = HttpServer.create(address, 0);
+        server.createContext("/", this::handle);
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        server.setExecutor(executor);
+        server.start();
+        System.out.println("Mirror of " + root + " listening on " + server.getAddress() + (record ? ", recording" : ""));
+    }
+
+    public void stop() {
+        if (server != null) server.stop(0);
+        // the server doesn't stop its executor, and its threads would keep the JVM running
+        if (executor != null) executor.shutdownNow();
+    }
+
+    /**
+     * @return base url to give {@link Mirror#setBase}
+     */
+    public String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * @param path  request path, starting with the host
+     * @param query raw query, or null
+     * @return where the response is stored in the mirror
+     */
+    public static Path toFile(Path root, String path, String query) {
+        String relative = path.startsWith("/") ? path.substring(1) : path;
+        if (relative.isEmpty() || relative.endsWith("/")) relative += "index";
+        if (query != null) relative += "@" + query.replaceAll("[^A-Za-z0-9._=-]", "_");
+        Path file = root.resolve(relative).normalize();
+        if (!file.startsWith(root.normalize())) throw new IllegalArgumentException("Path leaves the mirror: " + path);
+        return file;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                respond(exchange, 405, null);
+                return;
+            }
+            String path = exchange.getRequestURI().getRawPath();
+            String query = exchange.getRequestURI().getRawQuery();
+            Path file = toFile(root, path, query);
+            if (!Files.isRegularFile(file) && record) {
+                fetch(path, query, file);
+            }
+            respond(exchange, Files.isRegularFile(file) ? 200 : 404, file);
+        } catch (RuntimeException e) {
+            respond(exchange, 500, null);
+        }
+    }
+
+    private void fetch(String path, String query, Path file) {
+        String upstream = path + (query == null ? "" : "?" + query);
+        for (String scheme : new String[]{"https://", "http://"}) {
+            try (InputStream inputStream = new URL(scheme + upstream.substring(1)).openStream()) {
+                Files.createDirectories(file.getParent());
+                Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+                Files.copy(inputStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+                System.out.println("Recorded " + scheme + upstream.substring(1));
+                return;
+            } catch (IOException e) {
+                // try the next scheme
+            }
+        }
+        System.out.println("Couldn't record " + upstream);
+    }
+
+    private static void respond(HttpExchange exchange, int status, Path file) throws IOException {
+        if (status != 200) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        exchange.sendResponseHeaders(200, Files.size(file));
+        try (OutputStream output = exchange.getResponseBody()) {
+            Files.copy(file, output);
+        }
+    }
+
+    /**
+     * Usage: &lt;root&gt; [port] [--record] [--bind &lt;address&gt;]
+     * <p>
+     * Serving a mirror on the LAN: {@code mirror 8643 --bind 0.0.0.0}, then run with
+     * {@code -Dalef.mirror=http://<host>:8643} everywhere else.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: <root> [port] [--record] [--bind <address>]");
+            return;
+        }
+        Path root = Paths.get(args[0]);
+        int port = 8643;
+        boolean record = false;
+        InetAddress bind = InetAddress.getLoopbackAddress();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--record")) {
+                record = true;
+            } else if (args[i].equals("--bind")) {
+                bind = InetAddress.getByName(args[++i]);
+            } else {
+                port = Integer.parseInt(args[i]);
+            }
+        }
+        new MirrorServer(root, record).start(new InetSocketAddress(bind, port));
+    }
+
+}
@@ -0,0 +1,186 @@
+package io.jadon.alef.service;
+
+import io.jadon.alef.MinecraftVersion;
+import io.jadon.alef.mapping.LazyMappingSet;
+import io.jadon.alef.provider.MappingProvider;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Read only lookups of new names by old names, safe to query from any number of threads.
+ * <p>
+ * {@link #of} builds lookup tables from a whole mapping set. {@link #lazy} answers from a {@link LazyMappingSet}, so
+ * only the classes that get looked up are ever read.
+ */
+public abstract class Translator {
+
+    protected abstract Optional<String> getClassName(String name);
+
+    protected abstract Optional<String> getFieldName(String owner, String name);
+
+    protected abstract Optional<String> getMethodName(String owner, String name, String descriptor);
+
+    /**
+     * @return how many names are loaded: classes and members for tables, classes read so far for lazy translators
+     */
+    public abstract int size();
+
+    public static Translator of(MappingSet mappings) {
+        return new TableTranslator(mappings);
+    }
+
+    public static Translator lazy(LazyMappingSet mappings) {
+        return new LazyTranslator(mappings);
+    }
+
+    /**
+     * Obfuscated names to a provider's names, reading only the classes that get looked up if the provider can
+     */
+    public static Optional<Translator> of(MappingProvider provider, MinecraftVersion version) {
+        Optional<LazyMappingSet> lazyMappings = provider.getLazyMappings(version);
+        if (lazyMappings.isPresent()) return lazyMappings.map(Translator::lazy);
+        return provider.getMappings(version).map(Translator::of);
+    }
+
+    public Optional<String> translateClass(String name) {
+        return getClassName(name);
+    }
+
+    /**
+     * @return new owner and new name
+     */
+    public Optional<String[]> translateField(String owner, String name) {
+        return getFieldName(owner, name).map(newName -> new String[]{getClassName(owner).orElse(owner), newName});
+    }
+
+    /**
+     * @return new owner, new name and new descriptor
+     */
+    public Optional<String[]> translateMethod(String owner, String name, String descriptor) {
+        return getMethodName(owner, name, descriptor).map(newName ->
+                new String[]{getClassName(owner).orElse(owner), newName, translateDescriptor(descriptor)});
+    }
+
+    /**
+     * Translate every class in a field or method descriptor
+     */
+    public String translateDescriptor(String descriptor) {
+        StringBuilder builder = new StringBuilder(descriptor.length());
+        int i = 0;
+        while (i < descriptor.length()) {
+            char c = descriptor.charAt(i);
+            if (c == 'L') {
+                int end = descriptor.indexOf(';', i);
+                String name = descriptor.substring(i + 1, end);
+                builder.append('L').append(getClassName(name).orElse(name)).append(';');
+                i = end + 1;
+            } else {
+                builder.append(c);
+                i++;
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Translate one symbol, like {@code c a}, {@code f a b} or {@code m a b (La;)V}
+     *
+     * @return the translated symbol, or {@code ! <line>} if it can't be translated
+     */
+    public String translate(String line) {
+        String[] parts = line.split(" ");
+        Optional<String> result = Optional.empty();
+        if (parts[0].equals("c") && parts.length == 2) {
+            result = translateClass(parts[1]).map(name -> "c " + name);
+        } else if (parts[0].equals("f") && parts.length == 3) {
+            result = translateField(parts[1], parts[2]).map(field -> "f " + String.join(" ", field));
+        } else if (parts[0].equals("m") && parts.length == 4) {
+            result = translateMethod(parts[1], parts[2], parts[3]).map(method -> "m " + String.join(" ", method));
+        }
+        return result.orElse("! " + line);
+    }
+
+    private static class TableTranslator extends Translator {
+        private final Map<String, String> classes = new HashMap<>();
+        /** owner + " " + name */
+        private final Map<String, String> fields = new HashMap<>();
+        /** owner + " " + name + descriptor */
+        private final Map<String, String> methods = new HashMap<>();
+
+        private TableTranslator(MappingSet mappings) {
+            for (ClassMapping<?, ?> classMapping : mappings.getTopLevelClassMappings()) {
+                addClass(classMapping);
+            }
+        }
+
+        private void addClass(ClassMapping<?, ?> classMapping) {
+            String owner = classMapping.getFullObfuscatedName();
+            classes.put(owner, classMapping.getFullDeobfuscatedName());
+            for (FieldMapping fieldMapping : classMapping.getFieldMappings()) {
+                fields.put(owner + " " + fieldMapping.getObfuscatedName(), fieldMapping.getDeobfuscatedName());
+            }
+            for (MethodMapping methodMapping : classMapping.getMethodMappings()) {
+                methods.put(owner + " " + methodMapping.getObfuscatedName() + methodMapping.getObfuscatedDescriptor(),
+                        methodMapping.getDeobfuscatedName());
+            }
+            for (ClassMapping<?, ?> innerClassMapping : classMapping.getInnerClassMappings()) {
+                addClass(innerClassMapping);
+            }
+        }
+
+        @Override
+        protected Optional<String> getClassName(String name) {
+            return Optional.ofNullable(classes.get(name));
+        }
+
+        @Override
+        protected Optional<String> getFieldName(String owner, String name) {
+            return Optional.ofNullable(fields.get(owner + " " + name));
+        }
+
+        @Override
+        protected Optional<String> getMethodName(String owner, String name, String descriptor) {
+            return Optional.ofNullable(methods.get(owner + " " + name + descriptor));
+        }
+
+        @Override
+        public int size() {
+            return classes.size() + fields.size() + methods.size();
+        }
+    }
+
+    private static class LazyTranslator extends Translator {
+        private final LazyMappingSet mappings;
+
+        private LazyTranslator(LazyMappingSet mappings) {
+            this.mappings = mappings;
+        }
+
+        @Override
+        protected Optional<String> getClassName(String name) {
+            return mappings.getClassName(name);
+        }
+
+        @Override
+        protected Optional<String> getFieldName(String owner, String name) {
+            return mappings.getFieldName(owner, name);
+        }
+
+        @Override
+        protected Optional<String> getMethodName(String owner, String name, String descriptor) {
+            return mappings.getMethodName(owner, name, descriptor);
+        }
+
+        @Override
+        public int size() {
+            return mappings.getLoadedClassCount();
+        }
+    }
+
+}
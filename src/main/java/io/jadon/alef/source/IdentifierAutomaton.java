@@ -0,0 +1,176 @@
+package io.jadon.alef.source;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Aho-Corasick automaton over Java identifiers and dotted names.
+ * <p>
+ * All patterns are matched in one pass over the text. A match only counts if it isn't part of a longer identifier,
+ * and overlapping matches are resolved leftmost-longest, so {@code net.minecraft.Foo} wins over {@code Foo}.
+ * The automaton is immutable once built and can be shared between threads.
+ */
+public class IdentifierAutomaton {
+
+    private static final int ROOT = 0;
+
+    // trie stored in flat arrays, children are a linked list of siblings
+    private int[] firstChild;
+    private int[] nextSibling;
+    private char[] label;
+    private int[] fail;
+    /** pattern ending at this node, or -1 */
+    private int[] output;
+    /** closest node on the fail chain that has an output, or -1 */
+    private int[] outputLink;
+    private int nodeCount;
+    /** children of the root, indexed by char */
+    private final int[] rootChildren = new int[128];
+
+    private final String[] replacements;
+    private final int[] patternLengths;
+
+    public IdentifierAutomaton(Map<String, String> patterns) {
+        int capacity = 1;
+        for (String pattern : patterns.keySet()) {
+            capacity += pattern.length();
+        }
+        firstChild = new int[capacity];
+        nextSibling = new int[capacity];
+        label = new char[capacity];
+        fail = new int[capacity];
+        output = new int[capacity];
+        outputLink = new int[capacity];
+        Arrays.fill(firstChild, -1);
+        Arrays.fill(output, -1);
+        Arrays.fill(outputLink, -1);
+        Arrays.fill(rootChildren, -1);
+        nodeCount = 1;
+
+        replacements = new String[patterns.size()];
+        patternLengths = new int[patterns.size()];
+        int patternIndex = 0;
+        for (Map.Entry<String, String> pattern : patterns.entrySet()) {
+            String key = pattern.getKey();
+            int node = ROOT;
+            for (int i = 0; i < key.length(); i++) {
+                char c = key.charAt(i);
+                int child = getChild(node, c);
+                if (child == -1) child = addChild(node, c);
+                node = child;
+            }
+            output[node] = patternIndex;
+            replacements[patternIndex] = pattern.getValue();
+            patternLengths[patternIndex] = key.length();
+            patternIndex++;
+        }
+        buildFailLinks();
+    }
+
+    private int getChild(int node, char c) {
+        if (node == ROOT) return c < 128 ? rootChildren[c] : -1;
+        for (int child = firstChild[node]; child != -1; child = nextSibling[child]) {
+            if (label[child] == c) return child;
+        }
+        return -1;
+    }
+
+    private int addChild(int node, char c) {
+        int child = nodeCount++;
+        label[child] = c;
+        nextSibling[child] = firstChild[node];
+        firstChild[node] = child;
+        if (node == ROOT && c < 128) rootChildren[c] = child;
+        return child;
+    }
+
+    private void buildFailLinks() {
+        int[] queue = new int[nodeCount];
+        int head = 0;
+        int tail = 0;
+        for (int child = firstChild[ROOT]; child != -1; child = nextSibling[child]) {
+            fail[child] = ROOT;
+            queue[tail++] = child;
+        }
+        while (head < tail) {
+            int node = queue[head++];
+            for (int child = firstChild[node]; child != -1; child = nextSibling[child]) {
+                int state = fail[node];
+                int next = getChild(state, label[child]);
+                while (next == -1 && state != ROOT) {
+                    state = fail[state];
+                    next = getChild(state, label[child]);
+                }
+                fail[child] = next == -1 || next == child ? ROOT : next;
+                outputLink[child] = output[fail[child]] != -1 ? fail[child] : outputLink[fail[child]];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    private static boolean isNameChar(char c) {
+        return c == '.' || Character.isJavaIdentifierPart(c);
+    }
+
+    /**
+     * Replace every identifier in the text that has a replacement
+     *
+     * @param text source code
+     * @param out  where the rewritten text goes
+     * @return number of replacements
+     */
+    public int replace(char[] text, StringBuilder out) {
+        int length = text.length;
+        // longest valid match starting at each position, plus one
+        int[] bestPattern = null;
+        int[] bestLength = null;
+        int state = ROOT;
+        for (int i = 0; i < length; i++) {
+            char c = text[i];
+            if (!isNameChar(c)) {
+                state = ROOT;
+                continue;
+            }
+            int next = getChild(state, c);
+            while (next == -1 && state != ROOT) {
+                state = fail[state];
+                next = getChild(state, c);
+            }
+            state = next == -1 ? ROOT : next;
+
+            // only report matches that end at an identifier boundary
+            if (i + 1 < length && Character.isJavaIdentifierPart(text[i + 1])) continue;
+            for (int node = output[state] != -1 ? state : outputLink[state]; node != -1; node = outputLink[node]) {
+                int pattern = output[node];
+                int start = i + 1 - patternLengths[pattern];
+                if (start > 0 && Character.isJavaIdentifierPart(text[start - 1])) continue;
+                if (bestLength == null) {
+                    bestPattern = new int[length];
+                    bestLength = new int[length];
+                }
+                if (patternLengths[pattern] > bestLength[start]) {
+                    bestLength[start] = patternLengths[pattern];
+                    bestPattern[start] = pattern;
+                }
+            }
+        }
+
+        if (bestLength == null) {
+            out.append(text);
+            return 0;
+        }
+        int replaced = 0;
+        int copyFrom = 0;
+        for (int i = 0; i < length; i++) {
+            if (bestLength[i] == 0) continue;
+            out.append(text, copyFrom, i - copyFrom);
+            out.append(replacements[bestPattern[i]]);
+            i += bestLength[i] - 1;
+            copyFrom = i + 1;
+            replaced++;
+        }
+        out.append(text, copyFrom, length - copyFrom);
+        return replaced;
+    }
+
+}
@@ -0,0 +1,197 @@
+package io.jadon.alef.source;
+
+import lombok.Data;
+import lombok.Getter;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Rewrites a source tree from one version's names to another's using migration mappings.
+ * <p>
+ * Every rename is compiled into one {@link IdentifierAutomaton}, so each file is scanned once no matter how many
+ * renames there are. Fully qualified class names are always safe to replace. Simple class names and member names are
+ * only replaced when every mapping with that old name agrees on the new name, since we don't resolve types. The
+ * names that had to be skipped are counted in {@link Stats#getAmbiguousNames()}.
+ */
+public class SourceMigrator {
+
+    private static final String AMBIGUOUS = "\0";
+
+    private final IdentifierAutomaton automaton;
+    @Getter
+    private final int renameCount;
+    @Getter
+    private final int ambiguousNames;
+
+    @Data
+    public static class Stats {
+        private final int files;
+        private final int replacements;
+        private final long bytes;
+        private final long nanos;
+        private final int threads;
+        private final int ambiguousNames;
+
+        public double getMegabytesPerSecond() {
+            return bytes / 1e6 / (nanos / 1e9);
+        }
+
+        public double getMegabytesPerSecondPerCore() {
+            return getMegabytesPerSecond() / threads;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d files, %d replacements, %.1f MB in %.2fs: %.1f MB/s, %.1f MB/s per core (%d ambiguous names skipped)",
+                    files, replacements, bytes / 1e6, nanos / 1e9, getMegabytesPerSecond(),
+                    getMegabytesPerSecondPerCore(), ambiguousNames);
+        }
+    }
+
+    /**
+     * @param mappings migration mappings, old named -> new named
+     */
+    public SourceMigrator(MappingSet mappings) {
+        Map<String, String> qualifiedNames = new HashMap<>();
+        Map<String, String> simpleNames = new HashMap<>();
+        Map<String, String> memberNames = new HashMap<>();
+        for (ClassMapping<?, ?> classMapping : mappings.getTopLevelClassMappings()) {
+            addClass(classMapping, qualifiedNames, simpleNames, memberNames);
+        }
+
+        Map<String, String> patterns = new HashMap<>();
+        int ambiguous = 0;
+        for (Map<String, String> names : Arrays.asList(memberNames, simpleNames, qualifiedNames)) {
+            for (Map.Entry<String, String> name : names.entrySet()) {
+                if (name.getValue().equals(AMBIGUOUS)) {
+                    ambiguous++;
+                } else if (!name.getKey().equals(name.getValue())) {
+                    // later maps win, so class names beat member names
+                    patterns.put(name.getKey(), name.getValue());
+                }
+            }
+        }
+        this.automaton = new IdentifierAutomaton(patterns);
+        this.renameCount = patterns.size();
+        this.ambiguousNames = ambiguous;
+    }
+
+    private static void addClass(ClassMapping<?, ?> classMapping, Map<String, String> qualifiedNames,
+                                 Map<String, String> simpleNames, Map<String, String> memberNames) {
+        String oldName = toSourceName(classMapping.getFullObfuscatedName());
+        String newName = toSourceName(classMapping.getFullDeobfuscatedName());
+        qualifiedNames.put(oldName, newName);
+        addUnambiguous(simpleNames, simpleName(oldName), simpleName(newName));
+
+        for (FieldMapping fieldMapping : classMapping.getFieldMappings()) {
+            addUnambiguous(memberNames, fieldMapping.getObfuscatedName(), fieldMapping.getDeobfuscatedName());
+        }
+        for (MethodMapping methodMapping : classMapping.getMethodMappings()) {
+            addUnambiguous(memberNames, methodMapping.getObfuscatedName(), methodMapping.getDeobfuscatedName());
+        }
+        for (ClassMapping<?, ?> innerClassMapping : classMapping.getInnerClassMappings()) {
+            addClass(innerClassMapping, qualifiedNames, simpleNames, memberNames);
+        }
+    }
+
+    private static void addUnambiguous(Map<String, String> names, String oldName, String newName) {
+        names.merge(oldName, newName, (existing, added) -> existing.equals(added) ? existing : AMBIGUOUS);
+    }
+
+    private static String toSourceName(String internalName) {
+        return internalName.replace('/', '.').replace('$', '.');
+    }
+
+    private static String simpleName(String sourceName) {
+        return sourceName.substring(sourceName.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * Rewrite one file's contents
+     *
+     * @param source source code
+     * @param out    where the rewritten code goes
+     * @return number of replacements
+     */
+    public int migrate(CharSequence source, StringBuilder out) {
+        return automaton.replace(source.toString().toCharArray(), out);
+    }
+
+    public Stats migrate(Path inputDir, Path outputDir) throws IOException {
+        return migrate(inputDir, outputDir, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Rewrite every .java file under a directory into an output tree. Other files are copied as they are.
+     *
+     * @param inputDir  source tree
+     * @param outputDir where the rewritten tree goes
+     * @param threads   number of files to rewrite at once
+     * @return throughput of the run
+     */
+    public Stats migrate(Path inputDir, Path outputDir, int threads) throws IOException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(inputDir)) {
+            files = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        AtomicInteger sourceFiles = new AtomicInteger();
+        AtomicInteger replacements = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.submit(() -> files.parallelStream().forEach(file -> {
+                Path target = outputDir.resolve(inputDir.relativize(file).toString());
+                try {
+                    Files.createDirectories(target.getParent());
+                    if (!file.getFileName().toString().endsWith(".java")) {
+                        Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+                        return;
+                    }
+                    byte[] contents = Files.readAllBytes(file);
+                    CharBuffer chars = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(contents));
+                    char[] text = new char[chars.remaining()];
+                    chars.get(text);
+                    StringBuilder out = new StringBuilder(text.length + text.length / 8);
+                    replacements.addAndGet(automaton.replace(text, out));
+                    Files.write(target, out.toString().getBytes(StandardCharsets.UTF_8));
+                    sourceFiles.incrementAndGet();
+                    bytes.addAndGet(contents.length);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(file.toString(), e);
+                }
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while migrating " + inputDir, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to migrate " + inputDir, e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return new Stats(sourceFiles.get(), replacements.get(), bytes.get(), System.nanoTime() - start, threads,
+                ambiguousNames);
+    }
+
+}
@@ -0,0 +1,47 @@
+package io.jadon.alef.version;
+
+import io.jadon.alef.MinecraftVersion;
+import lombok.Data;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * A version in the {@link VersionRegistry}, either one of the {@link MinecraftVersion}s or one found at runtime
+ */
+@Data
+public class Version {
+
+    private final String id;
+    /** release, snapshot, old_beta, old_alpha, or unknown if it only showed up in a match file name */
+    private final String type;
+    /** sort key, versions with a lower order came out earlier */
+    private final double order;
+    private final @Nullable Instant releaseTime;
+    /** version json url from the manifest */
+    private final @Nullable String url;
+    private final @Nullable MinecraftVersion minecraftVersion;
+
+    public boolean isRelease() {
+        return minecraftVersion != null ? minecraftVersion.isRelease() : "release".equals(type);
+    }
+
+    public Optional<String> getUrl() {
+        return Optional.ofNullable(url);
+    }
+
+    public Optional<Instant> getReleaseTime() {
+        return Optional.ofNullable(releaseTime);
+    }
+
+    public Optional<MinecraftVersion> toMinecraftVersion() {
+        return Optional.ofNullable(minecraftVersion);
+    }
+
+    @Override
+    public String toString() {
+        return id;
+    }
+
+}
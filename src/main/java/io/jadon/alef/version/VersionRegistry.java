@@ -0,0 +1,315 @@
+package io.jadon.alef.version;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import io.jadon.alef.MinecraftVersion;
+import io.jadon.alef.match.MatchProvider;
+import io.jadon.alef.provider.MappingProvider;
+import io.jadon.alef.provider.MojangProvider;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Every version we know about: the {@link MinecraftVersion}s, everything in Mojang's version manifest, and every
+ * version named by a match file.
+ * <p>
+ * Only the enum is read up front. The cached manifest is read the first time an id isn't found or has no url,
+ * downloaded again once per run if that didn't help, and the match directories are listed after that. The match
+ * directories are listed again whenever one of them changes, so new match files show up in a running process.
+ * Versions that aren't in the enum get an order between the enum versions around their release time, or just after
+ * the version their match file comes from.
+ */
+public class VersionRegistry {
+
+    private static final VersionRegistry INSTANCE = new VersionRegistry();
+
+    private final Map<String, Version> versions = new ConcurrentHashMap<>();
+    /** from id -> to id -> match file */
+    private Map<String, Map<String, File>> matchIndex;
+    /** modification times of the match directories when the index was built */
+    private List<Long> matchIndexStamp;
+    /** read outside the lock by {@link #getVersion(String)} */
+    private volatile boolean manifestLoaded;
+    private volatile boolean manifestRefreshed;
+    private volatile List<Version> ordered;
+
+    private VersionRegistry() {
+        addMinecraftVersions();
+    }
+
+    private void addMinecraftVersions() {
+        for (MinecraftVersion version : MinecraftVersion.values()) {
+            versions.put(version.toString(), new Version(version.toString(), version.isRelease() ? "release" : "snapshot",
+                    version.ordinal(), null, null, version));
+        }
+    }
+
+    public static VersionRegistry get() {
+        return INSTANCE;
+    }
+
+    public static File getManifestFile() {
+        return new File(MappingProvider.CACHE_DIR, "version_manifest.json");
+    }
+
+    /**
+     * @param id version id, like 1.16.1 or 20w27a
+     * @return version with that id, discovering new versions if it isn't known yet
+     */
+    public Optional<Version> getVersion(String id) {
+        Version version = versions.get(id);
+        if (version != null && (version.getUrl().isPresent() || manifestRefreshed)) return Optional.of(version);
+        synchronized (this) {
+            if (!manifestLoaded) loadManifest(false);
+            // enum versions are always known, but only the manifest has their url
+            if (!hasUrl(id) && !manifestRefreshed) loadManifest(true);
+            if (!versions.containsKey(id)) getMatchIndex();
+        }
+        return Optional.ofNullable(versions.get(id));
+    }
+
+    private boolean hasUrl(String id) {
+        Version version = versions.get(id);
+        return version != null && version.getUrl().isPresent();
+    }
+
+    /**
+     * @return every known version, oldest first
+     */
+    public synchronized List<Version> getVersions() {
+        if (!manifestLoaded) loadManifest(false);
+        // drops the order if the match directories changed
+        getMatchIndex();
+        if (ordered == null) {
+            ordered = Collections.unmodifiableList(versions.values().stream()
+                    .sorted(Comparator.comparingDouble(Version::getOrder).thenComparing(Version::getId))
+                    .collect(Collectors.toList()));
+        }
+        return ordered;
+    }
+
+    public boolean isBefore(Version a, Version b) {
+        return a.getOrder() < b.getOrder();
+    }
+
+    /**
+     * Find the hops to chain to get from one version to another, using the match files that exist
+     *
+     * @return every version on the way, including both ends, or empty if no chain of match files connects them
+     */
+    public Optional<List<Version>> findMatchPath(String fromId, String toId) {
+        Map<String, Map<String, File>> index = getMatchIndex();
+        Map<String, String> previous = new HashMap<>();
+        Deque<String> queue = new ArrayDeque<>();
+        queue.add(fromId);
+        previous.put(fromId, null);
+        while (!queue.isEmpty()) {
+            String current = queue.poll();
+            if (current.equals(toId)) {
+                LinkedList<Version> path = new LinkedList<>();
+                for (String id = toId; id != null; id = previous.get(id)) {
+                    path.addFirst(versions.get(id));
+                }
+                return Optional.of(path);
+            }
+            // only go forwards, so every hop is a match file in the right direction
+            List<String> next = new ArrayList<>(index.getOrDefault(current, Collections.emptyMap()).keySet());
+            next.sort(Comparator.comparingDouble(id -> versions.get(id).getOrder()));
+            for (String id : next) {
+                if (!previous.containsKey(id)) {
+                    previous.put(id, current);
+                    queue.add(id);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return match file for a hop, from whichever match directory has it
+     */
+    public Optional<File> getMatchFile(String fromId, String toId) {
+        return Optional.ofNullable(getMatchIndex().getOrDefault(fromId, Collections.emptyMap()).get(toId));
+    }
+
+    private synchronized Map<String, Map<String, File>> getMatchIndex() {
+        List<Long> stamp = new ArrayList<>();
+        for (MatchProvider provider : MatchProvider.values()) {
+            stamp.add(provider.getDirectory().lastModified());
+        }
+        if (matchIndex != null && stamp.equals(matchIndexStamp)) return matchIndex;
+        Map<String, Map<String, File>> index = new HashMap<>();
+        // listed in reverse so the match directory that getMatchFile prefers wins
+        List<MatchProvider> providers = new ArrayList<>(Arrays.asList(MatchProvider.values()));
+        Collections.reverse(providers);
+        for (MatchProvider provider : providers) {
+            File[] files = provider.getDirectory().listFiles();
+            if (files == null) continue;
+            for (File file : files) {
+                String name = file.getName();
+                int extension = name.lastIndexOf('.');
+                if (extension == -1 || !(name.endsWith(".match") || name.endsWith(".csrg"))) continue;
+                String[] ids = splitHop(name.substring(0, extension));
+                if (ids == null) continue;
+                index.computeIfAbsent(ids[0], id -> new HashMap<>()).put(ids[1], file);
+            }
+        }
+        matchIndex = index;
+        matchIndexStamp = stamp;
+        for (Map.Entry<String, Map<String, File>> hops : index.entrySet()) {
+            for (String toId : hops.getValue().keySet()) {
+                addFromMatch(hops.getKey(), toId);
+            }
+        }
+        ordered = null;
+        return matchIndex;
+    }
+
+    /**
+     * Split a hop like 1.16-pre1-1.16-pre2 into its two ids. Ids can contain dashes, so try every dash and keep
+     * the first split where both sides are known versions, or where one side is.
+     */
+    private String[] splitHop(String hop) {
+        String[] partial = null;
+        for (int i = hop.indexOf('-'); i != -1; i = hop.indexOf('-', i + 1)) {
+            String from = hop.substring(0, i);
+            String to = hop.substring(i + 1);
+            boolean fromKnown = versions.containsKey(from);
+            boolean toKnown = versions.containsKey(to);
+            if (fromKnown && toKnown) return new String[]{from, to};
+            if ((fromKnown || toKnown) && partial == null) partial = new String[]{from, to};
+        }
+        return partial;
+    }
+
+    private void addFromMatch(String fromId, String toId) {
+        Version from = versions.get(fromId);
+        Version to = versions.get(toId);
+        if (to == null) {
+            double order = from == null ? Double.MAX_VALUE : nextOrder(from.getOrder());
+            versions.put(toId, new Version(toId, "unknown", order, null, null, null));
+        } else if (from == null) {
+            versions.put(fromId, new Version(fromId, "unknown", previousOrder(to.getOrder()), null, null, null));
+        }
+    }
+
+    private double nextOrder(double order) {
+        double next = Math.floor(order) + 1;
+        for (Version version : versions.values()) {
+            if (version.getOrder() > order && version.getOrder() < next) next = version.getOrder();
+        }
+        return (order + next) / 2;
+    }
+
+    private double previousOrder(double order) {
+        double previous = Math.ceil(order) - 1;
+        for (Version version : versions.values()) {
+            if (version.getOrder() < order && version.getOrder() > previous) previous = version.getOrder();
+        }
+        return (order + previous) / 2;
+    }
+
+    /**
+     * Forget every version found at runtime, so the next lookup reads the cache directory again
+     */
+    public synchronized void reset() {
+        versions.clear();
+        addMinecraftVersions();
+        matchIndex = null;
+        matchIndexStamp = null;
+        manifestLoaded = false;
+        manifestRefreshed = false;
+        ordered = null;
+    }
+
+    /**
+     * Drop the cached manifest and download it again
+     */
+    public synchronized void refresh() {
+        loadManifest(true);
+    }
+
+    private void loadManifest(boolean download) {
+        File manifestFile = getManifestFile();
+        JsonObject manifest = null;
+        if (download) {
+            manifestRefreshed = true;
+            try {
+                manifest = MojangProvider.getVersionManifestJson();
+                manifestFile.getParentFile().mkdirs();
+                File tempFile = new File(manifestFile.getPath() + ".tmp");
+                Files.write(tempFile.toPath(), manifest.toString().getBytes(StandardCharsets.UTF_8));
+                Files.move(tempFile.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (Exception e) {
+                System.out.println("Couldn't download the version manifest: " + e);
+            }
+        } else if (manifestFile.exists()) {
+            try (Reader reader = Files.newBufferedReader(manifestFile.toPath(), StandardCharsets.UTF_8)) {
+                manifest = JsonParser.parseReader(reader).getAsJsonObject();
+            } catch (IOException | JsonParseException | IllegalStateException e) {
+                System.out.println("Ignoring broken version manifest " + manifestFile);
+            }
+        }
+        manifestLoaded = true;
+        if (manifest != null) addManifest(manifest);
+    }
+
+    private void addManifest(JsonObject manifest) {
+        List<Version> entries = new ArrayList<>();
+        for (JsonElement element : manifest.getAsJsonArray("versions")) {
+            JsonObject entry = element.getAsJsonObject();
+            String id = entry.get("id").getAsString();
+            Instant releaseTime = null;
+            try {
+                releaseTime = Instant.parse(entry.get("releaseTime").getAsString().replaceAll("\\+00:00$", "Z"));
+            } catch (DateTimeParseException | NullPointerException ignored) {
+            }
+            Version known = versions.get(id);
+            MinecraftVersion minecraftVersion = known == null ? null : known.getMinecraftVersion();
+            double order = known == null || minecraftVersion == null ? Double.NaN : known.getOrder();
+            entries.add(new Version(id, entry.get("type").getAsString(), order, releaseTime,
+                    entry.get("url").getAsString(), minecraftVersion));
+        }
+
+        // place new versions between the enum versions released around them
+        entries.sort(Comparator.comparing((Version version) -> version.getReleaseTime().orElse(Instant.MAX)));
+        double lastKnownOrder = -1;
+        List<Version> pending = new ArrayList<>();
+        for (Version entry : entries) {
+            if (Double.isNaN(entry.getOrder())) {
+                pending.add(entry);
+                continue;
+            }
+            placeBetween(pending, lastKnownOrder, entry.getOrder());
+            lastKnownOrder = entry.getOrder();
+            versions.put(entry.getId(), entry);
+        }
+        // anything newer than the last enum version in the manifest is newer than every enum version
+        placeBetween(pending, Math.max(lastKnownOrder, MinecraftVersion.values().length - 1),
+                MinecraftVersion.values().length);
+        ordered = null;
+    }
+
+    private void placeBetween(List<Version> pending, double low, double high) {
+        for (int i = 0; i < pending.size(); i++) {
+            Version version = pending.get(i);
+            double order = low + (high - low) * (i + 1) / (pending.size() + 1);
+            versions.put(version.getId(), new Version(version.getId(), version.getType(), order,
+                    version.getReleaseTime().orElse(null), version.getUrl().orElse(null), null));
+        }
+        pending.clear();
+    }
+
+}